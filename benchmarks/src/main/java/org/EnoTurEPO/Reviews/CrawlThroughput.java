@@ -0,0 +1,279 @@
+package org.EnoTurEPO.Reviews;
+
+import com.opencsv.CSVWriter;
+import org.EnoTurEPO.Output.BufferedDatasetWriter;
+import org.EnoTurEPO.Output.DatasetSink;
+import org.EnoTurEPO.Output.ShardedDatasetWriter;
+import org.EnoTurEPO.util.CrawlMetrics;
+import org.EnoTurEPO.util.Trio;
+import org.bdp4j.util.CSVDatasetWriter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmark of the crawl, which reads the wineries of a {@link MapsStandIn} with the real path of
+ * {@link CrawlPlanner}, {@link CrawlScheduler} and {@link WebExtractor} through Selenium, and reports the wineries per minute, the reviews per second,
+ * the percentiles of the time per winery and the memory of the browsers. It is run from the root of the project:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.EnoTurEPO.Reviews.CrawlThroughput --wineries=20 --workers=2
+ * </pre>
+ * The options are --wineries=n and --reviews=n (mean reviews per winery) of the generated wineries, or
+ * --snapshots=folder to serve the wineries recorded by a crawl, --latency=ms of each request, --workers=n,
+ * --lean to use the lean browser profile, --sharded to write a shard per worker and merge them when the crawl ends,
+ * --batches to group the wineries into batches by proximity instead of reading them in the order of the input,
+ * --resources=folder with the dictionaries, --output=folder of the datasets
+ * written, and --min-wineries-per-minute=n to exit with an error when the crawl is slower, as a performance gate.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class CrawlThroughput {
+
+    /**
+     * Sampler of the memory of the browsers, the resident memory of all the processes started by this JVM. It is
+     * only available in Linux, where it is read from /proc
+     */
+    private static class BrowserMemory {
+
+        /**
+         * Number of samples
+         */
+        private long numSamples = 0;
+
+        /**
+         * Sum of the samples, in bytes
+         */
+        private long sum = 0;
+
+        /**
+         * Maximum sample, in bytes
+         */
+        private long max = 0;
+
+        /**
+         * @return Returns true if the memory of the processes can be read
+         */
+        private static boolean isAvailable() {
+            return new File("/proc/self/status").exists();
+        }
+
+        /**
+         * Adds the current resident memory of the processes started by this JVM and their descendants
+         */
+        private synchronized void sample() {
+
+            String jvm = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+            Map<String, List<String>> children = new HashMap<>();
+            File[] processes = new File("/proc").listFiles((dir, name) -> name.matches("[0-9]+"));
+            if (processes == null) {
+                return;
+            }
+            for (File process : processes) {
+                String parent = readField(new File(process, "status"), "PPid:");
+                if (parent != null) {
+                    children.computeIfAbsent(parent, k -> new ArrayList<>()).add(process.getName());
+                }
+            }
+
+            long total = 0;
+            List<String> pending = new ArrayList<>(children.getOrDefault(jvm, new ArrayList<>()));
+            while (!pending.isEmpty()) {
+                String pid = pending.remove(pending.size() - 1);
+                String rss = readField(new File("/proc/" + pid + "/status"), "VmRSS:");
+                if (rss != null) {
+                    total += Long.parseLong(rss.split("\\s+")[0]) * 1024;
+                }
+                pending.addAll(children.getOrDefault(pid, new ArrayList<>()));
+            }
+            this.numSamples++;
+            this.sum += total;
+            this.max = Math.max(this.max, total);
+        }
+
+        /**
+         * @param status The status file of a process
+         * @param field The name of a field, with its colon
+         * @return The value of the field, or null if the process has finished or has not the field
+         */
+        private static String readField(File status, String field) {
+
+            try (BufferedReader reader = new BufferedReader(new FileReader(status))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(field)) {
+                        return line.substring(field.length()).trim();
+                    }
+                }
+            } catch (IOException e) {
+                // The process has finished
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Constructor hidden, as it is only run from {@link #main(String[])}
+     */
+    private CrawlThroughput() {
+    }
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args The options described in {@link CrawlThroughput}
+     * @throws Exception if the stand-in or the crawl can not be started
+     */
+    public static void main(String[] args) throws Exception {
+
+        int numWineries = 20;
+        int meanReviews = 50;
+        String snapshotsFolder = null;
+        long latency = 20;
+        int numWorkers = 1;
+        boolean lean = false;
+        boolean sharded = false;
+        boolean batched = false;
+        String resourcesFolder = "src/main/resources/";
+        String outputFolder = "benchmarks/target/crawl-throughput/";
+        double minWineriesPerMinute = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--wineries=")) {
+                numWineries = Integer.parseInt(arg.substring("--wineries=".length()));
+            } else if (arg.startsWith("--reviews=")) {
+                meanReviews = Integer.parseInt(arg.substring("--reviews=".length()));
+            } else if (arg.startsWith("--snapshots=")) {
+                snapshotsFolder = arg.substring("--snapshots=".length());
+            } else if (arg.startsWith("--latency=")) {
+                latency = Long.parseLong(arg.substring("--latency=".length()));
+            } else if (arg.startsWith("--workers=")) {
+                numWorkers = Integer.parseInt(arg.substring("--workers=".length()));
+            } else if (arg.equals("--lean")) {
+                lean = true;
+            } else if (arg.equals("--sharded")) {
+                sharded = true;
+            } else if (arg.equals("--batches")) {
+                batched = true;
+            } else if (arg.startsWith("--resources=")) {
+                resourcesFolder = arg.substring("--resources=".length());
+            } else if (arg.startsWith("--output=")) {
+                outputFolder = arg.substring("--output=".length());
+            } else if (arg.startsWith("--min-wineries-per-minute=")) {
+                minWineriesPerMinute = Double.parseDouble(arg.substring("--min-wineries-per-minute=".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (System.getProperty("webdriver.gecko.driver") == null && new File(resourcesFolder + "geckodriver.exe").exists()) {
+            System.setProperty("webdriver.gecko.driver", resourcesFolder + "geckodriver.exe");
+        }
+        if (!new File(outputFolder).isDirectory() && !new File(outputFolder).mkdirs()) {
+            throw new IOException("The folder " + outputFolder + " can not be created");
+        }
+
+        double wineriesPerMinute;
+        try (MapsStandIn standIn = new MapsStandIn(0, latency)) {
+            if (snapshotsFolder != null) {
+                standIn.record(snapshotsFolder);
+            } else {
+                standIn.generate(ReviewCorpus.generate(resourcesFolder, 1000, 2020), numWineries, meanReviews, 2020);
+            }
+            standIn.start();
+            System.out.println("--- Stand-in with " + standIn.getNumWineries() + " wineries and " + standIn.getNumReviews()
+                    + " reviews, " + latency + " ms per request ---");
+
+            // The wineries are planned from an input CSV, as the crawl does
+            String csvFileWebs = outputFolder + "inputWebsCSV.csv";
+            try (CSVWriter csvWriter = new CSVWriter(new FileWriter(csvFileWebs), ';')) {
+                csvWriter.writeNext(new String[]{"Nombre", "D.O.", "Dirección"});
+                for (int i = 0; i < standIn.getNumWineries(); i++) {
+                    csvWriter.writeNext(new String[]{standIn.getName(i), "Stand-in", standIn.getUrl(i).toString()});
+                }
+            }
+            CrawlPlanner planner = new CrawlPlanner();
+            planner.setBatched(batched);
+            planner.read(csvFileWebs);
+            for (String invalidRow : planner.getInvalidRows()) {
+                System.err.println("Not valid, skipping... " + invalidRow);
+            }
+            List<String> keys = new ArrayList<>();
+            for (Trio<String, String, URL> winery : planner.getWineries()) {
+                keys.add(WebExtractor.outputKey(winery.getObj1(), winery.getObj3()));
+            }
+            BlockingQueue<List<Trio<String, String, URL>>> batches = new LinkedBlockingQueue<>(planner.plan(winery -> false));
+
+            String csvFilePlaces = outputFolder + "outputPlacesCSV.csv";
+            String csvFileReviews = outputFolder + "outputReviewsCSV.csv";
+            DatasetSink outputPlaces = sharded ? new ShardedDatasetWriter(csvFilePlaces) : new BufferedDatasetWriter(new CSVDatasetWriter(csvFilePlaces));
+            DatasetSink outputReviews = sharded ? new ShardedDatasetWriter(csvFileReviews) : new BufferedDatasetWriter(new CSVDatasetWriter(csvFileReviews));
+            WebExtractor webExtractor = new WebExtractor(outputPlaces, outputReviews, resourcesFolder + "emoticons/", resourcesFolder + "emojis/");
+            DriverPool driverPool = new DriverPool(numWorkers, lean ? DriverPool.leanOptions() : DriverPool.defaultOptions());
+            driverPool.setMetrics(webExtractor.getMetrics());
+            BrowserMemory memory = new BrowserMemory();
+            ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "browser-memory");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (BrowserMemory.isAvailable()) {
+                sampler.scheduleAtFixedRate(memory::sample, 1, 1, TimeUnit.SECONDS);
+            }
+
+            long start = System.nanoTime();
+            int failed;
+            try {
+                failed = new CrawlScheduler(webExtractor, driverPool, numWorkers).runBatches(batches);
+                webExtractor.flush();
+            } finally {
+                sampler.shutdownNow();
+                webExtractor.close();
+                driverPool.close();
+            }
+            long merge = System.nanoTime();
+            if (sharded) {
+                ShardedDatasetWriter.merge(csvFilePlaces, keys);
+                ShardedDatasetWriter.merge(csvFileReviews, keys);
+            }
+            double mergeMillis = (System.nanoTime() - merge) / 1e6;
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            CrawlMetrics metrics = webExtractor.getMetrics();
+            wineriesPerMinute = metrics.getCount("wineries") * 60 / seconds;
+            System.out.println("--- Metrics of the crawl ---\n" + metrics.summary());
+            System.out.println(String.format(Locale.ROOT, "--- %d wineries (%d failed) and %d reviews in %.1f s with %d %s browsers ---",
+                    metrics.getCount("wineries"), failed, metrics.getCount("reviews"), seconds, numWorkers, lean ? "lean" : "default"));
+            System.out.println(String.format(Locale.ROOT, "Wineries per minute: %.2f", wineriesPerMinute));
+            System.out.println(String.format(Locale.ROOT, "Reviews per second: %.2f", metrics.getCount("reviews") / seconds));
+            System.out.println(String.format(Locale.ROOT, "Time per winery: %.0f ms p50, %.0f ms p99",
+                    metrics.getPercentileMillis("winery", 0.5), metrics.getPercentileMillis("winery", 0.99)));
+            if (sharded) {
+                System.out.println(String.format(Locale.ROOT, "Shards merged in %.0f ms", mergeMillis));
+            }
+            if (memory.numSamples > 0) {
+                System.out.println(String.format(Locale.ROOT, "Browser memory: %.0f MB mean, %.0f MB max",
+                        memory.sum / (double) memory.numSamples / (1 << 20), memory.max / (double) (1 << 20)));
+            } else {
+                System.out.println("Browser memory: not available");
+            }
+        }
+
+        if (wineriesPerMinute < minWineriesPerMinute) {
+            System.err.println(String.format(Locale.ROOT, "The crawl is slower than %.2f wineries per minute", minWineriesPerMinute));
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package org.EnoTurEPO.Reviews;
+
+import org.EnoTurEPO.Output.DatasetSink;
+import org.EnoTurEPO.util.LanguageIdentifier;
+import org.EnoTurEPO.util.Trio;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the steps which limit the reprocessing of the reviews: the parsing of the fields of a review, the
+ * identification of its language and the management of its emojis and emoticons. Each operation processes one
+ * review of the corpus, in turns, so the results are the throughput over the mix of the corpus. Run with -prof gc
+ * to measure the allocation rate too, and with -rf json -rff file to keep the results as a baseline.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnrichmentBenchmark {
+
+    /**
+     * The corpus of reviews and the extractor with the real dictionaries, shared by all the threads
+     */
+    @State(Scope.Benchmark)
+    public static class Corpus {
+
+        /**
+         * The folder with the emojis and emoticons folders, relative to the root of the project
+         */
+        @Param("src/main/resources/")
+        public String resourcesFolder;
+
+        /**
+         * The folder of the snapshots of a crawl whose reviews are read, or empty to generate the reviews
+         */
+        @Param("")
+        public String snapshotsFolder;
+
+        /**
+         * Number of reviews of the corpus
+         */
+        @Param("900")
+        public int numReviews;
+
+        /**
+         * The seed of the generated reviews
+         */
+        @Param("2020")
+        public long seed;
+
+        /**
+         * The console, restored when the benchmark finishes
+         */
+        private PrintStream console;
+
+        /**
+         * The extractor whose steps are measured
+         */
+        WebExtractor extractor;
+
+        /**
+         * The elements of the reviews
+         */
+        Element[] elements;
+
+        /**
+         * The translated texts of the reviews and their answers, with their emojis
+         */
+        String[] texts;
+
+        /**
+         * The texts with their emojis replaced, as they reach the management of emoticons
+         */
+        String[] textsWithoutEmojis;
+
+        /**
+         * The original texts of the reviews and their answers, whose language is identified
+         */
+        String[] originalTexts;
+
+        /**
+         * Reads the corpus and extracts the texts of its reviews
+         *
+         * @throws IOException if the corpus or the dictionaries can not be read
+         */
+        @Setup
+        public void setUp() throws IOException {
+
+            // What is printed for each review is formatted, but it does not flood the console of the benchmark
+            this.console = System.out;
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            }));
+
+            ReviewCorpus corpus = this.snapshotsFolder.isEmpty()
+                    ? ReviewCorpus.generate(this.resourcesFolder, this.numReviews, this.seed)
+                    : ReviewCorpus.load(this.snapshotsFolder, this.numReviews);
+            this.extractor = new WebExtractor(new DiscardSink(), new DiscardSink(),
+                    this.resourcesFolder + "emoticons/", this.resourcesFolder + "emojis/");
+
+            List<Element> elements = new ArrayList<>();
+            List<String> texts = new ArrayList<>();
+            List<String> originalTexts = new ArrayList<>();
+            for (String html : corpus.getReviews()) {
+                Element e = WebExtractor.parseReviewHtml(html);
+                if (e == null) {
+                    continue;
+                }
+                Review review = this.extractor.parseReview(e, "Benchmark", "01-01-2020", elements.size() + 1);
+                elements.add(e);
+                texts.add(review.textReview);
+                texts.add(review.textAnswer);
+                originalTexts.add(review.textReviewOriginal);
+                originalTexts.add(review.textAnswerOriginal);
+            }
+            if (elements.isEmpty()) {
+                throw new IOException("The corpus has not reviews");
+            }
+
+            this.elements = elements.toArray(new Element[0]);
+            this.texts = texts.toArray(new String[0]);
+            this.originalTexts = originalTexts.toArray(new String[0]);
+            this.textsWithoutEmojis = new String[this.texts.length];
+            for (int i = 0; i < this.texts.length; i++) {
+                this.textsWithoutEmojis[i] = this.extractor.manageEmojis(this.texts[i]).getObj1();
+            }
+        }
+
+        /**
+         * Closes the extractor and restores the console
+         */
+        @TearDown
+        public void tearDown() {
+
+            this.extractor.close();
+            System.setOut(this.console);
+        }
+    }
+
+    /**
+     * The identifier of languages, with or without the cache of the texts already identified
+     */
+    @State(Scope.Benchmark)
+    public static class Languages {
+
+        /**
+         * Number of texts kept by the cache of the identifier, 0 to identify every text
+         */
+        @Param({"0", "10000"})
+        public int cacheSize;
+
+        /**
+         * The identifier with all the built-in languages
+         */
+        LanguageIdentifier identifier;
+
+        /**
+         * Loads the identifier
+         */
+        @Setup
+        public void setUp() {
+            this.identifier = new LanguageIdentifier(Collections.emptyList(), this.cacheSize, LanguageIdentifier.DEFAULT_MIN_LETTERS);
+        }
+    }
+
+    /**
+     * The position of each thread in the corpus
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        /**
+         * The next position
+         */
+        private int next;
+
+        /**
+         * @param size Number of elements
+         * @return The next position, from the beginning again after the last one
+         */
+        int next(int size) {
+
+            int position = this.next;
+            this.next = (position + 1 < size) ? position + 1 : 0;
+            return position;
+        }
+    }
+
+    /**
+     * @param corpus The corpus
+     * @param cursor The position in the corpus
+     * @return The review parsed
+     */
+    @Benchmark
+    public Review parseReview(Corpus corpus, Cursor cursor) {
+
+        int i = cursor.next(corpus.elements.length);
+        return corpus.extractor.parseReview(corpus.elements[i], "Benchmark", "01-01-2020", i + 1);
+    }
+
+    /**
+     * @param corpus The corpus
+     * @param languages The identifier of languages
+     * @param cursor The position in the corpus
+     * @return The language identified
+     */
+    @Benchmark
+    public LanguageIdentifier.Result detectLanguage(Corpus corpus, Languages languages, Cursor cursor) {
+        return languages.identifier.detect(corpus.originalTexts[cursor.next(corpus.originalTexts.length)]);
+    }
+
+    /**
+     * @param corpus The corpus
+     * @param cursor The position in the corpus
+     * @return The text with its emojis replaced, the emojis and their polarity
+     */
+    @Benchmark
+    public Trio<String, String, Double> manageEmojis(Corpus corpus, Cursor cursor) {
+        return corpus.extractor.manageEmojis(corpus.texts[cursor.next(corpus.texts.length)]);
+    }
+
+    /**
+     * @param corpus The corpus
+     * @param cursor The position in the corpus
+     * @return The text with its emoticons replaced, the emoticons and their polarity
+     */
+    @Benchmark
+    public Trio<String, String, Double> manageEmoticons(Corpus corpus, Cursor cursor) {
+        return corpus.extractor.manageEmoticons(corpus.textsWithoutEmojis[cursor.next(corpus.textsWithoutEmojis.length)]);
+    }
+
+    /**
+     * Sink which discards the rows, as the output is not measured
+     */
+    private static class DiscardSink implements DatasetSink {
+
+        @Override
+        public void addColumns(String[] columns, Object[] defaultValues) {
+        }
+
+        @Override
+        public void addRow(Object[] row) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
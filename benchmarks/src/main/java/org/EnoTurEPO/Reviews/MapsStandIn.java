@@ -0,0 +1,415 @@
+package org.EnoTurEPO.Reviews;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local stand-in of Google Maps which serves the pages of the wineries with the elements read by
+ * {@link WebExtractor}, so a crawl can be run without the live site. Each winery has a place page, a photo gallery
+ * opened with the button "Todas" and a list of reviews opened with the button of more reviews. The gallery and the
+ * reviews are loaded in pages while their section-loading element is scrolled into view, as in Google Maps, and each
+ * request is answered after a configurable latency.
+ * <p>
+ * The wineries are generated, with the reviews of a {@link ReviewCorpus}, or recorded from the snapshots saved by a
+ * crawl with --snapshots. The scripts, styles and images of a recorded page are removed, so nothing is requested out
+ * of the stand-in.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class MapsStandIn implements AutoCloseable {
+
+    /**
+     * Number of photos of each page of the gallery
+     */
+    public static final int PHOTOS_PAGE = 20;
+
+    /**
+     * Number of reviews of each page of the list of reviews
+     */
+    public static final int REVIEWS_PAGE = 10;
+
+    /**
+     * Script of the pages, which opens the gallery and the reviews and loads their next page when their
+     * section-loading element is visible
+     */
+    private static final String SCRIPT =
+            "function standInPane(kind, id) {" +
+            "  document.body.innerHTML = '<div id=\"standin-pane\" style=\"height:600px;overflow-y:auto\"><div id=\"standin-items\"></div>'" +
+            "    + '<div class=\"section-loading\" style=\"height:40px\">Cargando...</div></div>';" +
+            "  var pane = document.getElementById('standin-pane'), page = 0, loading = false;" +
+            "  function visible() {" +
+            "    var loader = document.getElementsByClassName('section-loading')[0];" +
+            "    return loader && loader.getBoundingClientRect().top < pane.getBoundingClientRect().bottom;" +
+            "  }" +
+            "  function next() {" +
+            "    if (loading) { return; }" +
+            "    loading = true;" +
+            "    var request = new XMLHttpRequest();" +
+            "    request.open('GET', '/standin/' + kind + '/' + id + '?page=' + page);" +
+            "    request.onload = function() {" +
+            "      document.getElementById('standin-items').insertAdjacentHTML('beforeend', request.responseText);" +
+            "      page++;" +
+            "      loading = false;" +
+            "      if (request.getResponseHeader('X-Stand-In-Last') == 'true') {" +
+            "        observer.disconnect();" +
+            "        var loader = document.getElementsByClassName('section-loading')[0];" +
+            "        loader.parentNode.removeChild(loader);" +
+            "      } else if (visible()) {" +
+            "        next();" +
+            "      }" +
+            "    };" +
+            "    request.send();" +
+            "  }" +
+            "  var observer = new IntersectionObserver(function(entries) {" +
+            "    if (entries[0].isIntersecting) { next(); }" +
+            "  }, {root: pane});" +
+            "  observer.observe(document.getElementsByClassName('section-loading')[0]);" +
+            "  next();" +
+            "}" +
+            "document.addEventListener('click', function(event) {" +
+            "  var button = event.target.closest('button');" +
+            "  if (!button) { return; }" +
+            "  var id = document.body.getAttribute('data-standin-id');" +
+            "  if (button.getAttribute('aria-labelledby') == 'card-label-Todas') { standInPane('photos', id); }" +
+            "  if (button.getAttribute('jsaction') == 'pane.rating.moreReviews') { standInPane('reviews', id); }" +
+            "});";
+
+    /**
+     * A winery served by the stand-in
+     */
+    private static class Winery {
+
+        /**
+         * Name of the winery
+         */
+        private final String name;
+
+        /**
+         * The path of the winery, with its coordinates after /@
+         */
+        private final String path;
+
+        /**
+         * The HTML of the place page, with the script of the stand-in
+         */
+        private final String placePage;
+
+        /**
+         * Number of photos of the gallery
+         */
+        private final int numPhotos;
+
+        /**
+         * The HTML of the reviews
+         */
+        private final List<String> reviews;
+
+        /**
+         * Constructs a new instance of {@link Winery}
+         *
+         * @param name Name of the winery
+         * @param path The path of the winery, with its coordinates after /@
+         * @param placePage The HTML of the place page, with the script of the stand-in
+         * @param numPhotos Number of photos of the gallery
+         * @param reviews The HTML of the reviews
+         */
+        private Winery(String name, String path, String placePage, int numPhotos, List<String> reviews) {
+
+            this.name = name;
+            this.path = path;
+            this.placePage = placePage;
+            this.numPhotos = numPhotos;
+            this.reviews = reviews;
+        }
+    }
+
+    /**
+     * The wineries served, by their index in the paths
+     */
+    private final List<Winery> wineries;
+
+    /**
+     * Milliseconds waited before answering each request
+     */
+    private final long latency;
+
+    /**
+     * The HTTP server
+     */
+    private final HttpServer server;
+
+    /**
+     * The threads which answer the requests
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a new instance of {@link MapsStandIn}, which is not started
+     *
+     * @param port Port of the server in the loopback interface, or 0 for any free port
+     * @param latency Milliseconds waited before answering each request
+     * @throws IOException if the server can not be created
+     */
+    public MapsStandIn(int port, long latency) throws IOException {
+
+        this.wineries = new ArrayList<>();
+        this.latency = latency;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        this.server.createContext("/", this::handle);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "maps-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(this.executor);
+    }
+
+    /**
+     * Generates the wineries served. The number of reviews of each winery follows a geometric distribution, so
+     * most wineries have a few reviews and some of them many, as in Google Maps
+     *
+     * @param corpus The reviews of the wineries, which are taken in order and reused when they run out
+     * @param numWineries Number of wineries
+     * @param meanReviews Mean number of reviews of a winery
+     * @param seed The seed of the generator
+     */
+    public void generate(ReviewCorpus corpus, int numWineries, int meanReviews, long seed) {
+
+        Random random = new Random(seed);
+        List<String> corpusReviews = corpus.getReviews();
+        int nextReview = 0;
+        for (int i = 0; i < numWineries; i++) {
+            int numReviews = (int) Math.min(50L * Math.max(meanReviews, 1),
+                    Math.round(-Math.log(1 - random.nextDouble()) * meanReviews));
+            List<String> reviews = new ArrayList<>(numReviews);
+            for (int j = 0; j < numReviews && !corpusReviews.isEmpty(); j++) {
+                reviews.add(corpusReviews.get(nextReview++ % corpusReviews.size()));
+            }
+            int numPhotos = random.nextInt(4 * PHOTOS_PAGE);
+            String name = "Bodega " + (i + 1);
+            String path = "/maps/place/" + this.wineries.size() + "/@" + String.format(Locale.ROOT, "%.7f,%.7f,15z",
+                    42 + random.nextDouble(), -8.5 + random.nextDouble() * 1.5);
+            this.wineries.add(new Winery(name, path, generatePlacePage(random, this.wineries.size(), name, numReviews, numPhotos),
+                    numPhotos, reviews));
+        }
+    }
+
+    /**
+     * Records the wineries of the snapshots of a folder
+     *
+     * @param folder The folder of the snapshots
+     * @throws IOException if the snapshots can not be read
+     */
+    public void record(String folder) throws IOException {
+
+        File[] files = new File(folder).listFiles((dir, name) -> name.endsWith(SnapshotStore.EXTENSION));
+        if (files == null || files.length == 0) {
+            throw new IOException("There are not snapshots in " + folder);
+        }
+
+        for (File file : files) {
+            try (SnapshotReader snapshot = new SnapshotReader(file)) {
+                List<String> reviews = new ArrayList<>();
+                String review;
+                while ((review = snapshot.nextReview()) != null) {
+                    reviews.add(review);
+                }
+                String url = snapshot.getUrl().toString();
+                int coords = url.indexOf("/@");
+                String path = "/maps/place/" + this.wineries.size() + ((coords >= 0) ? url.substring(coords) : "/");
+                int numPhotos = (snapshot.getLastPhoto() != null) ? Integer.parseInt(snapshot.getLastPhoto()) + 1 : 0;
+                this.wineries.add(new Winery(snapshot.getName(), path,
+                        cleanPlacePage(snapshot.getPlacePage(), this.wineries.size()), numPhotos, reviews));
+            }
+        }
+    }
+
+    /**
+     * Starts answering the requests
+     */
+    public void start() {
+        this.server.start();
+    }
+
+    /**
+     * @return Returns the number of wineries served
+     */
+    public int getNumWineries() {
+        return this.wineries.size();
+    }
+
+    /**
+     * @return Returns the total number of reviews of the wineries served
+     */
+    public long getNumReviews() {
+
+        long numReviews = 0;
+        for (Winery winery : this.wineries) {
+            numReviews += winery.reviews.size();
+        }
+        return numReviews;
+    }
+
+    /**
+     * @param index The index of a winery
+     * @return Returns the name of the winery
+     */
+    public String getName(int index) {
+        return this.wineries.get(index).name;
+    }
+
+    /**
+     * @param index The index of a winery
+     * @return Returns the web address of the place page of the winery in the stand-in
+     * @throws IOException if the web address is not valid
+     */
+    public URL getUrl(int index) throws IOException {
+        return new URL("http://127.0.0.1:" + this.server.getAddress().getPort() + this.wineries.get(index).path);
+    }
+
+    /**
+     * Stops the server
+     */
+    @Override
+    public void close() {
+
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Answers a request: /maps/place/{index}/... with the place page of a winery, and
+     * /standin/photos/{index}?page=n and /standin/reviews/{index}?page=n with a page of its gallery or its reviews
+     *
+     * @param exchange The request
+     * @throws IOException if the answer can not be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+
+        try {
+            if (this.latency > 0) {
+                Thread.sleep(this.latency);
+            }
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            String query = exchange.getRequestURI().getQuery();
+            int page = (query != null && query.startsWith("page=")) ? Integer.parseInt(query.substring("page=".length())) : 0;
+            if (path.length >= 4 && path[1].equals("maps") && path[2].equals("place")) {
+                send(exchange, 200, this.wineries.get(Integer.parseInt(path[3])).placePage);
+            } else if (path.length == 4 && path[1].equals("standin") && path[2].equals("photos")) {
+                Winery winery = this.wineries.get(Integer.parseInt(path[3]));
+                StringBuilder html = new StringBuilder();
+                for (int i = page * PHOTOS_PAGE; i < Math.min((page + 1) * PHOTOS_PAGE, winery.numPhotos); i++) {
+                    html.append("<div class=\"gallery-cell\" data-photo-index=\"").append(i).append("\" style=\"height:120px\">Foto</div>");
+                }
+                exchange.getResponseHeaders().add("X-Stand-In-Last", String.valueOf((page + 1) * PHOTOS_PAGE >= winery.numPhotos));
+                send(exchange, 200, html.toString());
+            } else if (path.length == 4 && path[1].equals("standin") && path[2].equals("reviews")) {
+                Winery winery = this.wineries.get(Integer.parseInt(path[3]));
+                StringBuilder html = new StringBuilder();
+                for (int i = page * REVIEWS_PAGE; i < Math.min((page + 1) * REVIEWS_PAGE, winery.reviews.size()); i++) {
+                    html.append(winery.reviews.get(i));
+                }
+                exchange.getResponseHeaders().add("X-Stand-In-Last", String.valueOf((page + 1) * REVIEWS_PAGE >= winery.reviews.size()));
+                send(exchange, 200, html.toString());
+            } else {
+                send(exchange, 404, "");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        } catch (RuntimeException e) {
+            send(exchange, 400, String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * @param exchange The request
+     * @param status The HTTP status of the answer
+     * @param html The HTML of the answer
+     * @throws IOException if the answer can not be sent
+     */
+    private static void send(HttpExchange exchange, int status, String html) throws IOException {
+
+        byte[] body = html.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(status, (body.length > 0) ? body.length : -1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @param random The generator
+     * @param index The index of the winery
+     * @param name Name of the winery
+     * @param numReviews Number of reviews of the winery
+     * @param numPhotos Number of photos of the winery
+     * @return The HTML of a place page, with the elements read by {@link WebExtractor}
+     */
+    private static String generatePlacePage(Random random, int index, String name, int numReviews, int numPhotos) {
+
+        StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>")
+                .append(name).append("</title></head><body data-standin-id=\"").append(index).append("\">");
+        html.append("<h1 class=\"section-hero-header-title-title\">").append(name).append("</h1>");
+        html.append("<span class=\"section-star-display\">").append(1 + random.nextInt(4)).append(',').append(random.nextInt(10)).append("</span>");
+        html.append("<span class=\"section-rating-term-list\"><button>(").append(numReviews).append(")</button></span>");
+        html.append("<button data-item-id=\"address\" aria-label=\"Dirección: Rúa ").append(index).append(", Ourense\"></button>");
+        html.append("<div class=\"section-open-hours-container\" aria-label=\"lunes, 10:00–14:00\"></div>");
+        html.append("<button data-item-id=\"authority\" aria-label=\"Sitio web: bodega").append(index).append(".es\"></button>");
+        html.append("<button data-item-id=\"phone:tel:988000000\" aria-label=\"Teléfono: 988 00 00 00\"></button>");
+        html.append("<button data-item-id=\"oloc\"><div class=\"ugiz4pqJLAG__primary-text\">9F2X+")
+                .append(String.format(Locale.ROOT, "%02d", index % 100)).append(" Ourense</div></button>");
+        int remaining = numReviews;
+        html.append("<table>");
+        for (int stars = 5; stars >= 1; stars--) {
+            int count = (stars == 1) ? remaining : random.nextInt(remaining + 1);
+            remaining -= count;
+            html.append("<tr aria-label=\"").append(stars).append(" estrellas, ").append(count).append(" reseñas\"><td></td></tr>");
+        }
+        html.append("</table>");
+        html.append("<div>").append(numPhotos).append(" fotos</div>");
+        if (numPhotos > 0) {
+            html.append("<button aria-labelledby=\"card-label-Todas\">Todas</button>");
+        }
+        if (numReviews > 0) {
+            html.append("<button jsaction=\"pane.rating.moreReviews\">Más reseñas</button>");
+        }
+        return html.append("<script>").append(SCRIPT).append("</script></body></html>").toString();
+    }
+
+    /**
+     * Removes from a recorded place page what would be requested out of the stand-in or would be read instead of
+     * the pages of the stand-in, and adds the script of the stand-in
+     *
+     * @param placePage The HTML of the recorded place page
+     * @param index The index of the winery
+     * @return The HTML of the place page served
+     */
+    private static String cleanPlacePage(String placePage, int index) {
+
+        Document doc = Jsoup.parse(placePage);
+        doc.select("script, link, iframe, img, source, .section-review, .gallery-cell, .section-loading").remove();
+        doc.select("[style*=url(]").removeAttr("style");
+        doc.body().attr("data-standin-id", String.valueOf(index));
+        Element script = doc.body().appendElement("script");
+        script.appendChild(new DataNode(SCRIPT));
+        return doc.outerHtml();
+    }
+}
@@ -0,0 +1,207 @@
+package org.EnoTurEPO.Reviews;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Corpus of the HTML of reviews used by the benchmarks. It is read from the snapshots saved by a crawl with
+ * --snapshots, or generated from the dictionaries of emojis and emoticons when there are no snapshots. The generated
+ * reviews mix short, medium and long texts, without emojis, with a few and full of them, translated or not, and with
+ * or without an answer of the owner, always in the same order for the same seed.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class ReviewCorpus {
+
+    /**
+     * Words of the generated texts
+     */
+    private static final String[] WORDS = {"bodega", "vino", "visita", "cata", "albariño", "godello", "mencía",
+            "viñedo", "guía", "muy", "recomendable", "precio", "trato", "excelente", "bueno", "malo", "volveremos",
+            "familia", "tienda", "barrica", "paisaje", "río", "terraza", "explicación", "amable", "caro", "reserva",
+            "el", "la", "de", "que", "y", "con", "un", "una", "para", "nos", "por", "los", "las", "en", "es", "pero"};
+
+    /**
+     * Number of words of the short, medium and long texts
+     */
+    private static final int[][] LENGTHS = {{3, 15}, {30, 80}, {150, 400}};
+
+    /**
+     * Probability of each word being followed by an emoji or an emoticon, without them, with a few and full of them
+     */
+    private static final double[] DENSITIES = {0.0, 0.03, 0.2};
+
+    /**
+     * The HTML of the reviews
+     */
+    private final List<String> reviews;
+
+    /**
+     * Constructs a new instance of {@link ReviewCorpus}
+     *
+     * @param reviews The HTML of the reviews
+     */
+    private ReviewCorpus(List<String> reviews) {
+        this.reviews = reviews;
+    }
+
+    /**
+     * @return Returns the HTML of the reviews
+     */
+    public List<String> getReviews() {
+        return this.reviews;
+    }
+
+    /**
+     * Reads the reviews of the snapshots of a folder
+     *
+     * @param folder The folder of the snapshots
+     * @param maxReviews Maximum number of reviews read
+     * @return The corpus
+     * @throws IOException if the snapshots can not be read
+     */
+    public static ReviewCorpus load(String folder, int maxReviews) throws IOException {
+
+        File[] files = new File(folder).listFiles((dir, name) -> name.endsWith(SnapshotStore.EXTENSION));
+        if (files == null || files.length == 0) {
+            throw new IOException("There are not snapshots in " + folder);
+        }
+
+        List<String> reviews = new ArrayList<>();
+        for (File file : files) {
+            try (SnapshotReader snapshot = new SnapshotReader(file)) {
+                String review;
+                while (reviews.size() < maxReviews && (review = snapshot.nextReview()) != null) {
+                    reviews.add(review);
+                }
+            }
+        }
+        return new ReviewCorpus(reviews);
+    }
+
+    /**
+     * Generates the reviews with the entries of the dictionaries of emojis and emoticons
+     *
+     * @param resourcesFolder The folder with the emojis and emoticons folders
+     * @param numReviews Number of reviews generated
+     * @param seed The seed of the generator
+     * @return The corpus
+     * @throws IOException if the dictionaries can not be read
+     */
+    public static ReviewCorpus generate(String resourcesFolder, int numReviews, long seed) throws IOException {
+
+        List<String> emojis = readEntries(resourcesFolder + "emojis/emojisID.es.json");
+        List<String> emoticons = readEntries(resourcesFolder + "emoticons/emoticonsID.es.json");
+        Random random = new Random(seed);
+
+        List<String> reviews = new ArrayList<>();
+        for (int i = 0; i < numReviews; i++) {
+            // Every combination of length and density appears in each group of nine reviews
+            int[] length = LENGTHS[i % LENGTHS.length];
+            double density = DENSITIES[(i / LENGTHS.length) % DENSITIES.length];
+            String text = generateText(random, length, density, emojis, emoticons);
+            if (random.nextInt(4) == 0) {
+                text = "(Traducido por Google) " + text + " (Original) " + generateText(random, length, density, emojis, emoticons);
+            }
+            String answer = (random.nextInt(3) == 0) ? generateText(random, LENGTHS[0], 0.0, emojis, emoticons) : null;
+            reviews.add(generateReview(random, i, text, answer));
+        }
+        return new ReviewCorpus(reviews);
+    }
+
+    /**
+     * @param path Path of a dictionary containing <entry,<polarity, synsetID>>
+     * @return The entries of the dictionary
+     * @throws IOException if the dictionary can not be read
+     */
+    private static List<String> readEntries(String path) throws IOException {
+
+        try (FileInputStream is = new FileInputStream(path)) {
+            JsonReader rdr = Json.createReader(is);
+            JsonObject jsonObject = rdr.readObject();
+            rdr.close();
+            return new ArrayList<>(jsonObject.keySet());
+        }
+    }
+
+    /**
+     * @param random The generator
+     * @param length Minimum and maximum number of words
+     * @param density Probability of each word being followed by an emoji or an emoticon
+     * @param emojis The emojis of the dictionary
+     * @param emoticons The emoticons of the dictionary
+     * @return A text
+     */
+    private static String generateText(Random random, int[] length, double density, List<String> emojis, List<String> emoticons) {
+
+        int numWords = length[0] + random.nextInt(length[1] - length[0] + 1);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < numWords; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+            if (random.nextDouble() < density) {
+                // Emojis are written next to the words and emoticons between spaces, as they are matched
+                if (random.nextBoolean()) {
+                    text.append(emojis.get(random.nextInt(emojis.size())));
+                } else {
+                    text.append(' ').append(emoticons.get(random.nextInt(emoticons.size())));
+                }
+            }
+        }
+        return text.append('.').toString();
+    }
+
+    /**
+     * @param random The generator
+     * @param numReview Number of the review
+     * @param text Text of the review
+     * @param answer Text of the answer of the owner, or null if there is no answer
+     * @return The HTML of a review, with the classes read by {@link WebExtractor}
+     */
+    private static String generateReview(Random random, int numReview, String text, String answer) {
+
+        StringBuilder html = new StringBuilder("<div class=\"section-review\">");
+        html.append("<div class=\"section-review-title\">Autor ").append(numReview).append("</div>");
+        if (random.nextBoolean()) {
+            html.append("<div class=\"section-review-subtitle\">Local Guide・").append(1 + random.nextInt(200)).append(" reseñas</div>");
+        } else {
+            html.append("<div class=\"section-review-subtitle\"></div>");
+        }
+        html.append("<span class=\"section-review-stars\" aria-label=\" ").append(1 + random.nextInt(5)).append(" estrellas \"></span>");
+        html.append("<span class=\"section-review-publish-date\">hace ").append(1 + random.nextInt(11)).append(" meses</span>");
+        for (int i = random.nextInt(3); i > 0; i--) {
+            html.append("<button aria-label=\"Foto\"></button>");
+        }
+        html.append("<span class=\"section-review-text\">").append(escape(text)).append("</span>");
+        html.append("<span class=\"section-review-thumbs-up-count\">");
+        int likes = random.nextInt(5);
+        if (likes > 0) {
+            html.append(likes);
+        }
+        html.append("</span>");
+        if (answer != null) {
+            html.append("<div class=\"section-review-owner-response\">");
+            html.append("<span class=\"section-review-owner-response-subtitle\">hace 1 mes</span>");
+            html.append("<span class=\"section-review-text\">").append(escape(answer)).append("</span>");
+            html.append("</div>");
+        }
+        return html.append("</div>").toString();
+    }
+
+    /**
+     * @param text A text
+     * @return The text with the HTML special characters escaped
+     */
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -1,10 +1,39 @@
 package org.EnoTurEPO;
 
 import com.opencsv.CSVReader;
+import org.EnoTurEPO.Output.BufferedDatasetWriter;
+import org.EnoTurEPO.Output.ColumnarDatasetWriter;
+import org.EnoTurEPO.Output.DatasetSink;
+import org.EnoTurEPO.Output.ShardedDatasetWriter;
+import org.EnoTurEPO.Output.TeeDatasetSink;
+import org.EnoTurEPO.Reviews.CrawlCosts;
+import org.EnoTurEPO.Reviews.CrawlJournal;
+import org.EnoTurEPO.Reviews.CrawlPlanner;
+import org.EnoTurEPO.Reviews.CrawlScheduler;
+import org.EnoTurEPO.Reviews.DriverPool;
+import org.EnoTurEPO.Reviews.KnownReviews;
+import org.EnoTurEPO.Reviews.ReviewEnricher;
+import org.EnoTurEPO.Reviews.ReviewReprocessor;
+import org.EnoTurEPO.Reviews.SnapshotReader;
+import org.EnoTurEPO.Reviews.SnapshotStore;
 import org.EnoTurEPO.Reviews.WebExtractor;
+import org.EnoTurEPO.util.CrawlMetrics;
+import org.EnoTurEPO.util.LanguageIdentifier;
+import org.EnoTurEPO.util.Trio;
+import org.bdp4j.util.CSVDatasetWriter;
 
+import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main class for EnoTurEPO project
@@ -15,6 +44,32 @@ public class Main {
 
     /**
      * The main method for the running application
+     *
+     * @param args Optionally, the number of wineries read at the same time. Without it, wineries are read one by one in a
+     *             single browser session. In both cases a winery which can not be read is reported and the crawl goes
+     *             on with the next one. An unknown argument prints the usage. With --columnar, the datasets are also written in columnar files.
+     *             With --delta or --delta=reviews.csv, only the reviews which are not in the reviews of a previous run
+     *             (by default, the output of reviews) are written. With --languages=es,gl,en,pt, the language of
+     *             the texts is only identified among those languages. With --snapshots=folder, the pages read are
+     *             kept in that folder, except those of a delta crawl stopped at a known review. With --replay=folder, the wineries are extracted again from the pages kept in
+     *             that folder, without a browser. With --metrics=60, a summary of the metrics of the crawl is
+     *             printed every 60 seconds. The metrics are always written to crawlMetrics.tsv when the crawl ends.
+     *             With --reenrich=reviews.csv, the reviews of that CSV are enriched again with the current
+     *             dictionaries in as many threads as the number given (by default, all the processors), and written
+     *             to outputReviewsReenrichedCSV.csv, without reading Google Maps. With --compile-lexicons, the
+     *             emoji and emoticon dictionaries are compiled next to their .json files, to be loaded faster.
+     *             Before a crawl, all the rows of the input are validated, and the wineries are read in the order
+     *             of the input. With --batches, they are grouped by D.O. and proximity into batches read one after
+     *             another by the same worker, which changes the order of the rows of the outputs. With --plan, the
+     *             rows which are not valid and the batches are printed without reading Google Maps. With
+     *             --largest-first or --largest-first=places.csv, the batches (or the wineries, without --batches)
+     *             are read from the most to the least expensive, estimating
+     *             the cost of each winery from its number of reviews in the places of a previous run (by default,
+     *             the output of places). With --lean, the browser is headless and does not download images, fonts,
+     *             media or map tiles, and the bytes and the time per winery are compared with the previous crawl.
+     *             With --sharded, each worker writes the places and the reviews to its own shard files, which are
+     *             merged into the output CSVs in the order of the input when the crawl ends. The shards left by an
+     *             interrupted crawl are merged before the next crawl starts, or alone with --merge
      */
     public static void main(String[] args) {
 
@@ -23,16 +78,350 @@ public class Main {
         String csvFileReviews = "src/main/resources/output/outputReviewsCSV.csv";
         String emoticonsFolder = "src/main/resources/emoticons/";
         String emojisFolder = "src/main/resources/emojis/";
+        String csvFileWebs = "src/main/resources/Excel_DatosWebs.csv";
+        String columnarFilePlaces = "src/main/resources/output/outputPlaces.enoc";
+        String columnarFileReviews = "src/main/resources/output/outputReviews.enoc";
+        String journalFile = "src/main/resources/output/crawlJournal.tsv";
+        String metricsFile = "src/main/resources/output/crawlMetrics.tsv";
+        String csvFileReenriched = "src/main/resources/output/outputReviewsReenrichedCSV.csv";
+
+        int numWorkers = 0;
+        boolean columnar = false;
+        String deltaFile = null;
+        List<String> languages = new ArrayList<>();
+        String snapshotsFolder = null;
+        String replayFolder = null;
+        long metricsPeriod = 0;
+        String reenrichFile = null;
+        boolean compileLexicons = false;
+        boolean planOnly = false;
+        String costsFile = null;
+        boolean lean = false;
+        boolean sharded = false;
+        boolean batched = false;
+        boolean mergeOnly = false;
+        for (String arg : args) {
+            if (arg.equals("--columnar")) {
+                columnar = true;
+            } else if (arg.equals("--delta")) {
+                deltaFile = csvFileReviews;
+            } else if (arg.startsWith("--delta=")) {
+                deltaFile = arg.substring("--delta=".length());
+            } else if (arg.startsWith("--languages=")) {
+                languages = Arrays.asList(arg.substring("--languages=".length()).split(","));
+            } else if (arg.startsWith("--snapshots=")) {
+                snapshotsFolder = arg.substring("--snapshots=".length());
+            } else if (arg.startsWith("--replay=")) {
+                replayFolder = arg.substring("--replay=".length());
+            } else if (arg.equals("--largest-first")) {
+                costsFile = csvFilePlaces;
+            } else if (arg.startsWith("--largest-first=")) {
+                costsFile = arg.substring("--largest-first=".length());
+            } else if (arg.equals("--lean")) {
+                lean = true;
+            } else if (arg.equals("--sharded")) {
+                sharded = true;
+            } else if (arg.equals("--merge")) {
+                mergeOnly = true;
+            } else if (arg.equals("--batches")) {
+                batched = true;
+            } else if (arg.equals("--plan")) {
+                planOnly = true;
+            } else if (arg.equals("--compile-lexicons")) {
+                compileLexicons = true;
+            } else if (arg.startsWith("--reenrich=")) {
+                reenrichFile = arg.substring("--reenrich=".length());
+            } else if (arg.matches("--metrics=\\d{1,9}")) {
+                metricsPeriod = Long.parseLong(arg.substring("--metrics=".length()));
+            } else if (arg.matches("\\d{1,4}")) {
+                numWorkers = Integer.parseInt(arg);
+            } else {
+                System.err.println("Unknown argument: " + arg);
+                printUsage();
+                return;
+            }
+        }
+
+        if (compileLexicons) {
+            try {
+                ReviewEnricher.compileLexicons(emoticonsFolder, emojisFolder);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+            return;
+        }
+        if (reenrichFile != null) {
+            reenrich(reenrichFile, csvFileReenriched, emoticonsFolder, emojisFolder, languages,
+                    (numWorkers > 0) ? numWorkers : Runtime.getRuntime().availableProcessors());
+            return;
+        }
+
+        if (mergeOnly) {
+            try {
+                mergeShards(csvFileWebs, csvFilePlaces, csvFileReviews);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+            return;
+        }
+
+        if (planOnly) {
+            try {
+                // The journal is only read, so it is not created if there is no crawl to resume
+                CrawlJournal journal = new File(journalFile).exists() ? new CrawlJournal(journalFile) : null;
+                CrawlCosts costs = (costsFile != null) ? CrawlCosts.load(costsFile) : null;
+                List<List<Trio<String, String, URL>>> batches = plan(csvFileWebs, journal, costs, batched);
+                if (journal != null) {
+                    journal.close();
+                }
+                for (int i = 0; i < batches.size(); i++) {
+                    System.out.println("Batch " + (i + 1) + " (" + batches.get(i).get(0).getObj2() + "):");
+                    for (Trio<String, String, URL> winery : batches.get(i)) {
+                        System.out.println("\t" + winery.getObj1());
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+            return;
+        }
+
+        DriverPool driverPool = new DriverPool(Math.max(numWorkers, 1), lean ? DriverPool.leanOptions() : DriverPool.defaultOptions());
+        WebExtractor webExtractor = null;
+        CrawlJournal journal = null;
         try{
-            WebExtractor webExtractor = new WebExtractor(csvFilePlaces, csvFileReviews, emoticonsFolder, emojisFolder);
-            CSVReader csvReader = new CSVReader(new FileReader("src/main/resources/Excel_DatosWebs.csv"), ';', '"',1);
-            String[] row;
-            while((row = csvReader.readNext()) != null) {
-                webExtractor.run(row[0], row[1], new URL(row[2]));
+            journal = new CrawlJournal(journalFile);
+            if (journal.getNumFinished() > 0) {
+                System.out.println("--- Resuming the crawl: " + journal.getNumFinished() + " wineries were already finished ---");
+            }
+            // The rows of an interrupted sharded crawl are merged before they are read or written again
+            mergeShards(csvFileWebs, csvFilePlaces, csvFileReviews);
+            // Read before the metrics of this crawl overwrite them
+            Map<String, Double> previousMeans = CrawlMetrics.loadMeans(metricsFile);
+            KnownReviews knownReviews = null;
+            if (deltaFile != null) {
+                // Loaded before the outputs are opened, as they can be the same file
+                knownReviews = KnownReviews.load(deltaFile);
+                System.out.println("--- Delta crawl: known reviews of " + knownReviews.getNumWineries() + " wineries ---");
             }
-            csvReader.close();
+            CrawlCosts costs = null;
+            if (costsFile != null) {
+                // Also loaded before the outputs are opened
+                costs = CrawlCosts.load(costsFile);
+                System.out.println("--- Largest first: known reviews of " + costs.getNumWineries() + " wineries ---");
+            }
+            DatasetSink outputPlaces = sharded ? new ShardedDatasetWriter(csvFilePlaces) : new BufferedDatasetWriter(new CSVDatasetWriter(csvFilePlaces));
+            DatasetSink outputReviews = sharded ? new ShardedDatasetWriter(csvFileReviews) : new BufferedDatasetWriter(new CSVDatasetWriter(csvFileReviews));
+            if (columnar) {
+                // The columnar files accumulate the rows of every run, as the CSVs
+                outputPlaces = new TeeDatasetSink(outputPlaces, new ColumnarDatasetWriter(columnarFilePlaces));
+                outputReviews = new TeeDatasetSink(outputReviews, new ColumnarDatasetWriter(columnarFileReviews));
+            }
+            webExtractor = new WebExtractor(outputPlaces, outputReviews, emoticonsFolder, emojisFolder);
+            webExtractor.setJournal(journal);
+            webExtractor.setKnownReviews(knownReviews);
+            webExtractor.setLanguageIdentifier(LanguageIdentifier.getInstance(languages));
+            driverPool.setMetrics(webExtractor.getMetrics());
+            if (metricsPeriod > 0) {
+                webExtractor.getMetrics().startReporter(metricsPeriod, TimeUnit.SECONDS);
+            }
+            if (snapshotsFolder != null) {
+                webExtractor.setSnapshotStore(new SnapshotStore(snapshotsFolder));
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(webExtractor::flush));
+            if (replayFolder != null) {
+                // The pages are already read, so no browser is started and the journal is not used
+                SnapshotStore snapshots = new SnapshotStore(replayFolder);
+                CSVReader csvReader = new CSVReader(new FileReader(csvFileWebs), ';', '"',1);
+                String[] row;
+                int missing = 0;
+                while((row = csvReader.readNext()) != null) {
+                    URL url = new URL(row[2]);
+                    if (!snapshots.exists(row[0], url)) {
+                        missing++;
+                        continue;
+                    }
+                    try (SnapshotReader snapshot = snapshots.open(row[0], url)) {
+                        webExtractor.replay(snapshot);
+                    }
+                }
+                csvReader.close();
+                System.out.println("--- " + missing + " wineries have no snapshot ---");
+            } else {
+                // Without a number of workers, a single worker reads the wineries one by one, and also goes on
+                // with the next winery when one fails
+                CrawlScheduler scheduler = new CrawlScheduler(webExtractor, driverPool, Math.max(numWorkers, 1));
+                BlockingQueue<List<Trio<String, String, URL>>> batches = new LinkedBlockingQueue<>(plan(csvFileWebs, journal, costs, batched));
+                int failed = scheduler.runBatches(batches);
+                System.out.println("--- " + failed + " wineries could not be read ---");
+                if (failed == 0) {
+                    journal.delete();
+                }
+            }
+            System.out.println("--- Metrics of the crawl ---\n" + webExtractor.getMetrics().summary());
+            printTransfer(webExtractor.getMetrics(), previousMeans, lean);
         }catch(Exception e){
             System.err.println(e.getMessage());
+        } finally {
+            if (webExtractor != null) {
+                webExtractor.close();
+                try {
+                    webExtractor.getMetrics().export(metricsFile);
+                } catch (IOException e) {
+                    System.err.println("The metrics could not be written to " + metricsFile + ": " + e.getMessage());
+                }
+                if (sharded) {
+                    try {
+                        mergeShards(csvFileWebs, csvFilePlaces, csvFileReviews);
+                    } catch (IOException e) {
+                        System.err.println("The shards could not be merged, they will be merged by the next crawl: " + e.getMessage());
+                    }
+                }
+            }
+            if (journal != null) {
+                journal.close();
+            }
+            driverPool.close();
+        }
+    }
+
+    /**
+     * Prints the arguments accepted by {@link #main(String[])}
+     */
+    private static void printUsage() {
+
+        System.err.println("Usage: Main [workers] [options]");
+        System.err.println("  workers                  Number of wineries read at the same time (by default, 1)");
+        System.err.println("  --columnar               Also write the datasets in columnar files");
+        System.err.println("  --delta[=reviews.csv]    Only write the reviews which are not in a previous run");
+        System.err.println("  --languages=es,gl,...    Identify the language of the texts among those languages");
+        System.err.println("  --snapshots=folder       Keep the pages read in that folder");
+        System.err.println("  --replay=folder          Extract the wineries again from the pages kept in that folder");
+        System.err.println("  --metrics=seconds        Print a summary of the metrics of the crawl periodically");
+        System.err.println("  --reenrich=reviews.csv   Enrich again the reviews of that CSV, without reading Google Maps");
+        System.err.println("  --compile-lexicons       Compile the emoji and emoticon dictionaries");
+        System.err.println("  --batches                Group the wineries by D.O. and proximity, instead of the input order");
+        System.err.println("  --plan                   Print the invalid rows of the input and the batches of the crawl");
+        System.err.println("  --largest-first[=places.csv]  Read the most expensive batches first");
+        System.err.println("  --lean                   Read with a headless browser which does not download images");
+        System.err.println("  --sharded                Write a shard per worker, merged when the crawl ends");
+        System.err.println("  --merge                  Only merge the shards of an interrupted crawl");
+    }
+
+    /**
+     * Prints the bytes transferred and the time spent per winery, and how much less they are than in the previous
+     * crawl, to compare a lean crawl with a default one
+     *
+     * @param metrics The metrics of the crawl
+     * @param previousMeans The means of the metrics of the previous crawl
+     * @param lean True if the crawl used the lean browser profile
+     */
+    private static void printTransfer(CrawlMetrics metrics, Map<String, Double> previousMeans, boolean lean) {
+
+        double kilobytes = metrics.getMean("bytes.winery") / 1024;
+        double millis = metrics.getMeanMillis("winery");
+        if (millis == 0) {
+            return;
+        }
+        System.out.println(String.format(Locale.ROOT, "--- %s profile: %.1f KB and %.0f ms per winery ---",
+                lean ? "Lean" : "Default", kilobytes, millis));
+        Double previousBytes = previousMeans.get("bytes.winery");
+        Double previousMillis = previousMeans.get("winery");
+        if (previousBytes != null && previousMillis != null) {
+            System.out.println(String.format(Locale.ROOT, "--- Saved per winery since the previous crawl: %.1f KB and %.0f ms ---",
+                    previousBytes / 1024 - kilobytes, previousMillis - millis));
+        }
+    }
+
+    /**
+     * Reads and validates the input CSV and plans the wineries which are not finished, reporting the rows which are
+     * not valid before any browser is started
+     *
+     * @param csvFile The input CSV
+     * @param journal The journal of the crawl, whose finished wineries are not planned, or null
+     * @param costs The estimated cost of each winery to plan the batches largest first, or null
+     * @param batched True to group the wineries into batches by D.O. and proximity, false to read them in the order
+     *                of the CSV
+     * @return The batches of trios <name, D.O., url>, in the order they should be read
+     * @throws IOException if the CSV can not be read
+     */
+    private static List<List<Trio<String, String, URL>>> plan(String csvFile, CrawlJournal journal, CrawlCosts costs, boolean batched) throws IOException {
+
+        CrawlPlanner planner = new CrawlPlanner();
+        planner.setCosts(costs);
+        planner.setBatched(batched);
+        planner.read(csvFile);
+        for (String invalidRow : planner.getInvalidRows()) {
+            System.err.println("Not valid, skipping... " + invalidRow);
+        }
+        List<List<Trio<String, String, URL>>> batches = planner.plan(
+                winery -> journal != null && journal.isFinished(winery.getObj1(), winery.getObj3()));
+        int numPlanned = 0;
+        for (List<Trio<String, String, URL>> batch : batches) {
+            numPlanned += batch.size();
+        }
+        System.out.println("--- " + numPlanned + " of " + planner.getNumWineries() + " wineries planned in "
+                + batches.size() + " batches, " + planner.getInvalidRows().size() + " rows are not valid ---");
+        return batches;
+    }
+
+    /**
+     * Merges the shards written by a sharded crawl into the CSVs of places and reviews, with the rows of the wineries
+     * in the order of the input CSV
+     *
+     * @param csvFileWebs The input CSV
+     * @param csvFilePlaces The CSV of places
+     * @param csvFileReviews The CSV of reviews
+     * @throws IOException if the input CSV or the shards can not be read, or the CSVs can not be written
+     */
+    private static void mergeShards(String csvFileWebs, String csvFilePlaces, String csvFileReviews) throws IOException {
+
+        if (!ShardedDatasetWriter.hasPendingShards(csvFilePlaces) && !ShardedDatasetWriter.hasPendingShards(csvFileReviews)) {
+            return;
+        }
+        CrawlPlanner planner = new CrawlPlanner();
+        planner.read(csvFileWebs);
+        List<String> keys = new ArrayList<>(planner.getNumWineries());
+        for (Trio<String, String, URL> winery : planner.getWineries()) {
+            keys.add(WebExtractor.outputKey(winery.getObj1(), winery.getObj3()));
+        }
+
+        long start = System.currentTimeMillis();
+        int numPlaces = ShardedDatasetWriter.merge(csvFilePlaces, keys);
+        int numReviews = ShardedDatasetWriter.merge(csvFileReviews, keys);
+        System.out.println("--- Merged " + numPlaces + " shards of places and " + numReviews + " shards of reviews in "
+                + (System.currentTimeMillis() - start) + " ms ---");
+    }
+
+    /**
+     * Enriches again the reviews of a CSV with the current dictionaries, without reading Google Maps
+     *
+     * @param csvFile The CSV of reviews
+     * @param outputFile The CSV where the reviews enriched are written
+     * @param emoticonsFolder Path of the folder of the emoticons dictionary
+     * @param emojisFolder Path of the folder of the emojis dictionary
+     * @param languages Codes of the candidate languages, or empty to use all the built-in ones
+     * @param numThreads Number of threads which enrich the reviews
+     */
+    private static void reenrich(String csvFile, String outputFile, String emoticonsFolder, String emojisFolder,
+                                 List<String> languages, int numThreads) {
+
+        CrawlMetrics metrics = new CrawlMetrics();
+        DatasetSink output = null;
+        try {
+            ReviewEnricher enricher = new ReviewEnricher(emoticonsFolder, emojisFolder, metrics);
+            enricher.setLanguageIdentifier(LanguageIdentifier.getInstance(languages));
+            output = new BufferedDatasetWriter(new CSVDatasetWriter(outputFile));
+            long start = System.currentTimeMillis();
+            long numReviews = new ReviewReprocessor(enricher, numThreads, ReviewReprocessor.DEFAULT_CHUNK_SIZE).run(csvFile, output);
+            System.out.println("--- " + numReviews + " reviews enriched again in " + (System.currentTimeMillis() - start) + " ms ---");
+            System.out.println("--- Metrics of the enrichment ---\n" + metrics.summary());
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        } finally {
+            if (output != null) {
+                output.close();
+            }
         }
     }
-}
\ No newline at end of file
+}
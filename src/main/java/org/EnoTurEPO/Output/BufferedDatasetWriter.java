@@ -0,0 +1,318 @@
+package org.EnoTurEPO.Output;
+
+import org.bdp4j.util.CSVDatasetWriter;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffer in front of a {@link CSVDatasetWriter} which writes the rows in batches. The rows are flushed to the file
+ * when the buffer reaches a number of rows or a length of text, when the oldest row has waited too long, and whenever
+ * {@link #flush()} is called. The age of the oldest row is also checked by a background thread, so the rows are
+ * written while no more rows arrive, as during the waits between the pages of a winery. The values of a
+ * {@link DatasetRecord} are buffered as the text the CSV file stores, so its numbers are never boxed. This class is
+ * thread-safe.
+ * <p>
+ * The buffer must be closed with {@link #close()}, which writes its last rows and stops its background check. The
+ * check only holds the buffer weakly, so a buffer which is never closed can still be collected, but its last rows
+ * are lost.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class BufferedDatasetWriter implements DatasetSink {
+
+    /**
+     * Default number of rows which triggers a flush
+     */
+    public static final int DEFAULT_MAX_ROWS = 500;
+
+    /**
+     * Default length of the text of the rows, in characters, which triggers a flush
+     */
+    public static final long DEFAULT_MAX_TEXT_LENGTH = 1024 * 1024;
+
+    /**
+     * Length in characters counted for a number, which is not converted to text to measure it
+     */
+    private static final int NUMBER_LENGTH = 8;
+
+    /**
+     * Default milliseconds a row can wait in the buffer
+     */
+    public static final long DEFAULT_MAX_MILLIS = 10000;
+
+    /**
+     * The thread which flushes the rows which have waited too long, shared by all the buffers
+     */
+    private static final ScheduledExecutorService EXPIRER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dataset-expirer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The writer of the CSV file
+     */
+    private final CSVDatasetWriter writer;
+
+    /**
+     * Number of rows which triggers a flush
+     */
+    private final int maxRows;
+
+    /**
+     * Length of the text of the rows, in characters, which triggers a flush
+     */
+    private final long maxTextLength;
+
+    /**
+     * Milliseconds a row can wait in the buffer
+     */
+    private final long maxMillis;
+
+    /**
+     * The rows not written yet
+     */
+    private final List<Object[]> rows;
+
+    /**
+     * Estimated length of the text of the rows not written yet, in characters
+     */
+    private long textLength;
+
+    /**
+     * Time when the oldest row of the buffer was added
+     */
+    private long oldest;
+
+    /**
+     * Number of columns of the dataset, known when the columns are added
+     */
+    private int numColumns;
+
+    /**
+     * The row where the values of the record being added are written
+     */
+    private Object[] recordRow;
+
+    /**
+     * Writer of the values of the records into {@link #recordRow}, as the text of the CSV file
+     */
+    private final RecordWriter recordWriter;
+
+    /**
+     * The periodic check of the age of the oldest row, or null if the rows are always flushed
+     */
+    private final ScheduledFuture<?> expiry;
+
+    /**
+     * Constructs a new instance of {@link BufferedDatasetWriter} with the default limits
+     *
+     * @param writer The writer of the CSV file
+     */
+    public BufferedDatasetWriter(CSVDatasetWriter writer) {
+        this(writer, DEFAULT_MAX_ROWS, DEFAULT_MAX_TEXT_LENGTH, DEFAULT_MAX_MILLIS);
+    }
+
+    /**
+     * Constructs a new instance of {@link BufferedDatasetWriter}
+     *
+     * @param writer The writer of the CSV file
+     * @param maxRows Number of rows which triggers a flush
+     * @param maxTextLength Length of the text of the rows, in characters, which triggers a flush
+     * @param maxMillis Milliseconds a row can wait in the buffer
+     */
+    public BufferedDatasetWriter(CSVDatasetWriter writer, int maxRows, long maxTextLength, long maxMillis) {
+
+        this.writer = writer;
+        this.maxRows = maxRows;
+        this.maxTextLength = maxTextLength;
+        this.maxMillis = maxMillis;
+        this.rows = new ArrayList<>();
+        this.textLength = 0;
+        this.oldest = 0;
+        this.numColumns = -1;
+        this.recordWriter = new RecordWriter() {
+            @Override
+            public void writeInt(int column, int value) {
+                BufferedDatasetWriter.this.recordRow[column] = Integer.toString(value);
+            }
+
+            @Override
+            public void writeDouble(int column, double value) {
+                BufferedDatasetWriter.this.recordRow[column] = Double.toString(value);
+            }
+
+            @Override
+            public void writeString(int column, String value) {
+                BufferedDatasetWriter.this.recordRow[column] = value;
+            }
+        };
+        // Checked four times per limit, so a row waits at most a quarter of the limit more than it
+        long period = Math.max(maxMillis / 4, 1);
+        if (maxMillis > 0) {
+            Expiry check = new Expiry(this);
+            this.expiry = EXPIRER.scheduleWithFixedDelay(check, period, period, TimeUnit.MILLISECONDS);
+            check.future = this.expiry;
+        } else {
+            this.expiry = null;
+        }
+    }
+
+    @Override
+    public synchronized void addColumns(String[] columns, Object[] defaultValues) {
+
+        this.writer.addColumns(columns, defaultValues);
+        this.numColumns = columns.length;
+    }
+
+    /**
+     * Adds a record to the buffer, writing its values directly into the row buffered
+     *
+     * @param record The record, whose columns are the columns of the dataset
+     */
+    @Override
+    public synchronized void addRecord(DatasetRecord record) {
+
+        if (this.numColumns < 0) {
+            throw new IllegalStateException("The columns must be added before the records");
+        }
+        this.recordRow = new Object[this.numColumns];
+        try {
+            record.writeTo(this.recordWriter);
+            this.addRow(this.recordRow);
+        } finally {
+            this.recordRow = null;
+        }
+    }
+
+    /**
+     * Adds a row to the buffer, flushing it if any of its limits is reached
+     *
+     * @param row The values of the row
+     */
+    @Override
+    public synchronized void addRow(Object[] row) {
+
+        if (this.rows.isEmpty()) {
+            this.oldest = System.currentTimeMillis();
+        }
+        this.rows.add(row);
+        for (Object value : row) {
+            // The separator of the value is also counted
+            this.textLength += estimateLength(value) + 1;
+        }
+
+        if (this.rows.size() >= this.maxRows || this.textLength >= this.maxTextLength
+                || System.currentTimeMillis() - this.oldest >= this.maxMillis) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Writes all the rows of the buffer to the CSV file
+     */
+    @Override
+    public synchronized void flush() {
+
+        if (this.rows.isEmpty()) {
+            return;
+        }
+
+        for (Object[] row : this.rows) {
+            this.writer.addRow(row);
+        }
+        this.writer.flushAndClose();
+
+        this.rows.clear();
+        this.textLength = 0;
+    }
+
+    /**
+     * Writes the rows of the buffer if the oldest one has waited too long. As it runs in the background, a failure
+     * is reported instead of thrown
+     */
+    private synchronized void flushExpired() {
+
+        if (this.rows.isEmpty() || System.currentTimeMillis() - this.oldest < this.maxMillis) {
+            return;
+        }
+        try {
+            this.flush();
+        } catch (RuntimeException e) {
+            System.err.println("The rows of the buffer could not be written: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the rows of the buffer and stops the check of their age. It must be called when no more rows are added
+     */
+    @Override
+    public synchronized void close() {
+
+        if (this.expiry != null) {
+            this.expiry.cancel(false);
+        }
+        this.flush();
+    }
+
+    /**
+     * Estimates the length of the text of a value without converting numbers to text
+     *
+     * @param value The value, which can be null
+     * @return The length of the value in characters, or {@link #NUMBER_LENGTH} for a number
+     */
+    private static int estimateLength(Object value) {
+
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length();
+        }
+        if (value instanceof Number) {
+            return NUMBER_LENGTH;
+        }
+        return value.toString().length();
+    }
+
+    /**
+     * Periodic check of the age of the oldest row of a buffer. It holds the buffer weakly, so the background thread
+     * does not keep alive a buffer which was never closed, and it cancels itself once the buffer is collected
+     */
+    private static final class Expiry implements Runnable {
+
+        /**
+         * The buffer checked
+         */
+        private final WeakReference<BufferedDatasetWriter> buffer;
+
+        /**
+         * The scheduled execution of the check, set once it is scheduled
+         */
+        private volatile ScheduledFuture<?> future;
+
+        /**
+         * @param buffer The buffer checked
+         */
+        private Expiry(BufferedDatasetWriter buffer) {
+            this.buffer = new WeakReference<>(buffer);
+        }
+
+        @Override
+        public void run() {
+
+            BufferedDatasetWriter buffer = this.buffer.get();
+            if (buffer != null) {
+                buffer.flushExpired();
+            } else if (this.future != null) {
+                this.future.cancel(false);
+            }
+        }
+    }
+}
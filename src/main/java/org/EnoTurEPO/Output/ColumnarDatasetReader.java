@@ -0,0 +1,216 @@
+package org.EnoTurEPO.Output;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reader of the columnar files written by {@link ColumnarDatasetWriter}. The layout of a file, with all the
+ * numbers in big-endian order, is:
+ * <pre>
+ * int magic ("ENOC"), int version, int number of columns, string name of each column
+ * row groups: int number of rows (0 or the end of the file finish the groups),
+ *             for each column: byte type, int length of the chunk, chunk compressed with Deflate
+ * chunk of type 0: an int per row
+ * chunk of type 1: a double per row
+ * chunk of type 2: a string per row
+ * chunk of type 3: int size of the dictionary, string of each entry, an int per row (index of its entry or -1)
+ * string: int length in bytes (-1 for null) and the UTF-8 bytes
+ * </pre>
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class ColumnarDatasetReader implements Closeable {
+
+    /**
+     * The input stream of the file
+     */
+    private final DataInputStream in;
+
+    /**
+     * The names of the columns
+     */
+    private final String[] columns;
+
+    /**
+     * The values of the current row group, by column
+     */
+    private Object[][] rowGroup;
+
+    /**
+     * Index of the next row of the current row group
+     */
+    private int next;
+
+    /**
+     * True if the last row group has been read
+     */
+    private boolean finished;
+
+    /**
+     * Constructs a new instance of {@link ColumnarDatasetReader}
+     *
+     * @param file The columnar file to read
+     * @throws IOException if the file can not be read or it is not a columnar file
+     */
+    public ColumnarDatasetReader(String file) throws IOException {
+
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (this.in.readInt() != ColumnarDatasetWriter.MAGIC) {
+                throw new IOException(file + " is not a columnar file");
+            }
+            int version = this.in.readInt();
+            if (version != ColumnarDatasetWriter.VERSION) {
+                throw new IOException("The version " + version + " of " + file + " is not supported");
+            }
+            this.columns = new String[this.in.readInt()];
+            for (int i = 0; i < this.columns.length; i++) {
+                this.columns[i] = readString(this.in);
+            }
+        } catch (IOException e) {
+            this.in.close();
+            throw e;
+        }
+        this.rowGroup = new Object[this.columns.length][0];
+        this.next = 0;
+        this.finished = false;
+    }
+
+    /**
+     * @return Returns the names of the columns
+     */
+    public String[] getColumns() {
+        return this.columns.clone();
+    }
+
+    /**
+     * Reads the next row. Integers are returned as {@link Integer}, numbers as {@link Double} and the rest as
+     * {@link String}
+     *
+     * @return The values of the row or null if there are no more rows
+     * @throws IOException if the file can not be read
+     */
+    public Object[] readNext() throws IOException {
+
+        while (this.columns.length > 0 && this.next >= this.rowGroup[0].length) {
+            if (this.finished || !this.readRowGroup()) {
+                this.finished = true;
+                return null;
+            }
+        }
+        if (this.columns.length == 0) {
+            return null;
+        }
+
+        Object[] row = new Object[this.columns.length];
+        for (int column = 0; column < this.columns.length; column++) {
+            row[column] = this.rowGroup[column][this.next];
+        }
+        this.next++;
+        return row;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    /**
+     * Reads the next row group
+     *
+     * @return False if there are no more row groups
+     * @throws IOException if the file can not be read
+     */
+    private boolean readRowGroup() throws IOException {
+
+        int numRows;
+        try {
+            numRows = this.in.readInt();
+        } catch (EOFException e) {
+            // A file which was not closed ends after its last complete row group
+            return false;
+        }
+        if (numRows == 0) {
+            return false;
+        }
+
+        for (int column = 0; column < this.columns.length; column++) {
+            byte type = this.in.readByte();
+            byte[] chunk = new byte[this.in.readInt()];
+            this.in.readFully(chunk);
+            DataInputStream chunkIn = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(chunk)));
+            this.rowGroup[column] = readColumn(chunkIn, type, numRows);
+        }
+        this.next = 0;
+        return true;
+    }
+
+    /**
+     * Reads the values of a column chunk
+     *
+     * @param chunkIn The input of the chunk
+     * @param type The type of the chunk
+     * @param numRows The number of rows of the row group
+     * @return The values of the column
+     * @throws IOException if the chunk can not be read
+     */
+    static Object[] readColumn(DataInputStream chunkIn, byte type, int numRows) throws IOException {
+
+        Object[] values = new Object[numRows];
+        switch (type) {
+            case ColumnarDatasetWriter.TYPE_INT:
+                for (int i = 0; i < numRows; i++) {
+                    values[i] = chunkIn.readInt();
+                }
+                break;
+            case ColumnarDatasetWriter.TYPE_DOUBLE:
+                for (int i = 0; i < numRows; i++) {
+                    values[i] = chunkIn.readDouble();
+                }
+                break;
+            case ColumnarDatasetWriter.TYPE_STRING:
+                for (int i = 0; i < numRows; i++) {
+                    values[i] = readString(chunkIn);
+                }
+                break;
+            case ColumnarDatasetWriter.TYPE_DICTIONARY:
+                String[] dictionary = new String[chunkIn.readInt()];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = readString(chunkIn);
+                }
+                for (int i = 0; i < numRows; i++) {
+                    int entry = chunkIn.readInt();
+                    values[i] = (entry >= 0) ? dictionary[entry] : null;
+                }
+                break;
+            default:
+                throw new IOException("Unknown type of column " + type);
+        }
+        return values;
+    }
+
+    /**
+     * Reads a string written as its length in bytes followed by its UTF-8 bytes
+     *
+     * @param in The input
+     * @return The string read, or null
+     * @throws IOException if the string can not be read
+     */
+    private static String readString(DataInputStream in) throws IOException {
+
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,678 @@
+package org.EnoTurEPO.Output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Sink which writes a dataset in a compressed and typed columnar file, to be loaded by analytics tools without
+ * parsing the free text of a CSV. The rows are written in row groups. Inside a group each column is stored
+ * contiguously with its own type and compressed with Deflate:
+ * <ul>
+ *     <li>Columns whose values are all integers are stored as 32 bit integers</li>
+ *     <li>Columns whose values are all numbers are stored as 64 bit doubles</li>
+ *     <li>Other columns are stored as UTF-8 strings, dictionary-encoded when they repeat values, as the title of
+ *     the winery or the language of the reviews do</li>
+ * </ul>
+ * The layout of the file is described in {@link ColumnarDatasetReader}, which reads it back. As the CSVs, the file
+ * accumulates the rows of every run: the row groups are appended after the last complete row group of the file.
+ * <p>
+ * A row group is only written when it has {@code rowGroupSize} rows or the writer is closed, so that its columns are
+ * large enough to be dictionary-encoded and compressed. {@link #flush()} does not cut it: the rows of the open row
+ * group which were not flushed yet are appended to a pending file next to the dataset ({@code <file>.pending}), which
+ * is deleted when the row group is written. If the crawl is interrupted, the next writer of the file reads the
+ * pending rows back into the open row group, so that the rows flushed are never lost.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class ColumnarDatasetWriter implements DatasetSink {
+
+    /**
+     * Magic number at the beginning of the file, "ENOC"
+     */
+    static final int MAGIC = 0x454E4F43;
+
+    /**
+     * Version of the layout of the file
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Column of 32 bit integers
+     */
+    static final byte TYPE_INT = 0;
+
+    /**
+     * Column of 64 bit doubles
+     */
+    static final byte TYPE_DOUBLE = 1;
+
+    /**
+     * Column of strings
+     */
+    static final byte TYPE_STRING = 2;
+
+    /**
+     * Column of dictionary-encoded strings
+     */
+    static final byte TYPE_DICTIONARY = 3;
+
+    /**
+     * Default number of rows of a row group
+     */
+    public static final int DEFAULT_ROW_GROUP_SIZE = 10000;
+
+    /**
+     * Suffix of the file where the rows of the open row group are kept when they are flushed
+     */
+    static final String PENDING_SUFFIX = ".pending";
+
+    /**
+     * The file where the dataset is written
+     */
+    private final String file;
+
+    /**
+     * The file where the rows of the open row group are kept when they are flushed
+     */
+    private final String pendingFile;
+
+    /**
+     * Number of rows of a row group
+     */
+    private final int rowGroupSize;
+
+    /**
+     * The output stream of the file, open when the columns are added
+     */
+    private DataOutputStream out;
+
+    /**
+     * The names of the columns
+     */
+    private String[] columns;
+
+    /**
+     * The values of the current row group, by column
+     */
+    private ColumnBuffer[] buffers;
+
+    /**
+     * Number of rows of the current row group
+     */
+    private int numRows;
+
+    /**
+     * Position of the file where the current row group starts
+     */
+    private long groupOffset;
+
+    /**
+     * The output stream of the pending file, open while the current row group has rows flushed
+     */
+    private DataOutputStream pendingOut;
+
+    /**
+     * Number of rows of the current row group already written to the pending file
+     */
+    private int numPendingRows;
+
+    /**
+     * Writer of the values of the records into the buffers of the columns
+     */
+    private final RecordWriter recordWriter;
+
+    /**
+     * Constructs a new instance of {@link ColumnarDatasetWriter} with row groups of {@link #DEFAULT_ROW_GROUP_SIZE} rows
+     *
+     * @param file The file where the dataset is written
+     */
+    public ColumnarDatasetWriter(String file) {
+        this(file, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    /**
+     * Constructs a new instance of {@link ColumnarDatasetWriter}
+     *
+     * @param file The file where the dataset is written
+     * @param rowGroupSize Number of rows of a row group
+     * @throws IllegalArgumentException if the number of rows of a row group is not positive
+     */
+    public ColumnarDatasetWriter(String file, int rowGroupSize) {
+
+        if (rowGroupSize <= 0) {
+            throw new IllegalArgumentException("The row groups must have at least one row: " + rowGroupSize);
+        }
+        this.file = file;
+        this.pendingFile = file + PENDING_SUFFIX;
+        this.rowGroupSize = rowGroupSize;
+        this.numRows = 0;
+        this.numPendingRows = 0;
+        this.recordWriter = new RecordWriter() {
+            @Override
+            public void writeInt(int column, int value) {
+                ColumnarDatasetWriter.this.buffers[column].addInt(value);
+            }
+
+            @Override
+            public void writeDouble(int column, double value) {
+                ColumnarDatasetWriter.this.buffers[column].addDouble(value);
+            }
+
+            @Override
+            public void writeString(int column, String value) {
+                ColumnarDatasetWriter.this.buffers[column].addString(value);
+            }
+        };
+    }
+
+    @Override
+    public synchronized void addColumns(String[] columns, Object[] defaultValues) {
+
+        if (this.out != null) {
+            throw new IllegalStateException("The columns of " + this.file + " have already been added");
+        }
+
+        this.columns = columns.clone();
+        this.buffers = new ColumnBuffer[this.columns.length];
+        for (int column = 0; column < this.columns.length; column++) {
+            this.buffers[column] = new ColumnBuffer();
+        }
+        try {
+            if (new File(this.file).length() > 0) {
+                // The end mark or the row group cut by the interruption are overwritten by the new row groups
+                try (RandomAccessFile existing = new RandomAccessFile(this.file, "rw")) {
+                    this.groupOffset = this.endOfRowGroups(existing);
+                    existing.setLength(this.groupOffset);
+                }
+                this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, true)));
+            } else {
+                this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file)));
+                this.out.writeInt(MAGIC);
+                this.out.writeInt(VERSION);
+                this.out.writeInt(this.columns.length);
+                for (String column : this.columns) {
+                    writeString(this.out, column);
+                }
+                this.out.flush();
+                this.groupOffset = new File(this.file).length();
+            }
+            this.restorePendingRows();
+        } catch (IOException e) {
+            throw new UncheckedIOException("The columnar file " + this.file + " could not be created", e);
+        }
+    }
+
+    /**
+     * Finds the end of the last complete row group of an existing file, checking that it has the same columns
+     *
+     * @param existing The existing file
+     * @return The position after the last complete row group
+     * @throws IOException if the file can not be read, it is not a columnar file or its columns are not the same
+     */
+    private long endOfRowGroups(RandomAccessFile existing) throws IOException {
+
+        long length = existing.length();
+        if (length < 12 || existing.readInt() != MAGIC || existing.readInt() != VERSION
+                || existing.readInt() != this.columns.length) {
+            throw new IOException(this.file + " is not a columnar file with " + this.columns.length + " columns");
+        }
+        for (String column : this.columns) {
+            int columnLength = (existing.getFilePointer() + 4 <= length) ? existing.readInt() : -1;
+            byte[] name = new byte[Math.max(columnLength, 0)];
+            if (columnLength < 0 || existing.getFilePointer() + columnLength > length) {
+                throw new IOException(this.file + " is not a columnar file with the column " + column);
+            }
+            existing.readFully(name);
+            if (!column.equals(new String(name, StandardCharsets.UTF_8))) {
+                throw new IOException(this.file + " has not the column " + column);
+            }
+        }
+
+        long end = existing.getFilePointer();
+        while (end + 4 <= length && existing.readInt() > 0) {
+            long position = end + 4;
+            boolean complete = true;
+            for (int column = 0; column < this.columns.length && complete; column++) {
+                // Each chunk is preceded by its type and its length
+                complete = position + 5 <= length;
+                if (complete) {
+                    existing.seek(position + 1);
+                    int chunkLength = existing.readInt();
+                    position += 5 + chunkLength;
+                    complete = chunkLength >= 0 && position <= length;
+                }
+            }
+            if (!complete) {
+                break;
+            }
+            end = position;
+            existing.seek(end);
+        }
+        return end;
+    }
+
+    /**
+     * Reads the rows of the pending file back into the current row group, if they belong to the row group which
+     * starts at the end of the file, and keeps appending to it after them. Otherwise its row group was written
+     * before the interruption, and the pending file is deleted.
+     *
+     * @throws IOException if the pending file can not be read, truncated or deleted
+     */
+    private void restorePendingRows() throws IOException {
+
+        File pending = new File(this.pendingFile);
+        if (!pending.exists()) {
+            return;
+        }
+
+        // Position after the last rows which were completely flushed to the pending file
+        long end = 0;
+        List<Object[][]> groups = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(pending)))) {
+            if (in.readLong() == this.groupOffset) {
+                end = 8;
+                while (true) {
+                    int numRows = in.readInt();
+                    long position = end + 4;
+                    Object[][] group = new Object[this.columns.length][];
+                    for (int column = 0; column < this.columns.length; column++) {
+                        byte type = in.readByte();
+                        byte[] chunk = new byte[in.readInt()];
+                        in.readFully(chunk);
+                        position += 5 + chunk.length;
+                        try (DataInputStream chunkIn = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(chunk)))) {
+                            group[column] = ColumnarDatasetReader.readColumn(chunkIn, type, numRows);
+                        }
+                    }
+                    groups.add(group);
+                    end = position;
+                }
+            }
+        } catch (EOFException e) {
+            // The end of the pending file, or the rows cut by the interruption, which had not been flushed
+        }
+        if (groups.isEmpty()) {
+            Files.delete(pending.toPath());
+            return;
+        }
+
+        Object[] row = new Object[this.columns.length];
+        for (Object[][] group : groups) {
+            for (int i = 0; i < group[0].length; i++) {
+                for (int column = 0; column < this.columns.length; column++) {
+                    row[column] = group[column][i];
+                }
+                this.addRow(row);
+            }
+        }
+        if (this.numRows > 0 && pending.exists()) {
+            // The rows read back are still in the pending file, so the next flush only appends the new ones
+            try (RandomAccessFile existing = new RandomAccessFile(pending, "rw")) {
+                existing.setLength(end);
+            }
+            this.pendingOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pending, true)));
+            this.numPendingRows = this.numRows;
+        }
+    }
+
+    /**
+     * Adds a row. Integers are stored as integers, other numbers as doubles and the rest of the values as strings
+     *
+     * @param row The values of the row, in the order of the columns
+     */
+    @Override
+    public synchronized void addRow(Object[] row) {
+
+        this.checkColumns();
+        if (row.length != this.columns.length) {
+            throw new IllegalArgumentException("The row has " + row.length + " values but there are " + this.columns.length + " columns");
+        }
+
+        for (int column = 0; column < row.length; column++) {
+            Object value = row[column];
+            if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                this.recordWriter.writeInt(column, ((Number) value).intValue());
+            } else if (value instanceof Number) {
+                this.recordWriter.writeDouble(column, ((Number) value).doubleValue());
+            } else {
+                this.recordWriter.writeString(column, (value != null) ? value.toString() : null);
+            }
+        }
+        this.endRow();
+    }
+
+    /**
+     * Adds a record, appending its typed values to the buffers of the columns without boxing them
+     *
+     * @param record The record, whose columns are the columns of the dataset
+     */
+    @Override
+    public synchronized void addRecord(DatasetRecord record) {
+
+        this.checkColumns();
+        record.writeTo(this.recordWriter);
+        this.endRow();
+    }
+
+    /**
+     * Flushes the rows added, without cutting the current row group: its rows which were not flushed yet are appended
+     * to the pending file
+     */
+    @Override
+    public synchronized void flush() {
+
+        if (this.out == null) {
+            return;
+        }
+        try {
+            if (this.numRows > this.numPendingRows) {
+                if (this.pendingOut == null) {
+                    this.pendingOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.pendingFile)));
+                    // The rows are only pending while their row group starts at this position of the file
+                    this.pendingOut.writeLong(this.groupOffset);
+                }
+                this.writeRows(this.pendingOut, this.numPendingRows, this.numRows);
+                this.pendingOut.flush();
+                this.numPendingRows = this.numRows;
+            }
+            this.out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("The columnar file " + this.file + " could not be written", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+
+        if (this.out == null) {
+            return;
+        }
+        this.writeRowGroup();
+        try {
+            // A row group of 0 rows marks the end of the file
+            this.out.writeInt(0);
+            this.out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("The columnar file " + this.file + " could not be closed", e);
+        }
+        this.out = null;
+    }
+
+    /**
+     * @throws IllegalStateException if the columns have not been added
+     */
+    private void checkColumns() {
+
+        if (this.out == null) {
+            throw new IllegalStateException("The columns of " + this.file + " must be added before the rows");
+        }
+    }
+
+    /**
+     * Finishes the row whose values have been written to the buffers, writing the row group if it is full
+     *
+     * @throws IllegalArgumentException if the row has not a value for every column, in which case it is discarded
+     */
+    private void endRow() {
+
+        for (ColumnBuffer buffer : this.buffers) {
+            if (buffer.size != this.numRows + 1) {
+                for (ColumnBuffer discarded : this.buffers) {
+                    discarded.size = this.numRows;
+                }
+                throw new IllegalArgumentException("The row has not a value for every column of " + this.file);
+            }
+        }
+
+        this.numRows++;
+        if (this.numRows >= this.rowGroupSize) {
+            this.writeRowGroup();
+        }
+    }
+
+    /**
+     * Writes the rows buffered as a row group of the file and deletes the pending file, whose rows it includes
+     */
+    private void writeRowGroup() {
+
+        if (this.numRows == 0) {
+            return;
+        }
+
+        try {
+            this.writeRows(this.out, 0, this.numRows);
+            this.out.flush();
+            this.groupOffset = new File(this.file).length();
+
+            if (this.pendingOut != null) {
+                this.pendingOut.close();
+                this.pendingOut = null;
+            }
+            Files.deleteIfExists(new File(this.pendingFile).toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("The columnar file " + this.file + " could not be written", e);
+        }
+        for (ColumnBuffer buffer : this.buffers) {
+            buffer.clear();
+        }
+        this.numRows = 0;
+        this.numPendingRows = 0;
+    }
+
+    /**
+     * Writes a range of the rows buffered with the layout of a row group
+     *
+     * @param target The output where the rows are written
+     * @param from The first row, inclusive
+     * @param to The last row, exclusive
+     * @throws IOException if the rows can not be written
+     */
+    private void writeRows(DataOutputStream target, int from, int to) throws IOException {
+
+        target.writeInt(to - from);
+        for (int column = 0; column < this.columns.length; column++) {
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            DataOutputStream chunkOut = new DataOutputStream(new DeflaterOutputStream(chunk, deflater));
+            byte type = this.writeColumn(chunkOut, column, from, to);
+            chunkOut.close();
+            deflater.end();
+
+            target.writeByte(type);
+            target.writeInt(chunk.size());
+            chunk.writeTo(target);
+        }
+    }
+
+    /**
+     * Writes the values of a column in a range of the rows with the most compact type which holds all of them
+     *
+     * @param chunkOut The output of the column chunk
+     * @param column The index of the column
+     * @param from The first row, inclusive
+     * @param to The last row, exclusive
+     * @return The type of the column chunk
+     * @throws IOException if the chunk can not be written
+     */
+    private byte writeColumn(DataOutputStream chunkOut, int column, int from, int to) throws IOException {
+
+        ColumnBuffer buffer = this.buffers[column];
+        if (buffer.type == TYPE_INT) {
+            for (int i = from; i < to; i++) {
+                chunkOut.writeInt(buffer.ints[i]);
+            }
+            return TYPE_INT;
+        }
+        if (buffer.type == TYPE_DOUBLE) {
+            for (int i = from; i < to; i++) {
+                chunkOut.writeDouble(buffer.doubles[i]);
+            }
+            return TYPE_DOUBLE;
+        }
+
+        int size = to - from;
+        Map<String, Integer> dictionary = new HashMap<>();
+        for (int i = from; i < to && dictionary.size() <= size / 2; i++) {
+            if (buffer.strings[i] != null) {
+                dictionary.putIfAbsent(buffer.strings[i], dictionary.size());
+            }
+        }
+        if (dictionary.size() <= size / 2) {
+            String[] entries = new String[dictionary.size()];
+            for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+                entries[entry.getValue()] = entry.getKey();
+            }
+            chunkOut.writeInt(entries.length);
+            for (String entry : entries) {
+                writeString(chunkOut, entry);
+            }
+            for (int i = from; i < to; i++) {
+                chunkOut.writeInt((buffer.strings[i] != null) ? dictionary.get(buffer.strings[i]) : -1);
+            }
+            return TYPE_DICTIONARY;
+        }
+        for (int i = from; i < to; i++) {
+            writeString(chunkOut, buffer.strings[i]);
+        }
+        return TYPE_STRING;
+    }
+
+    /**
+     * Writes a string as its length in bytes followed by its UTF-8 bytes. A null string has length -1
+     *
+     * @param out The output
+     * @param value The string to write
+     * @throws IOException if the string can not be written
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Values of a column in a row group, stored with the most compact type which holds all of them. The column is
+     * promoted from integers to doubles and from numbers to strings as values of those types are added.
+     */
+    private static final class ColumnBuffer {
+
+        /**
+         * The type of the values: {@link #TYPE_INT}, {@link #TYPE_DOUBLE} or {@link #TYPE_STRING}
+         */
+        private byte type = TYPE_INT;
+
+        /**
+         * The values while the type is {@link #TYPE_INT}
+         */
+        private int[] ints = new int[16];
+
+        /**
+         * The values while the type is {@link #TYPE_DOUBLE}
+         */
+        private double[] doubles;
+
+        /**
+         * The values while the type is {@link #TYPE_STRING}
+         */
+        private String[] strings;
+
+        /**
+         * Number of values
+         */
+        private int size = 0;
+
+        /**
+         * @param value An integer value
+         */
+        private void addInt(int value) {
+
+            if (this.type == TYPE_INT) {
+                if (this.size == this.ints.length) {
+                    this.ints = Arrays.copyOf(this.ints, this.size * 2);
+                }
+                this.ints[this.size++] = value;
+            } else if (this.type == TYPE_DOUBLE) {
+                this.addDouble(value);
+            } else {
+                this.addString(Integer.toString(value));
+            }
+        }
+
+        /**
+         * @param value A real value
+         */
+        private void addDouble(double value) {
+
+            if (this.type == TYPE_INT) {
+                this.doubles = new double[this.ints.length];
+                for (int i = 0; i < this.size; i++) {
+                    this.doubles[i] = this.ints[i];
+                }
+                this.type = TYPE_DOUBLE;
+            }
+            if (this.type == TYPE_DOUBLE) {
+                if (this.size == this.doubles.length) {
+                    this.doubles = Arrays.copyOf(this.doubles, this.size * 2);
+                }
+                this.doubles[this.size++] = value;
+            } else {
+                this.addString(Double.toString(value));
+            }
+        }
+
+        /**
+         * @param value A text value, which can be null
+         */
+        private void addString(String value) {
+
+            if (this.type != TYPE_STRING) {
+                this.strings = new String[Math.max(this.size * 2, 16)];
+                for (int i = 0; i < this.size; i++) {
+                    this.strings[i] = (this.type == TYPE_INT) ? Integer.toString(this.ints[i]) : Double.toString(this.doubles[i]);
+                }
+                this.type = TYPE_STRING;
+            }
+            if (this.size == this.strings.length) {
+                this.strings = Arrays.copyOf(this.strings, this.size * 2);
+            }
+            this.strings[this.size++] = value;
+        }
+
+        /**
+         * Removes the values, keeping the arrays of the integers
+         */
+        private void clear() {
+
+            this.type = TYPE_INT;
+            this.doubles = null;
+            this.strings = null;
+            this.size = 0;
+        }
+    }
+}
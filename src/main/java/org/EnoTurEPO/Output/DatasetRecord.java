@@ -0,0 +1,22 @@
+package org.EnoTurEPO.Output;
+
+/**
+ * Row of a dataset with a fixed schema, which writes its values by the index of their columns. Sinks which store
+ * typed values read them without boxing, and the rest read them as a row of objects.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public interface DatasetRecord {
+
+    /**
+     * Writes the values of the record, in the order of the columns
+     *
+     * @param writer The writer of the values
+     */
+    void writeTo(RecordWriter writer);
+
+    /**
+     * @return The values of the record as a row, in the order of the columns
+     */
+    Object[] toRow();
+}
@@ -0,0 +1,56 @@
+package org.EnoTurEPO.Output;
+
+/**
+ * Destination of the rows of a dataset, such as the places or the reviews of the wineries.
+ * Implementations must be thread-safe.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public interface DatasetSink {
+
+    /**
+     * Adds the columns of the dataset. It is called once, before any row
+     *
+     * @param columns The names of the columns
+     * @param defaultValues The default value of each column
+     */
+    void addColumns(String[] columns, Object[] defaultValues);
+
+    /**
+     * Adds a row to the dataset
+     *
+     * @param row The values of the row, in the order of the columns
+     */
+    void addRow(Object[] row);
+
+    /**
+     * Adds a record to the dataset. By default it is added as a row
+     *
+     * @param record The record, whose columns are the columns of the dataset
+     */
+    default void addRecord(DatasetRecord record) {
+        this.addRow(record.toRow());
+    }
+
+    /**
+     * Starts a group of rows added by the calling thread, such as the rows of a winery. The rows of the group are
+     * added to the sink returned, from any thread, until the calling thread starts another group. By default all
+     * the groups are added to this sink
+     *
+     * @param key The key of the group
+     * @return The sink of the rows of the group
+     */
+    default DatasetSink group(String key) {
+        return this;
+    }
+
+    /**
+     * Writes the rows added so far to the destination
+     */
+    void flush();
+
+    /**
+     * Writes the rows added so far and releases the destination. No rows can be added after closing the sink
+     */
+    void close();
+}
@@ -0,0 +1,33 @@
+package org.EnoTurEPO.Output;
+
+/**
+ * Receiver of the typed values of a {@link DatasetRecord}
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public interface RecordWriter {
+
+    /**
+     * Writes an integer value
+     *
+     * @param column The index of the column
+     * @param value The value
+     */
+    void writeInt(int column, int value);
+
+    /**
+     * Writes a real value
+     *
+     * @param column The index of the column
+     * @param value The value
+     */
+    void writeDouble(int column, double value);
+
+    /**
+     * Writes a text value
+     *
+     * @param column The index of the column
+     * @param value The value, which can be null
+     */
+    void writeString(int column, String value);
+}
@@ -0,0 +1,557 @@
+package org.EnoTurEPO.Output;
+
+import org.bdp4j.util.CSVDatasetWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * CSV dataset written by several threads without sharing a writer. Each thread which adds rows writes them to its
+ * own shard, a CSV file next to the dataset with its own {@link BufferedDatasetWriter}, so the threads never wait
+ * for each other to write. Each shard has an index with the offset where each group of rows, such as the rows of a
+ * winery, starts.
+ * <p>
+ * {@link #merge(String, List)} appends the shards to the CSV of the dataset with a single header, copying the groups
+ * in the order of their keys without loading the rows in memory, and deletes the shards. A merge which is
+ * interrupted is undone by the next one, so no row is lost or appended twice.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class ShardedDatasetWriter implements DatasetSink {
+
+    /**
+     * Suffix of the file which records a merge in progress
+     */
+    private static final String MERGING_SUFFIX = ".merging";
+
+    /**
+     * Last line of the record of a merge whose rows have all been appended, so only its shards are left to delete
+     */
+    private static final String MERGED = "merged";
+
+    /**
+     * The file of a shard, its writer and its index
+     */
+    private static class Shard {
+
+        /**
+         * The CSV file of the shard
+         */
+        private final File file;
+
+        /**
+         * The writer of the rows of the shard
+         */
+        private final BufferedDatasetWriter writer;
+
+        /**
+         * The writer of the index of the groups of the shard
+         */
+        private final Writer index;
+
+        /**
+         * Constructs a new instance of {@link Shard}
+         *
+         * @param file The CSV file of the shard
+         * @param indexFile The index of the groups of the shard
+         * @param columns The names of the columns
+         * @param defaultValues The default value of each column
+         * @throws IOException if the index can not be created
+         */
+        private Shard(File file, File indexFile, String[] columns, Object[] defaultValues) throws IOException {
+
+            this.file = file;
+            this.writer = new BufferedDatasetWriter(new CSVDatasetWriter(file.getPath()));
+            this.writer.addColumns(columns, defaultValues);
+            this.index = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile, true), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Writes the rows of the previous group and records in the index that a new group starts at the end of the file
+         *
+         * @param key The key of the new group
+         * @throws IOException if the index can not be written
+         */
+        private synchronized void begin(String key) throws IOException {
+
+            this.writer.flush();
+            this.index.write(this.file.length() + "\t" + key.replace('\n', ' ') + "\n");
+            this.index.flush();
+        }
+
+        /**
+         * Writes the rows added so far and closes the index
+         *
+         * @throws IOException if the index can not be closed
+         */
+        private synchronized void close() throws IOException {
+
+            this.writer.close();
+            this.index.close();
+        }
+    }
+
+    /**
+     * The rows of a group in a shard, which are copied as they are by the merge
+     */
+    private static class Segment {
+
+        /**
+         * The number of the shard
+         */
+        private final int shard;
+
+        /**
+         * Offset of the first byte of the rows
+         */
+        private final long start;
+
+        /**
+         * Offset after the last byte of the rows
+         */
+        private final long end;
+
+        /**
+         * Constructs a new instance of {@link Segment}
+         *
+         * @param shard The number of the shard
+         * @param start Offset of the first byte of the rows
+         * @param end Offset after the last byte of the rows
+         */
+        private Segment(int shard, long start, long end) {
+
+            this.shard = shard;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Path of the CSV of the dataset
+     */
+    private final String csvFile;
+
+    /**
+     * The shard of each thread
+     */
+    private final ThreadLocal<Shard> shards;
+
+    /**
+     * All the shards created, to flush and close them
+     */
+    private final List<Shard> allShards;
+
+    /**
+     * Number of the next shard created
+     */
+    private int nextShard;
+
+    /**
+     * The names of the columns, or null until they are added
+     */
+    private volatile String[] columns;
+
+    /**
+     * The default value of each column
+     */
+    private volatile Object[] defaultValues;
+
+    /**
+     * Constructs a new instance of {@link ShardedDatasetWriter}. Its shards are numbered after those already next to
+     * the dataset, which are merged with them
+     *
+     * @param csvFile Path of the CSV of the dataset, which is not written until the shards are merged
+     */
+    public ShardedDatasetWriter(String csvFile) {
+
+        this.csvFile = csvFile;
+        this.shards = new ThreadLocal<>();
+        this.allShards = new CopyOnWriteArrayList<>();
+        List<Integer> existing = findShards(csvFile);
+        this.nextShard = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+    }
+
+    @Override
+    public synchronized void addColumns(String[] columns, Object[] defaultValues) {
+
+        this.columns = columns.clone();
+        this.defaultValues = defaultValues.clone();
+    }
+
+    /**
+     * Adds a row to the shard of the calling thread, in its current group
+     *
+     * @param row The values of the row
+     */
+    @Override
+    public void addRow(Object[] row) {
+        this.shard().writer.addRow(row);
+    }
+
+    /**
+     * Adds a record to the shard of the calling thread, in its current group
+     *
+     * @param record The record, whose columns are the columns of the dataset
+     */
+    @Override
+    public void addRecord(DatasetRecord record) {
+        this.shard().writer.addRecord(record);
+    }
+
+    /**
+     * Starts a new group in the shard of the calling thread
+     *
+     * @param key The key of the group, which sets its order in the merge
+     * @return The writer of the shard, where the rows of the group can be added from any thread
+     */
+    @Override
+    public DatasetSink group(String key) {
+
+        Shard shard = this.shard();
+        try {
+            shard.begin(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException("The index of " + shard.file + " could not be written", e);
+        }
+        return shard.writer;
+    }
+
+    /**
+     * Writes the rows added so far to all the shards
+     */
+    @Override
+    public void flush() {
+
+        for (Shard shard : this.allShards) {
+            shard.writer.flush();
+        }
+    }
+
+    /**
+     * Writes the rows added so far and closes all the shards, which are left to be merged
+     */
+    @Override
+    public void close() {
+
+        for (Shard shard : this.allShards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("The index of " + shard.file + " could not be closed", e);
+            }
+        }
+    }
+
+    /**
+     * @return The shard of the calling thread, which is created the first time
+     */
+    private Shard shard() {
+
+        Shard shard = this.shards.get();
+        if (shard == null) {
+            shard = this.createShard();
+            this.shards.set(shard);
+        }
+        return shard;
+    }
+
+    /**
+     * @return A new shard
+     */
+    private synchronized Shard createShard() {
+
+        if (this.columns == null) {
+            throw new IllegalStateException("The columns of " + this.csvFile + " must be added before any row");
+        }
+        int number = this.nextShard++;
+        try {
+            Shard shard = new Shard(shardFile(this.csvFile, number, ".csv"), shardFile(this.csvFile, number, ".tsv"),
+                    this.columns, this.defaultValues);
+            this.allShards.add(shard);
+            return shard;
+        } catch (IOException e) {
+            throw new UncheckedIOException("The shard " + number + " of " + this.csvFile + " could not be created", e);
+        }
+    }
+
+    /**
+     * @param csvFile Path of the CSV of a dataset
+     * @return True if the dataset has shards or an interrupted merge, which must be merged before writing it again
+     */
+    public static boolean hasPendingShards(String csvFile) {
+        return !findShards(csvFile).isEmpty() || new File(csvFile + MERGING_SUFFIX).exists();
+    }
+
+    /**
+     * Appends the rows of all the shards of a dataset to its CSV, writing the header if the CSV is new, and deletes
+     * the shards. The groups are copied in the order of the keys given, those without a key at the end in the order
+     * they were written, and the rows of a group written in several shards in the order the shards were created.
+     * An interrupted merge is undone or finished first.
+     *
+     * @param csvFile Path of the CSV of the dataset
+     * @param keys The keys of the groups, in the order they are copied
+     * @return The number of shards merged
+     * @throws IOException if the shards can not be read, the CSV can not be written or they have different columns
+     */
+    public static int merge(String csvFile, List<String> keys) throws IOException {
+
+        File output = new File(csvFile);
+        File record = new File(csvFile + MERGING_SUFFIX);
+        if (record.exists()) {
+            List<String> lines = Files.readAllLines(record.toPath(), StandardCharsets.UTF_8);
+            if (lines.size() > 2 && lines.get(2).equals(MERGED)) {
+                deleteShards(csvFile, parseNumbers(lines.get(1)));
+            } else if (output.exists() && !lines.isEmpty()) {
+                try (FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(Long.parseLong(lines.get(0).trim()));
+                }
+            }
+            Files.delete(record.toPath());
+        }
+
+        List<Integer> numbers = findShards(csvFile);
+        if (numbers.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, List<Segment>> groups = new LinkedHashMap<>();
+        List<Segment> ungrouped = new ArrayList<>();
+        byte[] header = null;
+        for (int number : numbers) {
+            File file = shardFile(csvFile, number, ".csv");
+            long length = file.exists() ? file.length() : 0;
+            if (length == 0) {
+                continue;
+            }
+            byte[] shardHeader = readHeader(file);
+            if (header == null) {
+                header = shardHeader;
+            } else if (!Arrays.equals(header, shardHeader)) {
+                throw new IOException(file + " has not the columns of the other shards of " + csvFile);
+            }
+
+            String key = null;
+            long start = shardHeader.length;
+            try (BufferedReader index = Files.newBufferedReader(shardFile(csvFile, number, ".tsv").toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = index.readLine()) != null) {
+                    String[] fields = line.split("\t", 2);
+                    long offset;
+                    try {
+                        offset = Math.max(Long.parseLong(fields[0]), shardHeader.length);
+                    } catch (NumberFormatException e) {
+                        // A line cut by an interruption, its rows stay in the previous group
+                        continue;
+                    }
+                    addSegment(groups, ungrouped, key, new Segment(number, start, offset));
+                    key = (fields.length > 1) ? fields[1] : null;
+                    start = offset;
+                }
+            }
+            addSegment(groups, ungrouped, key, new Segment(number, start, length));
+        }
+        if (header == null) {
+            deleteShards(csvFile, numbers);
+            return numbers.size();
+        }
+
+        boolean newOutput = !output.exists() || output.length() == 0;
+        if (!newOutput && !Arrays.equals(header, readHeader(output))) {
+            throw new IOException(csvFile + " has not the columns of its shards");
+        }
+        StringBuilder merged = new StringBuilder();
+        for (int number : numbers) {
+            merged.append(number).append(' ');
+        }
+        Files.write(record.toPath(), Arrays.asList(String.valueOf(newOutput ? 0 : output.length()), merged.toString().trim()),
+                StandardCharsets.UTF_8);
+
+        Map<Integer, FileChannel> channels = new HashMap<>();
+        try (FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            for (int number : numbers) {
+                File file = shardFile(csvFile, number, ".csv");
+                if (file.exists() && file.length() > 0) {
+                    channels.put(number, FileChannel.open(file.toPath(), StandardOpenOption.READ));
+                }
+            }
+            if (newOutput) {
+                out.write(ByteBuffer.wrap(header));
+            }
+            for (String key : keys) {
+                List<Segment> segments = groups.remove(key);
+                if (segments != null) {
+                    copy(segments, channels, out);
+                }
+            }
+            for (List<Segment> segments : groups.values()) {
+                copy(segments, channels, out);
+            }
+            copy(ungrouped, channels, out);
+            out.force(false);
+        } finally {
+            for (FileChannel channel : channels.values()) {
+                channel.close();
+            }
+        }
+
+        Files.write(record.toPath(), Collections.singletonList(MERGED), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        deleteShards(csvFile, numbers);
+        Files.delete(record.toPath());
+        return numbers.size();
+    }
+
+    /**
+     * Adds the rows of a group in a shard, if there are any
+     *
+     * @param groups The segments of each key
+     * @param ungrouped The segments without a key
+     * @param key The key of the group, or null
+     * @param segment The rows of the group in the shard
+     */
+    private static void addSegment(Map<String, List<Segment>> groups, List<Segment> ungrouped, String key, Segment segment) {
+
+        if (segment.end <= segment.start) {
+            return;
+        }
+        if (key == null) {
+            ungrouped.add(segment);
+        } else {
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(segment);
+        }
+    }
+
+    /**
+     * Copies the bytes of some segments of the shards to the CSV of the dataset
+     *
+     * @param segments The segments copied
+     * @param channels The channel of each shard
+     * @param out The channel of the CSV
+     * @throws IOException if a shard can not be read or the CSV can not be written
+     */
+    private static void copy(List<Segment> segments, Map<Integer, FileChannel> channels, FileChannel out) throws IOException {
+
+        for (Segment segment : segments) {
+            FileChannel in = channels.get(segment.shard);
+            long position = segment.start;
+            while (position < segment.end) {
+                long copied = in.transferTo(position, segment.end - position, out);
+                if (copied <= 0) {
+                    throw new IOException("The shard " + segment.shard + " is shorter than its index");
+                }
+                position += copied;
+            }
+        }
+    }
+
+    /**
+     * @param file A CSV file
+     * @return The bytes of its first line, with its line break
+     * @throws IOException if the file can not be read
+     */
+    private static byte[] readHeader(File file) throws IOException {
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            int b;
+            while ((b = in.read()) >= 0) {
+                header.write(b);
+                if (b == '\n') {
+                    break;
+                }
+            }
+        }
+        return header.toByteArray();
+    }
+
+    /**
+     * @param csvFile Path of the CSV of a dataset
+     * @param number The number of a shard
+     * @param extension .csv for the rows of the shard or .tsv for its index
+     * @return The file of the shard, next to the CSV of the dataset
+     */
+    private static File shardFile(String csvFile, int number, String extension) {
+
+        String base = csvFile.endsWith(".csv") ? csvFile.substring(0, csvFile.length() - ".csv".length()) : csvFile;
+        return new File(base + ".shard-" + number + extension);
+    }
+
+    /**
+     * @param csvFile Path of the CSV of a dataset
+     * @return The numbers of the shards of the dataset, in the order they were created
+     */
+    private static List<Integer> findShards(String csvFile) {
+
+        File base = shardFile(csvFile, 0, "").getAbsoluteFile();
+        String prefix = base.getName().substring(0, base.getName().length() - 1);
+        Pattern pattern = Pattern.compile(Pattern.quote(prefix) + "([0-9]+)\\.tsv");
+        List<Integer> numbers = new ArrayList<>();
+        String[] names = base.getParentFile().list();
+        if (names != null) {
+            for (String name : names) {
+                Matcher matcher = pattern.matcher(name);
+                if (matcher.matches()) {
+                    numbers.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * @param numbers The numbers of some shards, separated by spaces
+     * @return The numbers
+     */
+    private static List<Integer> parseNumbers(String numbers) {
+
+        List<Integer> parsed = new ArrayList<>();
+        for (String number : numbers.trim().split(" +")) {
+            if (!number.isEmpty()) {
+                parsed.add(Integer.parseInt(number));
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Deletes the rows and the index of some shards
+     *
+     * @param csvFile Path of the CSV of the dataset
+     * @param numbers The numbers of the shards
+     * @throws IOException if a shard can not be deleted
+     */
+    private static void deleteShards(String csvFile, List<Integer> numbers) throws IOException {
+
+        for (int number : numbers) {
+            // The index goes last, as a shard is only found by its index
+            Files.deleteIfExists(shardFile(csvFile, number, ".csv").toPath());
+            Files.deleteIfExists(shardFile(csvFile, number, ".tsv").toPath());
+        }
+    }
+}
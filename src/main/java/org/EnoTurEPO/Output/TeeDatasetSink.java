@@ -0,0 +1,75 @@
+package org.EnoTurEPO.Output;
+
+/**
+ * Sink which sends every row to several sinks, for example the CSV and the columnar files of a dataset
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class TeeDatasetSink implements DatasetSink {
+
+    /**
+     * The sinks which receive the rows
+     */
+    private final DatasetSink[] sinks;
+
+    /**
+     * Constructs a new instance of {@link TeeDatasetSink}
+     *
+     * @param sinks The sinks which receive the rows
+     */
+    public TeeDatasetSink(DatasetSink... sinks) {
+        this.sinks = sinks.clone();
+    }
+
+    @Override
+    public void addColumns(String[] columns, Object[] defaultValues) {
+
+        for (DatasetSink sink : this.sinks) {
+            sink.addColumns(columns, defaultValues);
+        }
+    }
+
+    @Override
+    public void addRow(Object[] row) {
+
+        for (DatasetSink sink : this.sinks) {
+            sink.addRow(row);
+        }
+    }
+
+    @Override
+    public void addRecord(DatasetRecord record) {
+
+        for (DatasetSink sink : this.sinks) {
+            sink.addRecord(record);
+        }
+    }
+
+    @Override
+    public DatasetSink group(String key) {
+
+        DatasetSink[] groups = new DatasetSink[this.sinks.length];
+        boolean same = true;
+        for (int i = 0; i < this.sinks.length; i++) {
+            groups[i] = this.sinks[i].group(key);
+            same &= groups[i] == this.sinks[i];
+        }
+        return same ? this : new TeeDatasetSink(groups);
+    }
+
+    @Override
+    public void flush() {
+
+        for (DatasetSink sink : this.sinks) {
+            sink.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+
+        for (DatasetSink sink : this.sinks) {
+            sink.close();
+        }
+    }
+}
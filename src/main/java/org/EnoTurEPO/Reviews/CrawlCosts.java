@@ -0,0 +1,98 @@
+package org.EnoTurEPO.Reviews;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estimated cost of reading each winery, taken from the number of reviews written for it by a previous run. The
+ * cost of a winery is its number of reviews plus a fixed cost for its page, and a winery which was not read before
+ * costs the mean of the known ones, so it is neither the first nor the last one.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class CrawlCosts {
+
+    /**
+     * Cost of reading the page of a winery, in reviews
+     */
+    public static final long WINERY_COST = 20;
+
+    /**
+     * The number of reviews of each winery, by the name indicated in the input CSV
+     */
+    private final Map<String, Long> numReviews;
+
+    /**
+     * Sum of the number of reviews of all the wineries
+     */
+    private long totalReviews;
+
+    /**
+     * Constructs a new instance of {@link CrawlCosts} without wineries
+     */
+    public CrawlCosts() {
+
+        this.numReviews = new HashMap<>();
+        this.totalReviews = 0;
+    }
+
+    /**
+     * Loads the number of reviews of the wineries of a CSV of places written by a previous run, with the columns
+     * winery and numReviews
+     *
+     * @param csvFile Path of the CSV of places
+     * @return The costs of the wineries of the CSV, or none if the file does not exist
+     * @throws IOException if the file can not be read or it has not the needed columns
+     */
+    public static CrawlCosts load(String csvFile) throws IOException {
+
+        CrawlCosts costs = new CrawlCosts();
+        if (!new File(csvFile).exists()) {
+            System.err.println("The places of the previous run " + csvFile + " do not exist. The wineries will be read in their order");
+            return costs;
+        }
+
+        PreviousRunCsv.read(csvFile, new String[]{"winery", "numReviews"}, row -> {
+            try {
+                costs.add(row[0], Long.parseLong(row[1].trim()));
+            } catch (NumberFormatException e) {
+                // The winery keeps the mean cost
+            }
+        });
+        return costs;
+    }
+
+    /**
+     * Sets the number of reviews of a winery
+     *
+     * @param winery Name of the winery indicated in the input CSV
+     * @param numReviews Number of reviews of the winery, negative values are taken as zero
+     */
+    public void add(String winery, long numReviews) {
+
+        Long previous = this.numReviews.put(winery, Math.max(numReviews, 0));
+        this.totalReviews += Math.max(numReviews, 0) - ((previous != null) ? previous : 0);
+    }
+
+    /**
+     * @return Number of wineries with a known number of reviews
+     */
+    public int getNumWineries() {
+        return this.numReviews.size();
+    }
+
+    /**
+     * @param winery Name of the winery indicated in the input CSV
+     * @return The estimated cost of reading the winery, in reviews
+     */
+    public long estimate(String winery) {
+
+        Long known = this.numReviews.get(winery);
+        if (known == null) {
+            known = this.numReviews.isEmpty() ? 0 : this.totalReviews / this.numReviews.size();
+        }
+        return WINERY_COST + known;
+    }
+}
@@ -0,0 +1,295 @@
+package org.EnoTurEPO.Reviews;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only journal of the progress of the crawl, used to resume it after a failure without reading again the
+ * wineries already finished. Each line records a checkpoint of a winery, identified by its name and url:
+ * <pre>
+ * PLACE   name url 0         the row of the winery has been written
+ * REVIEWS name url n f,f,... n reviews of the winery have been written, f the fingerprints of those written
+ *                            since the previous checkpoint
+ * DONE    name url n         the winery has been finished with n reviews
+ * </pre>
+ * The fields are separated by tabs and the fingerprints are those of {@link KnownReviews#fingerprint(String, String)}
+ * in hexadecimal. The reviews are identified by their fingerprints and not by their position, as the order of the
+ * reviews of Google Maps changes between sessions. The last checkpoint of a winery is the valid one, and a line cut
+ * by a crash is ignored. The checkpoints are recorded after the rows have been flushed, so the rows written after
+ * the last checkpoint of a winery which was killed can be written again when it is resumed. This class is
+ * thread-safe.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class CrawlJournal {
+
+    /**
+     * The row of the winery has been written
+     */
+    public static final String PLACE = "PLACE";
+
+    /**
+     * Some reviews of the winery have been written
+     */
+    public static final String REVIEWS = "REVIEWS";
+
+    /**
+     * The winery has been finished
+     */
+    public static final String DONE = "DONE";
+
+    /**
+     * The file of the journal
+     */
+    private final String file;
+
+    /**
+     * The last checkpoint of each winery, by its key
+     */
+    private final Map<String, String[]> checkpoints;
+
+    /**
+     * The fingerprints of the reviews written of each winery not finished, by its key
+     */
+    private final Map<String, Set<Long>> fingerprints;
+
+    /**
+     * The writer of the journal
+     */
+    private final Writer writer;
+
+    /**
+     * Constructs a new instance of {@link CrawlJournal}, loading the checkpoints of the file if it exists
+     *
+     * @param file The file of the journal
+     * @throws IOException if the file can not be read or opened
+     */
+    public CrawlJournal(String file) throws IOException {
+
+        this.file = file;
+        this.checkpoints = new HashMap<>();
+        this.fingerprints = new HashMap<>();
+
+        if (new File(file).exists()) {
+            // A cut list of fingerprints can not be told apart from a whole one, so the line cut by a crash is removed
+            removeCutLine(file);
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            for (String line : lines) {
+                String[] fields = line.split("\t");
+                if (fields.length < 4 || fields.length > 5 || !fields[3].matches("[0-9]+")
+                        || (fields.length == 5 && !fields[4].matches("[0-9a-f]+(,[0-9a-f]+)*"))) {
+                    continue;
+                }
+                String key = key(fields[1], fields[2]);
+                this.checkpoints.put(key, Arrays.copyOf(fields, 4));
+                if (fields.length == 5) {
+                    Set<Long> written = this.fingerprints.computeIfAbsent(key, k -> new HashSet<>());
+                    for (String fingerprint : fields[4].split(",")) {
+                        written.add(Long.parseUnsignedLong(fingerprint, 16));
+                    }
+                }
+            }
+            for (Map.Entry<String, String[]> checkpoint : this.checkpoints.entrySet()) {
+                if (checkpoint.getValue()[0].equals(DONE)) {
+                    this.fingerprints.remove(checkpoint.getKey());
+                }
+            }
+        }
+
+        this.writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @return True if the winery has been finished
+     */
+    public synchronized boolean isFinished(String name, URL url) {
+
+        String[] checkpoint = this.checkpoints.get(key(name, url.toString()));
+        return checkpoint != null && checkpoint[0].equals(DONE);
+    }
+
+    /**
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @return True if the row of the winery has been written
+     */
+    public synchronized boolean isPlaceWritten(String name, URL url) {
+        return this.checkpoints.containsKey(key(name, url.toString()));
+    }
+
+    /**
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @return Number of reviews of the winery already written
+     */
+    public synchronized int getReviewsWritten(String name, URL url) {
+
+        String[] checkpoint = this.checkpoints.get(key(name, url.toString()));
+        return (checkpoint != null) ? Integer.parseInt(checkpoint[3]) : 0;
+    }
+
+    /**
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @return The fingerprints of the reviews of the winery already written, which must not be modified
+     */
+    public synchronized Set<Long> getFingerprints(String name, URL url) {
+
+        Set<Long> written = this.fingerprints.get(key(name, url.toString()));
+        return (written != null) ? Collections.unmodifiableSet(new HashSet<>(written)) : Collections.emptySet();
+    }
+
+    /**
+     * @return Number of wineries finished
+     */
+    public synchronized int getNumFinished() {
+
+        int numFinished = 0;
+        for (String[] checkpoint : this.checkpoints.values()) {
+            if (checkpoint[0].equals(DONE)) {
+                numFinished++;
+            }
+        }
+        return numFinished;
+    }
+
+    /**
+     * Records a checkpoint of a winery. The rows it refers to must have been flushed before
+     *
+     * @param state State of the winery: {@link #PLACE}, {@link #REVIEWS} or {@link #DONE}
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @param numReviews Number of reviews of the winery written
+     */
+    public synchronized void record(String state, String name, URL url, int numReviews) {
+        this.record(state, name, url, numReviews, Collections.emptyList());
+    }
+
+    /**
+     * Records a checkpoint of a winery with the reviews written since its previous checkpoint. The rows it refers
+     * to must have been flushed before
+     *
+     * @param state State of the winery: {@link #PLACE}, {@link #REVIEWS} or {@link #DONE}
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @param numReviews Number of reviews of the winery written
+     * @param written The fingerprints of the reviews written since the previous checkpoint
+     */
+    public synchronized void record(String state, String name, URL url, int numReviews, Collection<Long> written) {
+
+        String[] checkpoint = {state, clean(name), clean(url.toString()), String.valueOf(numReviews)};
+        StringBuilder line = new StringBuilder(String.join("\t", checkpoint));
+        if (!written.isEmpty()) {
+            char separator = '\t';
+            for (long fingerprint : written) {
+                line.append(separator).append(Long.toHexString(fingerprint));
+                separator = ',';
+            }
+        }
+        try {
+            this.writer.write(line.append('\n').toString());
+            this.writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("The checkpoint of " + name + " could not be written in " + this.file, e);
+        }
+        String key = key(checkpoint[1], checkpoint[2]);
+        this.checkpoints.put(key, checkpoint);
+        if (state.equals(DONE)) {
+            this.fingerprints.remove(key);
+        } else if (!written.isEmpty()) {
+            this.fingerprints.computeIfAbsent(key, k -> new HashSet<>()).addAll(written);
+        }
+    }
+
+    /**
+     * Closes the file of the journal
+     */
+    public synchronized void close() {
+
+        try {
+            this.writer.close();
+        } catch (IOException e) {
+            System.err.println("The journal " + this.file + " could not be closed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes and deletes the file of the journal, once the crawl has finished all the wineries, so the next crawl
+     * starts from the beginning
+     */
+    public synchronized void delete() {
+
+        this.close();
+        this.checkpoints.clear();
+        this.fingerprints.clear();
+        if (!new File(this.file).delete()) {
+            System.err.println("The journal " + this.file + " could not be deleted");
+        }
+    }
+
+    /**
+     * Removes the last line of the journal if it has no new line, as it was cut by a crash, so the next checkpoint
+     * is not joined to it
+     *
+     * @param file The file of the journal
+     * @throws IOException if the file can not be read or truncated
+     */
+    private static void removeCutLine(String file) throws IOException {
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            while (length > 0) {
+                raf.seek(length - 1);
+                if (raf.read() == '\n') {
+                    break;
+                }
+                length--;
+            }
+            raf.setLength(length);
+        }
+    }
+
+    /**
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @return The key of the winery in the journal
+     */
+    private static String key(String name, String url) {
+        return clean(name) + "\t" + clean(url);
+    }
+
+    /**
+     * @param field A field of a line of the journal
+     * @return The field without the characters which separate the fields and the lines
+     */
+    private static String clean(String field) {
+        return field.replaceAll("[\t\r\n]", " ");
+    }
+}
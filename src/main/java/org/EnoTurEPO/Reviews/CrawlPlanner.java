@@ -0,0 +1,381 @@
+package org.EnoTurEPO.Reviews;
+
+import com.opencsv.CSVReader;
+import org.EnoTurEPO.util.Trio;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Planner of the crawl, which reads and validates all the rows of the input CSV before any browser is started. By
+ * default each winery is planned alone, in the order of the CSV, so the rows of the outputs keep that order. When
+ * batches are requested, the wineries are grouped into batches read one after another by the same worker. The
+ * wineries of a batch share their D.O. and are ordered by a nearest neighbour tour over the coordinates of their
+ * Google Maps web addresses, so a session visits nearby places and reuses the map tiles and the cache of the
+ * previous one.
+ * <p>
+ * When the costs of the wineries are known, the batches are planned largest first, so the workers which take them
+ * from a shared queue do not start a huge winery at the end of the crawl. A batch then costs at most as much as the
+ * most expensive winery or as a full batch of wineries of mean cost, so a batch of several big wineries does not set
+ * the length of the crawl.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class CrawlPlanner {
+
+    /**
+     * Default maximum number of wineries of a batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 10;
+
+    /**
+     * Default maximum distance in kilometres between two consecutive wineries of a batch
+     */
+    public static final double DEFAULT_BATCH_DISTANCE = 25;
+
+    /**
+     * Pattern of the coordinates of the winery in its Google Maps web address, the same one used by the extraction
+     */
+    private static final Pattern COORDS_PATTERN = Pattern.compile("(/@)(-?[0-9.]+,-?[0-9.]+)");
+
+    /**
+     * Mean radius of the Earth in kilometres
+     */
+    private static final double EARTH_RADIUS = 6371.0;
+
+    /**
+     * A winery of the input CSV with its coordinates
+     */
+    private static class Stop {
+
+        /**
+         * The trio <name, D.O., url> of the winery
+         */
+        private final Trio<String, String, URL> winery;
+
+        /**
+         * Latitude of the winery in radians
+         */
+        private final double latitude;
+
+        /**
+         * Longitude of the winery in radians
+         */
+        private final double longitude;
+
+        /**
+         * Constructs a new instance of {@link Stop}
+         *
+         * @param winery The trio <name, D.O., url> of the winery
+         * @param latitude Latitude of the winery in degrees
+         * @param longitude Longitude of the winery in degrees
+         */
+        private Stop(Trio<String, String, URL> winery, double latitude, double longitude) {
+
+            this.winery = winery;
+            this.latitude = Math.toRadians(latitude);
+            this.longitude = Math.toRadians(longitude);
+        }
+
+        /**
+         * @param other Another winery
+         * @return Returns the great-circle distance between both wineries in kilometres
+         */
+        private double distance(Stop other) {
+
+            double dLat = Math.sin((other.latitude - this.latitude) / 2);
+            double dLon = Math.sin((other.longitude - this.longitude) / 2);
+            double a = dLat * dLat + Math.cos(this.latitude) * Math.cos(other.latitude) * dLon * dLon;
+            return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+        }
+    }
+
+    /**
+     * Maximum number of wineries of a batch
+     */
+    private final int batchSize;
+
+    /**
+     * Maximum distance in kilometres between two consecutive wineries of a batch
+     */
+    private final double batchDistance;
+
+    /**
+     * The wineries read and valid, in the order of the CSV
+     */
+    private final List<Stop> stops;
+
+    /**
+     * The rows of the CSV which are not valid, with their line and the reason
+     */
+    private final List<String> invalidRows;
+
+    /**
+     * The estimated cost of each winery, or null to plan the batches in the order of their D.O.
+     */
+    private CrawlCosts costs;
+
+    /**
+     * True to group the wineries into batches by D.O. and proximity, false to plan each winery alone
+     */
+    private boolean batched;
+
+    /**
+     * Constructs a new instance of {@link CrawlPlanner} with the default size and distance of the batches
+     */
+    public CrawlPlanner() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_BATCH_DISTANCE);
+    }
+
+    /**
+     * Constructs a new instance of {@link CrawlPlanner}
+     *
+     * @param batchSize Maximum number of wineries of a batch
+     * @param batchDistance Maximum distance in kilometres between two consecutive wineries of a batch
+     */
+    public CrawlPlanner(int batchSize, double batchDistance) {
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("A batch needs at least one winery");
+        }
+        this.batchSize = batchSize;
+        this.batchDistance = batchDistance;
+        this.stops = new ArrayList<>();
+        this.invalidRows = new ArrayList<>();
+    }
+
+    /**
+     * Reads and validates all the wineries of the input CSV (name;D.O.;url with a header line). A row is not valid
+     * if it has not the three columns, its url is malformed or the coordinates can not be obtained from it, as the
+     * extraction of such a winery would be aborted
+     *
+     * @param csvFile Path of the input CSV
+     * @return Number of valid wineries read
+     * @throws IOException if the file can not be read
+     */
+    public int read(String csvFile) throws IOException {
+
+        int numRead = 0;
+        CSVReader csvReader = new CSVReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8), ';', '"', 1);
+        try {
+            String[] row;
+            int line = 1;
+            while ((row = csvReader.readNext()) != null) {
+                line++;
+                if (row.length < 3) {
+                    this.invalidRows.add("Line " + line + " (" + row[0] + "): it has not the columns name;D.O.;url");
+                    continue;
+                }
+                URL url;
+                try {
+                    url = new URL(row[2]);
+                } catch (MalformedURLException e) {
+                    this.invalidRows.add("Line " + line + " (" + row[0] + "): the url is malformed, " + e.getMessage());
+                    continue;
+                }
+                double[] coords = parseCoords(row[2]);
+                if (coords == null) {
+                    this.invalidRows.add("Line " + line + " (" + row[0] + "): the url has no valid coordinates");
+                    continue;
+                }
+                this.stops.add(new Stop(new Trio<>(row[0], row[1], url), coords[0], coords[1]));
+                numRead++;
+            }
+        } finally {
+            csvReader.close();
+        }
+        return numRead;
+    }
+
+    /**
+     * @param costs The estimated cost of each winery to plan the batches largest first, or null to plan them in the
+     *              order of their D.O.
+     */
+    public void setCosts(CrawlCosts costs) {
+        this.costs = costs;
+    }
+
+    /**
+     * @param batched True to group the wineries into batches by D.O. and proximity, which changes the order in which
+     *                they are read, or false to plan each winery alone in the order of the CSV, which is the default
+     */
+    public void setBatched(boolean batched) {
+        this.batched = batched;
+    }
+
+    /**
+     * @return Returns the rows of the CSV which are not valid, with their line and the reason
+     */
+    public List<String> getInvalidRows() {
+        return this.invalidRows;
+    }
+
+    /**
+     * @return Returns the number of valid wineries read
+     */
+    public int getNumWineries() {
+        return this.stops.size();
+    }
+
+    /**
+     * @return Returns the valid wineries read, trios <name, D.O., url> in the order of the CSV
+     */
+    public List<Trio<String, String, URL>> getWineries() {
+
+        List<Trio<String, String, URL>> wineries = new ArrayList<>(this.stops.size());
+        for (Stop stop : this.stops) {
+            wineries.add(stop.winery);
+        }
+        return wineries;
+    }
+
+    /**
+     * Plans the valid wineries. Without batches, each winery is a batch of its own, in the order of the CSV. With
+     * batches, the D.O.s are planned in the order they appear in the CSV, and the wineries of each D.O. are visited
+     * from the westernmost one, always going to the nearest winery not visited. A batch is closed when it is full or
+     * the next winery is farther than the maximum distance. With costs, it is also closed when the next winery would
+     * make it cost more than the most expensive winery or a full batch of wineries of mean cost, and in both cases
+     * the batches are sorted from the most expensive to the cheapest one.
+     *
+     * @param skip The wineries which are not planned, for example those already finished
+     * @return The batches of trios <name, D.O., url>, in the order they should be read
+     */
+    public List<List<Trio<String, String, URL>>> plan(Predicate<Trio<String, String, URL>> skip) {
+
+        Map<String, List<Stop>> origins = new LinkedHashMap<>();
+        for (Stop stop : this.stops) {
+            if (!skip.test(stop.winery)) {
+                // Without batches all the wineries are a single group, in the order of the CSV
+                origins.computeIfAbsent(this.batched ? stop.winery.getObj2() : "", k -> new ArrayList<>()).add(stop);
+            }
+        }
+
+        long maxBatchCost = Long.MAX_VALUE;
+        if (this.costs != null) {
+            long maxCost = 0, totalCost = 0, numStops = 0;
+            for (List<Stop> origin : origins.values()) {
+                for (Stop stop : origin) {
+                    long cost = this.costs.estimate(stop.winery.getObj1());
+                    maxCost = Math.max(maxCost, cost);
+                    totalCost += cost;
+                    numStops++;
+                }
+            }
+            maxBatchCost = Math.max(maxCost, (numStops > 0) ? this.batchSize * totalCost / numStops : 0);
+        }
+
+        List<List<Trio<String, String, URL>>> batches = new ArrayList<>();
+        List<Long> batchCosts = new ArrayList<>();
+        for (List<Stop> origin : origins.values()) {
+            List<Trio<String, String, URL>> batch = new ArrayList<>();
+            long batchCost = 0;
+            Stop previous = null;
+            for (Stop stop : this.batched ? tour(origin) : origin) {
+                long cost = (this.costs != null) ? this.costs.estimate(stop.winery.getObj1()) : 0;
+                if (!batch.isEmpty() && (!this.batched || batch.size() == this.batchSize
+                        || previous.distance(stop) > this.batchDistance || batchCost + cost > maxBatchCost)) {
+                    batches.add(batch);
+                    batchCosts.add(batchCost);
+                    batch = new ArrayList<>();
+                    batchCost = 0;
+                }
+                batch.add(stop.winery);
+                batchCost += cost;
+                previous = stop;
+            }
+            if (!batch.isEmpty()) {
+                batches.add(batch);
+                batchCosts.add(batchCost);
+            }
+        }
+
+        if (this.costs != null) {
+            // Longest processing time first, stable so the batches of the same cost keep the order of their D.O.
+            Integer[] order = new Integer[batches.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(batchCosts.get(b), batchCosts.get(a)));
+            List<List<Trio<String, String, URL>>> sorted = new ArrayList<>(batches.size());
+            for (int index : order) {
+                sorted.add(batches.get(index));
+            }
+            batches = sorted;
+        }
+        return batches;
+    }
+
+    /**
+     * Orders the wineries by a nearest neighbour tour which starts at the westernmost one
+     *
+     * @param stops The wineries of a D.O.
+     * @return The wineries in the order of the tour
+     */
+    private static List<Stop> tour(List<Stop> stops) {
+
+        List<Stop> pending = new ArrayList<>(stops);
+        List<Stop> tour = new ArrayList<>(stops.size());
+        int next = 0;
+        for (int i = 1; i < pending.size(); i++) {
+            if (pending.get(i).longitude < pending.get(next).longitude) {
+                next = i;
+            }
+        }
+        while (!pending.isEmpty()) {
+            Stop current = pending.get(next);
+            // The last winery takes the place of the visited one, so removing it does not shift the list
+            pending.set(next, pending.get(pending.size() - 1));
+            pending.remove(pending.size() - 1);
+            tour.add(current);
+
+            double nearest = Double.MAX_VALUE;
+            for (int i = 0; i < pending.size(); i++) {
+                double distance = current.distance(pending.get(i));
+                if (distance < nearest) {
+                    nearest = distance;
+                    next = i;
+                }
+            }
+        }
+        return tour;
+    }
+
+    /**
+     * Obtains the coordinates of a Google Maps web address, which are the last ones after /@
+     *
+     * @param url The web address
+     * @return The latitude and the longitude in degrees, or null if there are no coordinates or they are out of range
+     */
+    static double[] parseCoords(String url) {
+
+        Matcher matcher = COORDS_PATTERN.matcher(url);
+        String coords = null;
+        while (matcher.find()) { coords = matcher.group(2); }
+        if (coords == null) {
+            return null;
+        }
+
+        try {
+            double latitude = Double.parseDouble(coords.split(",")[0]);
+            double longitude = Double.parseDouble(coords.split(",")[1]);
+            if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+                return null;
+            }
+            return new double[]{latitude, longitude};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.EnoTurEPO.Reviews;
+
+import org.EnoTurEPO.util.Trio;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler which reads several wineries at the same time, each one in a session of a {@link DriverPool}. The
+ * wineries can be grouped into batches, whose wineries are read one after another by the same worker
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class CrawlScheduler {
+
+    /**
+     * The extractor shared by all the workers
+     */
+    private final WebExtractor webExtractor;
+
+    /**
+     * The pool of browser sessions, one per worker
+     */
+    private final DriverPool driverPool;
+
+    /**
+     * Number of wineries read at the same time
+     */
+    private final int numWorkers;
+
+    /**
+     * Constructs a new instance of {@link CrawlScheduler}
+     *
+     * @param webExtractor The extractor shared by all the workers
+     * @param driverPool The pool of browser sessions
+     * @param numWorkers Number of wineries read at the same time
+     */
+    public CrawlScheduler(WebExtractor webExtractor, DriverPool driverPool, int numWorkers) {
+
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("The scheduler needs at least one worker");
+        }
+
+        this.webExtractor = webExtractor;
+        this.driverPool = driverPool;
+        this.numWorkers = numWorkers;
+    }
+
+    /**
+     * Reads all the batches of the queue and waits until all of them are finished. The wineries of each batch are
+     * read one after another by the same worker
+     *
+     * @param batches The work queue with the trios <name, D.O., url> of the wineries of each batch
+     * @return Number of wineries which failed
+     * @throws InterruptedException if the thread is interrupted while waiting for the workers
+     */
+    public int runBatches(BlockingQueue<List<Trio<String, String, URL>>> batches) throws InterruptedException {
+
+        AtomicInteger failed = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(this.numWorkers);
+        List<Future<?>> workers = new ArrayList<>();
+
+        for (int i = 0; i < this.numWorkers; i++) {
+            workers.add(executor.submit(() -> {
+                List<Trio<String, String, URL>> batch;
+                while ((batch = batches.poll()) != null) {
+                    failed.addAndGet(this.runBatch(batch));
+                }
+                return null;
+            }));
+        }
+
+        executor.shutdown();
+        try {
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    System.err.println("A worker has stopped: " + e.getCause().getMessage());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return failed.get();
+    }
+
+    /**
+     * Reads the wineries of a batch one after another. The lease is closed after each winery, so the session is
+     * reset and its page budget is checked between the wineries as when they are not batched. As the pool gives back
+     * the session released last, the next winery of the batch usually gets the same session, whose HTTP cache is
+     * warm with the map tiles and scripts of the neighbouring wineries
+     *
+     * @param batch The trios <name, D.O., url> of the wineries of the batch
+     * @return Number of wineries of the batch which failed
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private int runBatch(List<Trio<String, String, URL>> batch) throws InterruptedException {
+
+        int failed = 0;
+        for (Trio<String, String, URL> winery : batch) {
+            try (DriverLease lease = this.driverPool.lease()) {
+                try {
+                    this.webExtractor.run(lease.getDriver(), winery.getObj1(), winery.getObj2(), winery.getObj3());
+                } catch (RuntimeException e) {
+                    lease.fail();
+                    failed++;
+                    System.err.println("The winery " + winery.getObj1() + " could not be read: " + e.getMessage());
+                }
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,75 @@
+package org.EnoTurEPO.Reviews;
+
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Lease of a browser session of a {@link DriverPool}. Closing the lease gives the session back to the pool
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class DriverLease implements AutoCloseable {
+
+    /**
+     * The pool which owns the session
+     */
+    private final DriverPool pool;
+
+    /**
+     * The session leased
+     */
+    private final WebDriver driver;
+
+    /**
+     * True if the session has failed and must not be reused
+     */
+    private boolean failed;
+
+    /**
+     * True if the lease has been closed
+     */
+    private boolean closed;
+
+    /**
+     * Constructs a new instance of {@link DriverLease}
+     *
+     * @param pool The pool which owns the session
+     * @param driver The session leased
+     */
+    DriverLease(DriverPool pool, WebDriver driver) {
+
+        this.pool = pool;
+        this.driver = driver;
+        this.failed = false;
+        this.closed = false;
+    }
+
+    /**
+     * @return Returns the session leased
+     */
+    public WebDriver getDriver() {
+
+        if (this.closed) {
+            throw new IllegalStateException("The lease is closed");
+        }
+        return this.driver;
+    }
+
+    /**
+     * Marks the session as failed, so it is closed instead of given back to the pool
+     */
+    public void fail() {
+        this.failed = true;
+    }
+
+    /**
+     * Gives the session back to the pool
+     */
+    @Override
+    public void close() {
+
+        if (!this.closed) {
+            this.closed = true;
+            this.pool.release(this.driver, this.failed);
+        }
+    }
+}
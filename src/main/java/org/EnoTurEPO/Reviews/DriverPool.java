@@ -0,0 +1,313 @@
+package org.EnoTurEPO.Reviews;
+
+import org.EnoTurEPO.util.CrawlMetrics;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.firefox.FirefoxDriver;
+import org.openqa.selenium.firefox.FirefoxOptions;
+import org.openqa.selenium.support.events.AbstractWebDriverEventListener;
+import org.openqa.selenium.support.events.EventFiringWebDriver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of long-lived Firefox sessions which are reused from one winery to the next. The sessions are leased
+ * through {@link #lease()}, one lease per winery. When a lease is closed the session is reset (cookies and storage)
+ * and given back to the pool, or recycled if it has failed or has loaded too many pages. The HTTP cache of a session
+ * is not cleared by the reset, and the session released last is the first one leased again, so a worker which reads
+ * a batch of neighbouring wineries keeps reusing the cached map tiles and scripts.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class DriverPool {
+
+    /**
+     * Default number of pages loaded by a session before it is recycled
+     */
+    public static final int DEFAULT_MAX_PAGES = 50;
+
+    /**
+     * Width of the window of a lean session
+     */
+    public static final int LEAN_WIDTH = 1024;
+
+    /**
+     * Height of the window of a lean session
+     */
+    public static final int LEAN_HEIGHT = 768;
+
+    /**
+     * Counter of the pages loaded by a session
+     */
+    private static class PageCounter extends AbstractWebDriverEventListener {
+
+        /**
+         * Number of pages loaded
+         */
+        private final AtomicInteger pages = new AtomicInteger(0);
+
+        @Override
+        public void afterNavigateTo(String url, WebDriver driver) {
+            this.pages.incrementAndGet();
+        }
+    }
+
+    /**
+     * The options used to start each Firefox session
+     */
+    private final FirefoxOptions options;
+
+    /**
+     * Number of pages loaded by a session before it is recycled
+     */
+    private final int maxPages;
+
+    /**
+     * Permits for the sessions which can be leased at the same time
+     */
+    private final Semaphore permits;
+
+    /**
+     * The sessions started and not leased
+     */
+    private final LinkedBlockingDeque<WebDriver> idle;
+
+    /**
+     * All the sessions started and not discarded, with their page counters
+     */
+    private final Map<WebDriver, PageCounter> drivers;
+
+    /**
+     * The metrics where the time to start each session is recorded, or null
+     */
+    private volatile CrawlMetrics metrics;
+
+    /**
+     * True if the pool has been closed
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new instance of {@link DriverPool} which recycles the sessions after {@link #DEFAULT_MAX_PAGES} pages
+     *
+     * @param size Maximum number of Firefox sessions alive at the same time
+     * @param options The options used to start each Firefox session
+     */
+    public DriverPool(int size, FirefoxOptions options) {
+        this(size, options, DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * Constructs a new instance of {@link DriverPool}
+     *
+     * @param size Maximum number of Firefox sessions alive at the same time
+     * @param options The options used to start each Firefox session
+     * @param maxPages Number of pages loaded by a session before it is recycled
+     */
+    public DriverPool(int size, FirefoxOptions options, int maxPages) {
+
+        if (size < 1) {
+            throw new IllegalArgumentException("The pool needs at least one session");
+        }
+        if (maxPages < 1) {
+            throw new IllegalArgumentException("A session must be able to load at least one page");
+        }
+
+        this.options = options;
+        this.maxPages = maxPages;
+        this.permits = new Semaphore(size, true);
+        this.idle = new LinkedBlockingDeque<>();
+        this.drivers = new ConcurrentHashMap<>();
+        this.closed = false;
+    }
+
+    /**
+     * @return Returns the options used by default to start a Firefox session
+     */
+    public static FirefoxOptions defaultOptions() {
+
+        FirefoxOptions op = new FirefoxOptions();
+        op.addPreference("javascript.enable", true);
+        return op;
+    }
+
+    /**
+     * The lean options start a headless Firefox with a small window which downloads only what the extraction reads.
+     * Images (the photos and the raster map tiles) and web fonts are not downloaded, media does not play, WebGL is
+     * disabled so Google Maps does not draw its vector map, and animations are reduced. The number of photos is still
+     * read from the data-photo-index attributes of the gallery, which do not need the images.
+     *
+     * @return Returns the options used to start a lean Firefox session
+     */
+    public static FirefoxOptions leanOptions() {
+
+        FirefoxOptions op = defaultOptions();
+        op.setHeadless(true);
+        op.addArguments("--width=" + LEAN_WIDTH, "--height=" + LEAN_HEIGHT);
+        op.addPreference("permissions.default.image", 2);
+        op.addPreference("gfx.downloadable_fonts.enabled", false);
+        op.addPreference("media.autoplay.default", 5);
+        op.addPreference("webgl.disabled", true);
+        op.addPreference("ui.prefersReducedMotion", 1);
+        op.addPreference("image.animation_mode", "none");
+        op.addPreference("toolkit.cosmeticAnimations.enabled", false);
+        return op;
+    }
+
+    /**
+     * @param metrics The metrics where the time to start each session is recorded, as the timer driverStartup, or null
+     */
+    public void setMetrics(CrawlMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Leases a session of the pool. The lease must be closed when the winery is finished, and marked as failed
+     * with {@link DriverLease#fail()} if the session should not be reused. Blocks until a session is available.
+     *
+     * @return The lease of the session
+     * @throws InterruptedException if the thread is interrupted while waiting for a session
+     */
+    public DriverLease lease() throws InterruptedException {
+        return new DriverLease(this, this.acquire());
+    }
+
+    /**
+     * Takes a healthy session from the pool, starting a new one if there are no idle sessions and the pool is not
+     * full. Blocks until a session is available.
+     *
+     * @return The session taken
+     * @throws InterruptedException if the thread is interrupted while waiting for a session
+     */
+    WebDriver acquire() throws InterruptedException {
+
+        if (this.closed) {
+            throw new IllegalStateException("The pool is closed");
+        }
+
+        this.permits.acquire();
+        try {
+            WebDriver driver;
+            while ((driver = this.idle.pollFirst()) != null) {
+                if (this.isHealthy(driver)) {
+                    return driver;
+                }
+                System.err.println("A browser session is not responding. Recycling...");
+                this.quit(driver);
+            }
+            return this.start();
+        } catch (RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives back a session to the pool. The session is reset for the next winery, or closed if it has failed or
+     * it has loaded the maximum number of pages.
+     *
+     * @param driver The session taken
+     * @param failed True if the session has failed
+     */
+    void release(WebDriver driver, boolean failed) {
+
+        try {
+            PageCounter counter = this.drivers.get(driver);
+            if (failed || this.closed || counter == null || counter.pages.get() >= this.maxPages || !this.reset(driver)) {
+                this.quit(driver);
+            } else {
+                this.idle.offerFirst(driver);
+            }
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * Closes all the sessions of the pool
+     */
+    public void close() {
+
+        this.closed = true;
+        this.idle.clear();
+
+        List<WebDriver> alive = new ArrayList<>(this.drivers.keySet());
+        for (WebDriver driver : alive) {
+            this.quit(driver);
+        }
+    }
+
+    /**
+     * Starts a new Firefox session which counts the pages it loads
+     *
+     * @return The new session
+     */
+    private WebDriver start() {
+
+        PageCounter counter = new PageCounter();
+        CrawlMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        EventFiringWebDriver driver = new EventFiringWebDriver(new FirefoxDriver(this.options));
+        if (metrics != null) {
+            metrics.stop("driverStartup", start);
+        }
+        driver.register(counter);
+        this.drivers.put(driver, counter);
+        return driver;
+    }
+
+    /**
+     * Deletes the cookies and the local and session storage of a session and leaves it in a blank page
+     *
+     * @param driver The session to reset
+     * @return True if the session has been reset
+     */
+    private boolean reset(WebDriver driver) {
+
+        try {
+            ((JavascriptExecutor) driver).executeScript("try { window.localStorage.clear(); window.sessionStorage.clear(); } catch (e) {}");
+            driver.manage().deleteAllCookies();
+            driver.get("about:blank");
+            return true;
+        } catch (RuntimeException e) {
+            System.err.println("The browser session could not be reset: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Checks if a session still responds
+     *
+     * @param driver The session to check
+     * @return True if the session responds
+     */
+    private boolean isHealthy(WebDriver driver) {
+
+        try {
+            return ((JavascriptExecutor) driver).executeScript("return document.readyState;") != null;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes a session and removes it from the pool
+     *
+     * @param driver The session to close
+     */
+    private void quit(WebDriver driver) {
+
+        this.drivers.remove(driver);
+        try {
+            driver.quit();
+        } catch (RuntimeException e) {
+            System.err.println("The browser session could not be closed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package org.EnoTurEPO.Reviews;
+
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Declarative plan of the fields extracted from a page or a review: each field has a selector, what is read from the
+ * elements it matches and a setter which post-processes the value and stores it. The plan is built once and
+ * evaluated in a single traversal of the DOM, which tests every field against each element, instead of walking the
+ * whole document once per field. The values of the selectors are the same as with the jsoup selection of each
+ * field, and a number is searched in all the content of the serialized document: the texts, the data of the scripts
+ * and styles and the attribute values. The setters are called after the traversal in the order the fields were
+ * added, so a setter can override a previous one.
+ *
+ * @param <T> The type of the object filled by the plan
+ * @author Miguel Ferreiro Díaz
+ */
+public class ExtractionPlan<T> {
+
+    /**
+     * What is read from the elements matched by a field
+     */
+    private enum Kind {
+
+        /**
+         * The texts of all the elements joined by spaces, as {@link org.jsoup.select.Elements#text()}, "" if none
+         */
+        TEXT,
+
+        /**
+         * The text of the first element, or null if none
+         */
+        FIRST_TEXT,
+
+        /**
+         * An attribute of the first element which has it, as {@link org.jsoup.select.Elements#attr(String)}, "" if none
+         */
+        ATTRIBUTE,
+
+        /**
+         * The number of elements
+         */
+        COUNT,
+
+        /**
+         * The first number captured by a pattern in the texts, the data of the scripts and styles and the attribute
+         * values, in the order of the document, or -1 if none
+         */
+        NUMBER
+    }
+
+    /**
+     * A field of the plan
+     */
+    private static class Field<T> {
+
+        /**
+         * What is read from the elements matched
+         */
+        private final Kind kind;
+
+        /**
+         * The elements matched only inside an element matched by the scope (or being it), or null for the whole tree
+         */
+        private final Evaluator scope;
+
+        /**
+         * The selector of the elements, or null for {@link Kind#NUMBER}
+         */
+        private final Evaluator selector;
+
+        /**
+         * The attribute read, for {@link Kind#ATTRIBUTE}
+         */
+        private final String attribute;
+
+        /**
+         * The pattern whose first group is the number, for {@link Kind#NUMBER}
+         */
+        private final Pattern pattern;
+
+        /**
+         * The setter of the text or attribute values
+         */
+        private final BiConsumer<T, String> textSetter;
+
+        /**
+         * The setter of the counts and numbers
+         */
+        private final ObjIntConsumer<T> intSetter;
+
+        /**
+         * Constructs a new instance of {@link Field}
+         *
+         * @param kind What is read from the elements matched
+         * @param scope The scope of the elements matched, or null
+         * @param selector The selector of the elements, or null
+         * @param attribute The attribute read, or null
+         * @param pattern The pattern of the number, or null
+         * @param textSetter The setter of the text or attribute values, or null
+         * @param intSetter The setter of the counts and numbers, or null
+         */
+        private Field(Kind kind, Evaluator scope, Evaluator selector, String attribute, Pattern pattern,
+                      BiConsumer<T, String> textSetter, ObjIntConsumer<T> intSetter) {
+
+            this.kind = kind;
+            this.scope = scope;
+            this.selector = selector;
+            this.attribute = attribute;
+            this.pattern = pattern;
+            this.textSetter = textSetter;
+            this.intSetter = intSetter;
+        }
+    }
+
+    /**
+     * The fields, in the order their setters are called
+     */
+    private final List<Field<T>> fields;
+
+    /**
+     * Constructs a new instance of {@link ExtractionPlan} without fields
+     */
+    public ExtractionPlan() {
+        this.fields = new ArrayList<>();
+    }
+
+    /**
+     * Adds a field with the texts of all the elements matched joined by spaces, or "" if there are none
+     *
+     * @param selector The selector of the elements
+     * @param setter The setter of the text
+     * @return This plan
+     */
+    public ExtractionPlan<T> text(Evaluator selector, BiConsumer<T, String> setter) {
+        return this.text(null, selector, setter);
+    }
+
+    /**
+     * Adds a field with the texts of all the elements matched inside the scope joined by spaces, or "" if there are none
+     *
+     * @param scope The elements are only matched inside an element matched by the scope, or being it
+     * @param selector The selector of the elements
+     * @param setter The setter of the text
+     * @return This plan
+     */
+    public ExtractionPlan<T> text(Evaluator scope, Evaluator selector, BiConsumer<T, String> setter) {
+
+        this.fields.add(new Field<>(Kind.TEXT, scope, selector, null, null, setter, null));
+        return this;
+    }
+
+    /**
+     * Adds a field with the text of the first element matched, or null if there is none
+     *
+     * @param selector The selector of the element
+     * @param setter The setter of the text
+     * @return This plan
+     */
+    public ExtractionPlan<T> firstText(Evaluator selector, BiConsumer<T, String> setter) {
+        return this.firstText(null, selector, setter);
+    }
+
+    /**
+     * Adds a field with the text of the first element matched inside the scope, or null if there is none
+     *
+     * @param scope The element is only matched inside an element matched by the scope, or being it
+     * @param selector The selector of the element
+     * @param setter The setter of the text
+     * @return This plan
+     */
+    public ExtractionPlan<T> firstText(Evaluator scope, Evaluator selector, BiConsumer<T, String> setter) {
+
+        this.fields.add(new Field<>(Kind.FIRST_TEXT, scope, selector, null, null, setter, null));
+        return this;
+    }
+
+    /**
+     * Adds a field with an attribute of the first element matched which has it, or "" if there is none
+     *
+     * @param selector The selector of the elements
+     * @param attribute The name of the attribute
+     * @param setter The setter of the value of the attribute
+     * @return This plan
+     */
+    public ExtractionPlan<T> attr(Evaluator selector, String attribute, BiConsumer<T, String> setter) {
+
+        this.fields.add(new Field<>(Kind.ATTRIBUTE, null, selector, attribute, null, setter, null));
+        return this;
+    }
+
+    /**
+     * Adds a field with the number of elements matched
+     *
+     * @param selector The selector of the elements
+     * @param setter The setter of the number of elements
+     * @return This plan
+     */
+    public ExtractionPlan<T> count(Evaluator selector, ObjIntConsumer<T> setter) {
+
+        this.fields.add(new Field<>(Kind.COUNT, null, selector, null, null, null, setter));
+        return this;
+    }
+
+    /**
+     * Adds a field with the first number found by a pattern in the texts, the data of the scripts and styles and the
+     * attribute values of the tree, in the order of the document, or -1 if there is none
+     *
+     * @param pattern The pattern, whose first group is the number
+     * @param setter The setter of the number
+     * @return This plan
+     */
+    public ExtractionPlan<T> number(Pattern pattern, ObjIntConsumer<T> setter) {
+
+        this.fields.add(new Field<>(Kind.NUMBER, null, null, null, pattern, null, setter));
+        return this;
+    }
+
+    /**
+     * Extracts all the fields of the plan from a tree in one traversal and stores them in the target
+     *
+     * @param root The root of the tree, which can be matched too
+     * @param target The object filled
+     */
+    public void extract(Element root, T target) {
+
+        int numFields = this.fields.size();
+        StringBuilder[] texts = new StringBuilder[numFields];
+        String[] values = new String[numFields];
+        int[] counts = new int[numFields];
+        int[] numbers = new int[numFields];
+        // Depth of the outermost scope element of each field which is being traversed, or -1
+        int[] scopeDepths = new int[numFields];
+        for (int f = 0; f < numFields; f++) {
+            numbers[f] = -1;
+            scopeDepths[f] = -1;
+        }
+
+        NodeTraversor.traverse(new NodeVisitor() {
+            @Override
+            public void head(Node node, int depth) {
+
+                if (node instanceof Element) {
+                    Element element = (Element) node;
+                    for (int f = 0; f < numFields; f++) {
+                        Field<T> field = ExtractionPlan.this.fields.get(f);
+                        if (field.kind == Kind.NUMBER) {
+                            if (numbers[f] < 0) {
+                                for (Attribute attribute : element.attributes()) {
+                                    numbers[f] = findNumber(field.pattern, attribute.getValue());
+                                    if (numbers[f] >= 0) {
+                                        break;
+                                    }
+                                }
+                            }
+                            continue;
+                        }
+                        if (field.scope != null) {
+                            if (scopeDepths[f] < 0 && field.scope.matches(root, element)) {
+                                scopeDepths[f] = depth;
+                            }
+                            if (scopeDepths[f] < 0) {
+                                continue;
+                            }
+                        }
+                        if ((field.kind == Kind.FIRST_TEXT || field.kind == Kind.ATTRIBUTE) && values[f] != null) {
+                            continue;
+                        }
+                        if (!field.selector.matches(root, element)) {
+                            continue;
+                        }
+                        counts[f]++;
+                        switch (field.kind) {
+                            case TEXT:
+                                if (texts[f] == null) {
+                                    texts[f] = new StringBuilder();
+                                } else if (texts[f].length() != 0) {
+                                    texts[f].append(' ');
+                                }
+                                texts[f].append(element.text());
+                                break;
+                            case FIRST_TEXT:
+                                values[f] = element.text();
+                                break;
+                            case ATTRIBUTE:
+                                if (element.hasAttr(field.attribute)) {
+                                    values[f] = element.attr(field.attribute);
+                                }
+                                break;
+                            default:
+                                break;
+                        }
+                    }
+                } else if (node instanceof TextNode || node instanceof DataNode) {
+                    String text = (node instanceof TextNode) ? ((TextNode) node).getWholeText() : ((DataNode) node).getWholeData();
+                    for (int f = 0; f < numFields; f++) {
+                        Field<T> field = ExtractionPlan.this.fields.get(f);
+                        if (field.kind == Kind.NUMBER && numbers[f] < 0) {
+                            numbers[f] = findNumber(field.pattern, text);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void tail(Node node, int depth) {
+
+                if (node instanceof Element) {
+                    for (int f = 0; f < numFields; f++) {
+                        if (scopeDepths[f] == depth) {
+                            scopeDepths[f] = -1;
+                        }
+                    }
+                }
+            }
+        }, root);
+
+        for (int f = 0; f < numFields; f++) {
+            Field<T> field = this.fields.get(f);
+            switch (field.kind) {
+                case TEXT:
+                    field.textSetter.accept(target, (texts[f] != null) ? texts[f].toString() : "");
+                    break;
+                case FIRST_TEXT:
+                    field.textSetter.accept(target, values[f]);
+                    break;
+                case ATTRIBUTE:
+                    field.textSetter.accept(target, (values[f] != null) ? values[f] : "");
+                    break;
+                case COUNT:
+                    field.intSetter.accept(target, counts[f]);
+                    break;
+                case NUMBER:
+                    field.intSetter.accept(target, numbers[f]);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @param pattern The pattern, whose first group is the number
+     * @param text A text of the tree
+     * @return The number found in the text, or -1 if there is none
+     */
+    private static int findNumber(Pattern pattern, String text) {
+
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+}
@@ -0,0 +1,95 @@
+package org.EnoTurEPO.Reviews;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reviews already read in a previous run, used to re-crawl only the new reviews of the wineries. A review is
+ * identified by a fingerprint of its author and its original text. The date of the review is not part of it, as
+ * Google Maps shows the date relative to the day the page is read ("hace 2 meses"), so it changes between runs.
+ * A review whose text has been edited gets a new fingerprint, so it is read again.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class KnownReviews {
+
+    /**
+     * The fingerprints of the reviews, by the title of their winery
+     */
+    private final Map<String, Set<Long>> reviews;
+
+    /**
+     * Constructs a new instance of {@link KnownReviews} without reviews
+     */
+    public KnownReviews() {
+        this.reviews = new HashMap<>();
+    }
+
+    /**
+     * Loads the reviews of a CSV written by a previous run, with the columns title, author and textReviewOriginal
+     *
+     * @param csvFile Path of the CSV of reviews
+     * @return The reviews of the CSV, or none if the file does not exist
+     * @throws IOException if the file can not be read or it has not the needed columns
+     */
+    public static KnownReviews load(String csvFile) throws IOException {
+
+        KnownReviews known = new KnownReviews();
+        if (!new File(csvFile).exists()) {
+            System.err.println("The reviews of the previous run " + csvFile + " do not exist. All the reviews will be read");
+            return known;
+        }
+
+        PreviousRunCsv.read(csvFile, new String[]{"title", "author", "textReviewOriginal"},
+                row -> known.add(row[0], fingerprint(row[1], row[2])));
+        return known;
+    }
+
+    /**
+     * Adds a review
+     *
+     * @param title Name of the winery indicated in Google Maps
+     * @param fingerprint Fingerprint of the review, calculated by {@link #fingerprint(String, String)}
+     */
+    public synchronized void add(String title, long fingerprint) {
+        this.reviews.computeIfAbsent(title, t -> new HashSet<>()).add(fingerprint);
+    }
+
+    /**
+     * @param title Name of the winery indicated in Google Maps
+     * @return The fingerprints of the reviews of the winery, which must not be modified
+     */
+    public synchronized Set<Long> get(String title) {
+        return Collections.unmodifiableSet(this.reviews.getOrDefault(title, Collections.emptySet()));
+    }
+
+    /**
+     * @return Number of wineries with reviews
+     */
+    public synchronized int getNumWineries() {
+        return this.reviews.size();
+    }
+
+    /**
+     * Calculates the fingerprint of a review, a 64 bit FNV-1a hash of its author and its original text
+     *
+     * @param author Author of the review
+     * @param textReviewOriginal Original text of the review
+     * @return The fingerprint of the review
+     */
+    public static long fingerprint(String author, String textReviewOriginal) {
+
+        long hash = 0xcbf29ce484222325L;
+        String key = author.trim() + '\u0000' + textReviewOriginal.trim();
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,243 @@
+package org.EnoTurEPO.Reviews;
+
+import org.EnoTurEPO.util.CrawlMetrics;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Waits for the conditions of a Google Maps page instead of sleeping a fixed time. Each wait polls its condition
+ * with a growing interval until it holds or its step timeout expires. The time it actually took is recorded in the
+ * {@link CrawlMetrics} of the crawl as the timer wait.step, and its timeouts as the counter timeout.step.
+ * It is shared by the workers of the crawl, so the timeouts and the polling can be set from any thread.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class PageWaiter {
+
+    /**
+     * Script which returns the milliseconds since the last DOM mutation or the last resource loaded by the page
+     */
+    private static final String QUIET_SCRIPT =
+            "var w = window.__enoturWaiter;" +
+            "if (!w) {" +
+            "  w = window.__enoturWaiter = {t: Date.now(), r: 0};" +
+            "  new MutationObserver(function() { w.t = Date.now(); })" +
+            "    .observe(document, {childList: true, subtree: true, attributes: true, characterData: true});" +
+            "}" +
+            "var r = window.performance ? window.performance.getEntriesByType('resource').length : 0;" +
+            "if (r != w.r) { w.r = r; w.t = Date.now(); }" +
+            "return document.readyState == 'complete' ? Date.now() - w.t : 0;";
+
+    /**
+     * Timeout of the steps without their own timeout, in milliseconds
+     */
+    private volatile long defaultTimeout;
+
+    /**
+     * Timeout of each step, in milliseconds
+     */
+    private final Map<String, Long> timeouts;
+
+    /**
+     * First interval between two polls, in milliseconds
+     */
+    private volatile long initialPoll;
+
+    /**
+     * Factor applied to the interval after each poll
+     */
+    private volatile double backoff;
+
+    /**
+     * Maximum interval between two polls, in milliseconds
+     */
+    private volatile long maxPoll;
+
+    /**
+     * Milliseconds without DOM mutations nor network activity to consider a page settled
+     */
+    private volatile long quietPeriod;
+
+    /**
+     * The metrics where the time and the timeouts of each wait are recorded, or null
+     */
+    private volatile CrawlMetrics metrics;
+
+    /**
+     * Constructs a new instance of {@link PageWaiter} with a timeout of 10 seconds per step, polls from 100 to
+     * 1000 milliseconds doubling each time, and a quiet period of 500 milliseconds
+     */
+    public PageWaiter() {
+
+        this.defaultTimeout = 10000;
+        this.timeouts = new LinkedHashMap<>();
+        this.initialPoll = 100;
+        this.backoff = 2.0;
+        this.maxPoll = 1000;
+        this.quietPeriod = 500;
+    }
+
+    /**
+     * @param defaultTimeout The timeout in milliseconds of the steps without their own timeout
+     * @throws IllegalArgumentException if the timeout is negative
+     */
+    public void setDefaultTimeout(long defaultTimeout) {
+
+        if (defaultTimeout < 0) {
+            throw new IllegalArgumentException("The timeout can not be negative: " + defaultTimeout);
+        }
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    /**
+     * @param step The name of the step
+     * @param timeout The timeout of the step in milliseconds
+     * @throws IllegalArgumentException if the timeout is negative
+     */
+    public synchronized void setTimeout(String step, long timeout) {
+
+        if (timeout < 0) {
+            throw new IllegalArgumentException("The timeout of " + step + " can not be negative: " + timeout);
+        }
+        this.timeouts.put(step, timeout);
+    }
+
+    /**
+     * @param initialPoll The first interval between two polls, in milliseconds
+     * @param backoff The factor applied to the interval after each poll
+     * @param maxPoll The maximum interval between two polls, in milliseconds
+     * @throws IllegalArgumentException if the first interval is not positive, the factor is less than 1 or the
+     * maximum interval is less than the first one
+     */
+    public void setPolling(long initialPoll, double backoff, long maxPoll) {
+
+        if (initialPoll <= 0 || !(backoff >= 1) || maxPoll < initialPoll) {
+            throw new IllegalArgumentException("The polls must start with a positive interval which grows by a factor of at least 1 up to a maximum not less than it");
+        }
+        this.initialPoll = initialPoll;
+        this.backoff = backoff;
+        this.maxPoll = maxPoll;
+    }
+
+    /**
+     * @param quietPeriod The milliseconds without DOM mutations nor network activity to consider a page settled
+     * @throws IllegalArgumentException if the quiet period is negative
+     */
+    public void setQuietPeriod(long quietPeriod) {
+
+        if (quietPeriod < 0) {
+            throw new IllegalArgumentException("The quiet period can not be negative: " + quietPeriod);
+        }
+        this.quietPeriod = quietPeriod;
+    }
+
+    /**
+     * @param metrics The metrics where the time of each wait is recorded, as the timer wait.step, and its timeouts,
+     *                as the counter timeout.step, or null
+     */
+    public void setMetrics(CrawlMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Waits until a condition holds. The condition holds when it returns true or a non-null object other than
+     * false. Exceptions of the browser while the condition is checked are ignored until the timeout.
+     *
+     * @param driver Browser session
+     * @param step The name of the step, used to choose its timeout and to record its time
+     * @param condition The condition to wait for
+     * @return True if the condition holds, false if the timeout of the step has expired
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean until(WebDriver driver, String step, Function<WebDriver, ?> condition) throws InterruptedException {
+
+        long timeout = this.getTimeout(step);
+        long start = System.currentTimeMillis();
+        long nanoStart = System.nanoTime();
+        long poll = this.initialPoll;
+        double backoff = this.backoff;
+        long maxPoll = this.maxPoll;
+        boolean holds;
+
+        while (!(holds = this.check(driver, condition)) && System.currentTimeMillis() - start < timeout) {
+            Thread.sleep(Math.min(poll, Math.max(1, timeout - (System.currentTimeMillis() - start))));
+            poll = Math.min((long) (poll * backoff), maxPoll);
+        }
+
+        CrawlMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.stop("wait." + step, nanoStart);
+            if (!holds) {
+                metrics.increment("timeout." + step);
+            }
+        }
+        if (!holds) {
+            System.err.println("Timeout waiting for " + step + " after " + timeout + " ms");
+        }
+        return holds;
+    }
+
+    /**
+     * Waits until the page has no DOM mutations nor network activity during the quiet period
+     *
+     * @param driver Browser session
+     * @param step The name of the step
+     * @return True if the page has settled, false if the timeout of the step has expired
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean untilSettled(WebDriver driver, String step) throws InterruptedException {
+        return this.until(driver, step, d -> {
+            Object quiet = ((JavascriptExecutor) d).executeScript(QUIET_SCRIPT);
+            return quiet instanceof Number && ((Number) quiet).longValue() >= this.quietPeriod;
+        });
+    }
+
+    /**
+     * Waits until the number of elements of a class is greater than a previous count, or the page has no loading
+     * indicator left
+     *
+     * @param driver Browser session
+     * @param step The name of the step
+     * @param className The class of the elements to count
+     * @param previous The previous number of elements
+     * @return True if the number of elements has grown or there is nothing left to load
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean untilCountGrows(WebDriver driver, String step, String className, int previous) throws InterruptedException {
+        return this.until(driver, step, d -> d.findElements(By.className(className)).size() > previous
+                || d.findElements(By.className("section-loading")).isEmpty());
+    }
+
+    /**
+     * Checks a condition once
+     *
+     * @param driver Browser session
+     * @param condition The condition to check
+     * @return True if the condition holds
+     */
+    private boolean check(WebDriver driver, Function<WebDriver, ?> condition) {
+
+        try {
+            Object value = condition.apply(driver);
+            return value != null && !Boolean.FALSE.equals(value);
+        } catch (WebDriverException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param step The name of the step
+     * @return Returns the timeout of the step in milliseconds
+     */
+    private synchronized long getTimeout(String step) {
+
+        Long timeout = this.timeouts.get(step);
+        return (timeout != null) ? timeout : this.defaultTimeout;
+    }
+}
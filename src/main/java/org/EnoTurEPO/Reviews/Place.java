@@ -0,0 +1,148 @@
+package org.EnoTurEPO.Reviews;
+
+import org.EnoTurEPO.Output.DatasetRecord;
+import org.EnoTurEPO.Output.RecordWriter;
+
+import java.net.URL;
+
+/**
+ * Information of a winery, a row of outputPlacesCSV.csv. The columns are described in columns.txt
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class Place implements DatasetRecord {
+
+    /**
+     * The names of the columns, in the order they are written
+     */
+    public static final String[] COLUMNS = {"winery", "D.O.", "urlGoogleMaps", "longitude", "latitude", "title",
+            "ranking", "numReviews", "address", "schedule", "web", "telephone", "plusCode", "stars5", "stars4",
+            "stars3", "stars2", "stars1", "numPhotos"};
+
+    /**
+     * Winery name indicated in the input CSV
+     */
+    String winery;
+
+    /**
+     * Winery's designation of origin
+     */
+    String origin;
+
+    /**
+     * Google Maps web address where the winery is located
+     */
+    URL urlGoogleMaps;
+
+    /**
+     * Longitude of the winery
+     */
+    double longitude;
+
+    /**
+     * Latitude of the winery
+     */
+    double latitude;
+
+    /**
+     * Name of the winery indicated in Google Maps
+     */
+    String title;
+
+    /**
+     * Average rating of the reviews, UND if there are no reviews
+     */
+    String ranking;
+
+    /**
+     * Number of reviews of the winery
+     */
+    int numReviews;
+
+    /**
+     * Address of the winery
+     */
+    String address;
+
+    /**
+     * Opening hours of the winery
+     */
+    String schedule;
+
+    /**
+     * Web address of the winery
+     */
+    String web;
+
+    /**
+     * Telephone of the winery
+     */
+    String telephone;
+
+    /**
+     * Plus code of the address of the winery
+     */
+    String plusCode;
+
+    /**
+     * Number of reviews with 5 stars, -1 if there are no reviews
+     */
+    int stars5;
+
+    /**
+     * Number of reviews with 4 stars, -1 if there are no reviews
+     */
+    int stars4;
+
+    /**
+     * Number of reviews with 3 stars, -1 if there are no reviews
+     */
+    int stars3;
+
+    /**
+     * Number of reviews with 2 stars, -1 if there are no reviews
+     */
+    int stars2;
+
+    /**
+     * Number of reviews with 1 star, -1 if there are no reviews
+     */
+    int stars1;
+
+    /**
+     * Number of photos of the winery
+     */
+    int numPhotos;
+
+    @Override
+    public void writeTo(RecordWriter writer) {
+
+        int column = 0;
+        writer.writeString(column++, this.winery);
+        writer.writeString(column++, this.origin);
+        writer.writeString(column++, (this.urlGoogleMaps != null) ? this.urlGoogleMaps.toString() : null);
+        writer.writeDouble(column++, this.longitude);
+        writer.writeDouble(column++, this.latitude);
+        writer.writeString(column++, this.title);
+        writer.writeString(column++, this.ranking);
+        writer.writeInt(column++, this.numReviews);
+        writer.writeString(column++, this.address);
+        writer.writeString(column++, this.schedule);
+        writer.writeString(column++, this.web);
+        writer.writeString(column++, this.telephone);
+        writer.writeString(column++, this.plusCode);
+        writer.writeInt(column++, this.stars5);
+        writer.writeInt(column++, this.stars4);
+        writer.writeInt(column++, this.stars3);
+        writer.writeInt(column++, this.stars2);
+        writer.writeInt(column++, this.stars1);
+        writer.writeInt(column, this.numPhotos);
+    }
+
+    @Override
+    public Object[] toRow() {
+        return new Object[]{this.winery, this.origin, this.urlGoogleMaps, this.longitude, this.latitude, this.title,
+                this.ranking, this.numReviews, this.address, this.schedule, this.web, this.telephone, this.plusCode,
+                this.stars5, this.stars4, this.stars3, this.stars2, this.stars1, this.numPhotos};
+    }
+}
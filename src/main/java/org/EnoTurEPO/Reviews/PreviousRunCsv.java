@@ -0,0 +1,80 @@
+package org.EnoTurEPO.Reviews;
+
+import com.opencsv.CSVReader;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Reader of some columns of a CSV written by a previous run, found by their names in its header, so the CSV can have
+ * any other columns in any order
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+class PreviousRunCsv {
+
+    /**
+     * Constructs a new instance of {@link PreviousRunCsv}, which is not used as all its methods are static
+     */
+    private PreviousRunCsv() {
+    }
+
+    /**
+     * Reads the values of some columns of every row of a CSV. The rows which have not all of them are skipped
+     *
+     * @param csvFile Path of the CSV
+     * @param columns The names of the columns read
+     * @param row Receives the values of the columns of each row, in the order of their names
+     * @throws IOException if the file can not be read or it has not all the columns
+     */
+    static void read(String csvFile, String[] columns, Consumer<String[]> row) throws IOException {
+
+        CSVReader csvReader = new CSVReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8), ';', '"');
+        try {
+            String[] header = csvReader.readNext();
+            int[] indexes = new int[columns.length];
+            int last = -1;
+            for (int i = 0; i < columns.length; i++) {
+                indexes[i] = indexOf(header, columns[i]);
+                if (indexes[i] < 0) {
+                    throw new IOException(csvFile + " has not the columns " + String.join(", ", columns));
+                }
+                last = Math.max(last, indexes[i]);
+            }
+
+            String[] fields;
+            while ((fields = csvReader.readNext()) != null) {
+                if (fields.length > last) {
+                    String[] values = new String[indexes.length];
+                    for (int i = 0; i < indexes.length; i++) {
+                        values[i] = fields[indexes[i]];
+                    }
+                    row.accept(values);
+                }
+            }
+        } finally {
+            csvReader.close();
+        }
+    }
+
+    /**
+     * @param header The names of the columns
+     * @param column The name of a column
+     * @return The index of the column, or -1 if it does not exist
+     */
+    private static int indexOf(String[] header, String column) {
+
+        if (header == null) {
+            return -1;
+        }
+        for (int i = 0; i < header.length; i++) {
+            if (header[i].trim().equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,196 @@
+package org.EnoTurEPO.Reviews;
+
+import org.EnoTurEPO.Output.DatasetRecord;
+import org.EnoTurEPO.Output.RecordWriter;
+
+/**
+ * A review of a winery and the answer of its owner, a row of outputReviewsCSV.csv. The columns are described in
+ * columns.txt. The fields are filled while the review is parsed and then enriched, in place.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class Review implements DatasetRecord {
+
+    /**
+     * The names of the columns, in the order they are written
+     */
+    public static final String[] COLUMNS = {"title", "author", "isLocalGuide", "numReviewsAuthor", "rankingReview",
+            "dateExtractData", "dateReview", "textReviewOriginal", "textReview", "emojisTextReview",
+            "emojisPolarityReview", "emoticonsTextReview", "emoticonsPolarityReview", "langTextReview",
+            "langReliabilityTextReview", "numPhotoReview", "likesReview", "dateAnswer", "textAnswerOriginal",
+            "textAnswer", "emojisTextAnswer", "emojisPolarityAnswer", "emoticonsTextAnswer", "emoticonsPolarityAnswer",
+            "langTextAnswer", "langReliabilityTextAnswer"};
+
+    /**
+     * Name of the winery indicated in Google Maps
+     */
+    String title;
+
+    /**
+     * User name of the author
+     */
+    String author;
+
+    /**
+     * True if the author is a Local Guide
+     */
+    boolean isLocalGuide;
+
+    /**
+     * Number of reviews written by the author
+     */
+    int numReviewsAuthor;
+
+    /**
+     * Rating given by the author
+     */
+    String rankingReview;
+
+    /**
+     * Date in which the review is read
+     */
+    String dateExtractData;
+
+    /**
+     * Date in which the review was written, relative to the day it is read
+     */
+    String dateReview;
+
+    /**
+     * Original text of the review
+     */
+    String textReviewOriginal;
+
+    /**
+     * Text of the review translated by Google, with its emojis and emoticons replaced
+     */
+    String textReview;
+
+    /**
+     * Emojis found in the translated text of the review
+     */
+    String emojisTextReview = "";
+
+    /**
+     * Polarity of the emojis of the review
+     */
+    double emojisPolarityReview = 0.0;
+
+    /**
+     * Emoticons found in the translated text of the review
+     */
+    String emoticonsTextReview = "";
+
+    /**
+     * Polarity of the emoticons of the review
+     */
+    double emoticonsPolarityReview = 0.0;
+
+    /**
+     * Language of the original text of the review
+     */
+    String langTextReview = "UND";
+
+    /**
+     * Probability of the language of the review
+     */
+    double langReliabilityTextReview = -1.0;
+
+    /**
+     * Number of photos of the review
+     */
+    int numPhotoReview;
+
+    /**
+     * Number of likes of the review
+     */
+    int likesReview;
+
+    /**
+     * Date in which the owner answered the review
+     */
+    String dateAnswer;
+
+    /**
+     * Original text of the answer of the owner
+     */
+    String textAnswerOriginal;
+
+    /**
+     * Text of the answer translated by Google, with its emojis and emoticons replaced
+     */
+    String textAnswer;
+
+    /**
+     * Emojis found in the translated text of the answer
+     */
+    String emojisTextAnswer = "";
+
+    /**
+     * Polarity of the emojis of the answer
+     */
+    double emojisPolarityAnswer = 0.0;
+
+    /**
+     * Emoticons found in the translated text of the answer
+     */
+    String emoticonsTextAnswer = "";
+
+    /**
+     * Polarity of the emoticons of the answer
+     */
+    double emoticonsPolarityAnswer = 0.0;
+
+    /**
+     * Language of the original text of the answer
+     */
+    String langTextAnswer = "UND";
+
+    /**
+     * Probability of the language of the answer
+     */
+    double langReliabilityTextAnswer = -1.0;
+
+    @Override
+    public void writeTo(RecordWriter writer) {
+
+        int column = 0;
+        writer.writeString(column++, this.title);
+        writer.writeString(column++, this.author);
+        writer.writeInt(column++, this.isLocalGuide ? 1 : 0);
+        writer.writeInt(column++, this.numReviewsAuthor);
+        writer.writeString(column++, this.rankingReview);
+        writer.writeString(column++, this.dateExtractData);
+        writer.writeString(column++, this.dateReview);
+        writer.writeString(column++, this.textReviewOriginal);
+        writer.writeString(column++, this.textReview);
+        writer.writeString(column++, this.emojisTextReview);
+        writer.writeDouble(column++, this.emojisPolarityReview);
+        writer.writeString(column++, this.emoticonsTextReview);
+        writer.writeDouble(column++, this.emoticonsPolarityReview);
+        writer.writeString(column++, this.langTextReview);
+        writer.writeDouble(column++, this.langReliabilityTextReview);
+        writer.writeInt(column++, this.numPhotoReview);
+        writer.writeInt(column++, this.likesReview);
+        writer.writeString(column++, this.dateAnswer);
+        writer.writeString(column++, this.textAnswerOriginal);
+        writer.writeString(column++, this.textAnswer);
+        writer.writeString(column++, this.emojisTextAnswer);
+        writer.writeDouble(column++, this.emojisPolarityAnswer);
+        writer.writeString(column++, this.emoticonsTextAnswer);
+        writer.writeDouble(column++, this.emoticonsPolarityAnswer);
+        writer.writeString(column++, this.langTextAnswer);
+        writer.writeDouble(column, this.langReliabilityTextAnswer);
+    }
+
+    @Override
+    public Object[] toRow() {
+        return new Object[]{this.title, this.author, this.isLocalGuide ? 1 : 0, this.numReviewsAuthor,
+                this.rankingReview, this.dateExtractData, this.dateReview, this.textReviewOriginal, this.textReview,
+                this.emojisTextReview, this.emojisPolarityReview, this.emoticonsTextReview,
+                this.emoticonsPolarityReview, this.langTextReview, this.langReliabilityTextReview,
+                this.numPhotoReview, this.likesReview, this.dateAnswer, this.textAnswerOriginal, this.textAnswer,
+                this.emojisTextAnswer, this.emojisPolarityAnswer, this.emoticonsTextAnswer,
+                this.emoticonsPolarityAnswer, this.langTextAnswer, this.langReliabilityTextAnswer};
+    }
+}
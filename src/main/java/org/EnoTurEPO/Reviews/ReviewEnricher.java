@@ -0,0 +1,214 @@
+package org.EnoTurEPO.Reviews;
+
+import org.EnoTurEPO.util.CrawlMetrics;
+import org.EnoTurEPO.util.LanguageIdentifier;
+import org.EnoTurEPO.util.LexiconFile;
+import org.EnoTurEPO.util.LexiconMatcher;
+import org.EnoTurEPO.util.Trio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Enricher of the reviews: it identifies the language of their texts and replaces their emojis and emoticons by
+ * their textual representation, calculating their polarity. It is shared by the crawl and by the reprocessing of
+ * the reviews already saved, and it can be used from several threads at the same time.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class ReviewEnricher {
+
+    /**
+     * Logger of the fields of each review, at debug level
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReviewEnricher.class);
+
+    /**
+     * Name of the emojis dictionary in its folder, without extension
+     */
+    private static final String EMOJIS_LEXICON = "emojisID.es";
+
+    /**
+     * Name of the emoticons dictionary in its folder, without extension
+     */
+    private static final String EMOTICONS_LEXICON = "emoticonsID.es";
+
+    /**
+     * The service which identifies the language of the reviews and the answers
+     */
+    private volatile LanguageIdentifier languageIdentifier;
+
+    /**
+     * The folder name where emoticons file is located
+     */
+    private final String emoticonsFolder;
+
+    /**
+     * The folder name where emojis file is located
+     */
+    private final String emojisFolder;
+
+    /**
+     * Counters and times of the stages of the enrichment
+     */
+    private final CrawlMetrics metrics;
+
+    /**
+     * A matcher built from the emoji dictionary
+     */
+    private volatile LexiconMatcher emojiDictionary;
+
+    /**
+     * A matcher built from the emoticon dictionary
+     */
+    private volatile LexiconMatcher emoticonDictionary;
+
+    /**
+     * Constructs a new instance of {@link ReviewEnricher}, loading both dictionaries
+     *
+     * @param emoticonsFolder Path of the folder where the emoticon files containing <emoticon,<polarity, synsetID>> are located
+     * @param emojisFolder Path of the folder where the emoji files containing <emoji,<polarity, synsetID>> are located
+     * @param metrics The metrics where the time of each stage is recorded
+     * @throws FileNotFoundException if the files do not exist
+     */
+    public ReviewEnricher(String emoticonsFolder, String emojisFolder, CrawlMetrics metrics) throws FileNotFoundException {
+
+        this.languageIdentifier = LanguageIdentifier.getInstance();
+        this.emoticonsFolder = emoticonsFolder;
+        this.emojisFolder = emojisFolder;
+        this.metrics = metrics;
+
+        this.loadEmojiDictionary();
+        this.loadEmoticonDictionary();
+    }
+
+    /**
+     * Sets the service which identifies the language of the reviews and the answers, for example to restrict it to
+     * some candidate languages. By default it is the one shared by the JVM with all the built-in languages.
+     *
+     * @param languageIdentifier The language identification service
+     */
+    public void setLanguageIdentifier(LanguageIdentifier languageIdentifier) {
+        this.languageIdentifier = languageIdentifier;
+    }
+
+    /**
+     * Loads the emojis dictionary to a {@link LexiconMatcher}, from its compiled file if it is up to date or from
+     * its .json file. The matcher is shared with the enrichers which load the same file
+     *
+     * @throws FileNotFoundException if the emoji file does not exist
+     */
+    public void loadEmojiDictionary() throws FileNotFoundException {
+        this.emojiDictionary = LexiconFile.load(this.emojisFolder + EMOJIS_LEXICON, false);
+    }
+
+    /**
+     * Loads the emoticons dictionary to a {@link LexiconMatcher}, from its compiled file if it is up to date or from
+     * its .json file. The matcher is shared with the enrichers which load the same file
+     *
+     * @throws FileNotFoundException if the emoticon file does not exist
+     */
+    public void loadEmoticonDictionary() throws FileNotFoundException {
+        this.emoticonDictionary = LexiconFile.load(this.emoticonsFolder + EMOTICONS_LEXICON, true);
+    }
+
+    /**
+     * Compiles the emoji and emoticon dictionaries from their .json files, next to them
+     *
+     * @param emoticonsFolder Path of the folder where the emoticon files are located
+     * @param emojisFolder Path of the folder where the emoji files are located
+     * @throws IOException if a dictionary can not be read or compiled
+     */
+    public static void compileLexicons(String emoticonsFolder, String emojisFolder) throws IOException {
+
+        int numEmojis = LexiconFile.compile(emojisFolder + EMOJIS_LEXICON, false);
+        System.out.println("Compiled " + numEmojis + " emojis to " + emojisFolder + EMOJIS_LEXICON + LexiconFile.COMPILED_EXTENSION);
+        int numEmoticons = LexiconFile.compile(emoticonsFolder + EMOTICONS_LEXICON, true);
+        System.out.println("Compiled " + numEmoticons + " emoticons to " + emoticonsFolder + EMOTICONS_LEXICON + LexiconFile.COMPILED_EXTENSION);
+    }
+
+    /**
+     * Detects the language of the texts of a review and manages their emojis and emoticons. This is the CPU bound
+     * part of a review.
+     *
+     * @param review The review, whose original texts and translated texts with their emojis are set. It is enriched
+     *               in place
+     * @return The review
+     */
+    public Review enrich(Review review) {
+
+        long start = this.metrics.start();
+        LanguageIdentifier.Result langReview = this.languageIdentifier.detect(review.textReviewOriginal);
+        review.langTextReview = langReview.getLanguage();
+        review.langReliabilityTextReview = langReview.getReliability();
+
+        LOGGER.debug("LangTextReview: {}", review.langTextReview);
+        LOGGER.debug("LangReliabilityTextReview: {}", review.langReliabilityTextReview);
+
+        LanguageIdentifier.Result langAnswer = this.languageIdentifier.detect(review.textAnswerOriginal);
+        review.langTextAnswer = langAnswer.getLanguage();
+        review.langReliabilityTextAnswer = langAnswer.getReliability();
+
+        LOGGER.debug("LangTextAnswer: {}", review.langTextAnswer);
+        LOGGER.debug("LangReliabilityTextAnswer: {}", review.langReliabilityTextAnswer);
+        this.metrics.stop("detectLanguage", start);
+
+        start = this.metrics.start();
+        Trio<String, String, Double> outputEmojisReview = this.manageEmojis(review.textReview);
+        review.emojisTextReview = outputEmojisReview.getObj2();
+        review.emojisPolarityReview = outputEmojisReview.getObj3();
+        this.metrics.stop("emojis", start);
+
+        start = this.metrics.start();
+        Trio<String, String, Double> outputEmoticonsReview = this.manageEmoticons(outputEmojisReview.getObj1());
+        review.textReview = outputEmoticonsReview.getObj1();
+        review.emoticonsTextReview = outputEmoticonsReview.getObj2();
+        review.emoticonsPolarityReview = outputEmoticonsReview.getObj3();
+        this.metrics.stop("emoticons", start);
+
+        start = this.metrics.start();
+        Trio<String, String, Double> outputEmojisAnswer = this.manageEmojis(review.textAnswer);
+        review.emojisTextAnswer = outputEmojisAnswer.getObj2();
+        review.emojisPolarityAnswer = outputEmojisAnswer.getObj3();
+        this.metrics.stop("emojis", start);
+
+        start = this.metrics.start();
+        Trio<String, String, Double> outputEmoticonsAnswer = this.manageEmoticons(outputEmojisAnswer.getObj1());
+        review.textAnswer = outputEmoticonsAnswer.getObj1();
+        review.emoticonsTextAnswer = outputEmoticonsAnswer.getObj2();
+        review.emoticonsPolarityAnswer = outputEmoticonsAnswer.getObj3();
+        this.metrics.stop("emoticons", start);
+
+        return review;
+    }
+
+    /**
+     * @param word A word of a text
+     * @return True if the word is the textual representation of an emoji or an emoticon
+     */
+    public boolean isTextualRepresentation(String word) {
+        return this.emojiDictionary.hasSynsetID(word) || this.emoticonDictionary.hasSynsetID(word);
+    }
+
+    /**
+     * Detects and replaces the emojis found by their textual representation and calculates their polarity
+     *
+     * @param text Text to be processed
+     * @return Trio structure with the text modified, the emojis found and the polarity calculated
+     */
+    public Trio<String, String, Double> manageEmojis(String text) {
+        return this.emojiDictionary.replace(text);
+    }
+
+    /**
+     * Detects and replaces the emoticons found by their textual representation and calculates their polarity
+     *
+     * @param text Text to be processed
+     * @return Trio structure with the text modified, the emoticons found and the polarity calculated
+     */
+    public Trio<String, String, Double> manageEmoticons(String text) {
+        return this.emoticonDictionary.replace(text);
+    }
+}
@@ -0,0 +1,168 @@
+package org.EnoTurEPO.Reviews;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+
+/**
+ * Pipeline between the thread which scrapes the reviews of a winery and the writer of the rows. Each review is
+ * parsed and enriched in a shared pool of workers, and it is written by a dedicated thread in the order the
+ * reviews were submitted. The number of reviews in flight is bounded, so the scraping thread waits when the
+ * workers or the writer fall behind.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class ReviewPipeline {
+
+    /**
+     * Marks the end of the reviews in the queue of the writer
+     */
+    private static final Future<Review> END = new FutureTask<>(() -> null);
+
+    /**
+     * Maximum time in milliseconds to wait for the writer when the pipeline is aborted
+     */
+    private static final long ABORT_TIMEOUT = 10000;
+
+    /**
+     * The pool of workers which parse and enrich the reviews
+     */
+    private final ExecutorService workers;
+
+    /**
+     * The reviews in flight, in the order they were submitted
+     */
+    private final BlockingQueue<Future<Review>> pending;
+
+    /**
+     * The thread which writes the rows
+     */
+    private final Thread writer;
+
+    /**
+     * The first failure of a review, if any
+     */
+    private volatile Throwable failure;
+
+    /**
+     * True if the pipeline has been aborted
+     */
+    private volatile boolean aborted;
+
+    /**
+     * Constructs a new instance of {@link ReviewPipeline} and starts its writer
+     *
+     * @param workers The pool of workers which parse and enrich the reviews
+     * @param capacity Maximum number of reviews in flight
+     * @param sink The writer of the reviews
+     */
+    public ReviewPipeline(ExecutorService workers, int capacity, Consumer<Review> sink) {
+
+        this.workers = workers;
+        this.pending = new ArrayBlockingQueue<>(capacity);
+        this.failure = null;
+        this.aborted = false;
+
+        this.writer = new Thread(() -> this.write(sink), "review-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Submits a review to the workers. Blocks while the pipeline is full.
+     *
+     * @param task The task which parses and enriches the review and returns it
+     * @throws InterruptedException if the thread is interrupted while the pipeline is full
+     * @throws IllegalStateException if a previous review has failed
+     */
+    public void submit(Callable<Review> task) throws InterruptedException {
+
+        this.checkFailure();
+        this.pending.put(this.workers.submit(task));
+    }
+
+    /**
+     * Waits until all the reviews submitted have been written
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws IllegalStateException if a review has failed
+     */
+    public void finish() throws InterruptedException {
+
+        this.pending.put(END);
+        this.writer.join();
+        this.checkFailure();
+    }
+
+    /**
+     * Discards the reviews in flight and stops the writer, waiting at most {@link #ABORT_TIMEOUT} milliseconds for
+     * the review it is writing, so the rows of the winery are not written while its failure is handled. The writer
+     * is interrupted if it does not stop in time
+     */
+    public void abort() {
+
+        this.aborted = true;
+        Future<Review> review;
+        while ((review = this.pending.poll()) != null) {
+            review.cancel(false);
+        }
+        this.pending.offer(END);
+
+        try {
+            this.writer.join(ABORT_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.writer.isAlive()) {
+            System.err.println("The writer of the reviews has not stopped in " + ABORT_TIMEOUT + " ms. Interrupting it...");
+            this.writer.interrupt();
+        }
+    }
+
+    /**
+     * Writes the rows in order until the end of the reviews. After a failure the remaining rows are discarded,
+     * as the reviews after a failed one were never written.
+     *
+     * @param sink The writer of the reviews
+     */
+    private void write(Consumer<Review> sink) {
+
+        while (true) {
+            Future<Review> review;
+            try {
+                review = this.pending.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (review == END) {
+                return;
+            }
+            if (this.failure != null || this.aborted) {
+                review.cancel(false);
+                continue;
+            }
+            try {
+                sink.accept(review.get());
+            } catch (ExecutionException e) {
+                this.failure = e.getCause();
+            } catch (RuntimeException | InterruptedException e) {
+                this.failure = e;
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if a review has failed
+     */
+    private void checkFailure() {
+
+        if (this.failure != null) {
+            throw new IllegalStateException("A review could not be processed: " + this.failure.getMessage(), this.failure);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package org.EnoTurEPO.Reviews;
+
+import com.opencsv.CSVReader;
+import org.EnoTurEPO.Output.DatasetSink;
+import org.EnoTurEPO.util.LanguageIdentifier;
+import org.EnoTurEPO.util.Trio;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Enriches again the reviews of an existing outputReviewsCSV.csv, without reading Google Maps, for example when
+ * the emoji or emoticon dictionaries change. The reviews are read in chunks which are enriched in parallel, and
+ * written in the same order they are read.
+ * <p>
+ * The text of a review with its emojis is its original text, unless it was translated by Google. A review is
+ * considered translated when its original language is neither Spanish nor undefined and the letters and digits of
+ * its text differ from those of its original text, both without the textual representations of their emojis and
+ * emoticons, so that the replacements of an untranslated text do not make it look translated. The translated text
+ * with its emojis is not saved, so the text of a translated review keeps the replacements of the previous
+ * dictionaries, and its emojis and emoticons are found in its original text, as Google keeps them when it
+ * translates. The answers are enriched in the same way.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class ReviewReprocessor {
+
+    /**
+     * Default number of reviews of each chunk
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /**
+     * Language of the reviews which are not translated
+     */
+    private static final String UNTRANSLATED_LANGUAGE = "ES";
+
+    /**
+     * Separator of the words of a text
+     */
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+
+    /**
+     * The enricher of the reviews
+     */
+    private final ReviewEnricher enricher;
+
+    /**
+     * Number of threads which enrich the chunks
+     */
+    private final int numThreads;
+
+    /**
+     * Number of reviews of each chunk
+     */
+    private final int chunkSize;
+
+    /**
+     * Constructs a new instance of {@link ReviewReprocessor}
+     *
+     * @param enricher The enricher of the reviews, with the current dictionaries
+     * @param numThreads Number of threads which enrich the chunks
+     * @param chunkSize Number of reviews of each chunk
+     */
+    public ReviewReprocessor(ReviewEnricher enricher, int numThreads, int chunkSize) {
+
+        if (numThreads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("The number of threads and the size of the chunks must be positive");
+        }
+        this.enricher = enricher;
+        this.numThreads = numThreads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Enriches again all the reviews of a CSV of reviews. At most two chunks per thread are kept in memory
+     *
+     * @param csvFile The CSV of reviews
+     * @param output The sink where the reviews enriched are written, whose columns are initialized
+     * @return Number of reviews written
+     * @throws IOException if the CSV can not be read or it has not the columns of the reviews
+     * @throws InterruptedException if the thread is interrupted while the chunks are enriched
+     */
+    public long run(String csvFile, DatasetSink output) throws IOException, InterruptedException {
+
+        Object[] defaultValues = new Object[Review.COLUMNS.length];
+        Arrays.fill(defaultValues, 0);
+        output.addColumns(Review.COLUMNS, defaultValues);
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.numThreads, r -> {
+            Thread thread = new Thread(r, "review-reprocessor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<List<Review>>> chunks = new ArrayDeque<>();
+        long numWritten = 0;
+        long numSkipped = 0;
+        CSVReader csvReader = new CSVReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8), ';', '"');
+        try {
+            int[] columns = columns(csvReader.readNext(), csvFile);
+            int numColumns = Arrays.stream(columns).max().getAsInt() + 1;
+
+            List<String[]> rows = new ArrayList<>(this.chunkSize);
+            String[] row;
+            while ((row = csvReader.readNext()) != null) {
+                if (row.length < numColumns) {
+                    numSkipped++;
+                    continue;
+                }
+                rows.add(row);
+                if (rows.size() == this.chunkSize) {
+                    chunks.add(this.submit(executor, rows, columns));
+                    rows = new ArrayList<>(this.chunkSize);
+                    if (chunks.size() >= 2 * this.numThreads) {
+                        numWritten += write(chunks.poll(), output);
+                    }
+                }
+            }
+            if (!rows.isEmpty()) {
+                chunks.add(this.submit(executor, rows, columns));
+            }
+            while (!chunks.isEmpty()) {
+                numWritten += write(chunks.poll(), output);
+            }
+        } finally {
+            csvReader.close();
+            executor.shutdownNow();
+        }
+
+        if (numSkipped > 0) {
+            System.err.println(numSkipped + " rows of " + csvFile + " have not all the columns and were skipped");
+        }
+        return numWritten;
+    }
+
+    /**
+     * @param executor The threads which enrich the chunks
+     * @param rows The rows of the chunk
+     * @param columns The index of each column of the reviews in the rows
+     * @return The reviews of the chunk enriched, when they are ready
+     */
+    private Future<List<Review>> submit(ExecutorService executor, List<String[]> rows, int[] columns) {
+        return executor.submit(() -> {
+            List<Review> reviews = new ArrayList<>(rows.size());
+            for (String[] row : rows) {
+                reviews.add(this.reprocess(toReview(row, columns)));
+            }
+            return reviews;
+        });
+    }
+
+    /**
+     * Writes the reviews of a chunk, waiting until they are enriched
+     *
+     * @param chunk The chunk
+     * @param output The sink of the reviews
+     * @return Number of reviews written
+     * @throws IOException if the chunk could not be enriched
+     * @throws InterruptedException if the thread is interrupted while waiting for the chunk
+     */
+    private static int write(Future<List<Review>> chunk, DatasetSink output) throws IOException, InterruptedException {
+
+        List<Review> reviews;
+        try {
+            reviews = chunk.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("A chunk of reviews could not be enriched", e.getCause());
+        }
+        for (Review review : reviews) {
+            output.addRecord(review);
+        }
+        return reviews.size();
+    }
+
+    /**
+     * Enriches again a review read from the CSV
+     *
+     * @param review The review, with the values of the CSV
+     * @return The review enriched
+     */
+    private Review reprocess(Review review) {
+
+        boolean reviewTranslated = this.isTranslated(review.textReview, review.textReviewOriginal, review.langTextReview);
+        boolean answerTranslated = this.isTranslated(review.textAnswer, review.textAnswerOriginal, review.langTextAnswer);
+        if (!reviewTranslated) {
+            review.textReview = review.textReviewOriginal;
+        }
+        if (!answerTranslated) {
+            review.textAnswer = review.textAnswerOriginal;
+        }
+
+        this.enricher.enrich(review);
+
+        if (reviewTranslated) {
+            Trio<String, String, Double> emojis = this.enricher.manageEmojis(review.textReviewOriginal);
+            Trio<String, String, Double> emoticons = this.enricher.manageEmoticons(emojis.getObj1());
+            review.emojisTextReview = emojis.getObj2();
+            review.emojisPolarityReview = emojis.getObj3();
+            review.emoticonsTextReview = emoticons.getObj2();
+            review.emoticonsPolarityReview = emoticons.getObj3();
+        }
+        if (answerTranslated) {
+            Trio<String, String, Double> emojis = this.enricher.manageEmojis(review.textAnswerOriginal);
+            Trio<String, String, Double> emoticons = this.enricher.manageEmoticons(emojis.getObj1());
+            review.emojisTextAnswer = emojis.getObj2();
+            review.emojisPolarityAnswer = emojis.getObj3();
+            review.emoticonsTextAnswer = emoticons.getObj2();
+            review.emoticonsPolarityAnswer = emoticons.getObj3();
+        }
+        return review;
+    }
+
+    /**
+     * @param text The text saved, with the emojis and emoticons replaced
+     * @param original The original text
+     * @param language The language of the original text saved
+     * @return True if the text was translated by Google
+     */
+    boolean isTranslated(String text, String original, String language) {
+
+        if (UNTRANSLATED_LANGUAGE.equals(language) || LanguageIdentifier.UNDEFINED.equals(language)) {
+            return false;
+        }
+        Trio<String, String, Double> emojis = this.enricher.manageEmojis(original);
+        Trio<String, String, Double> emoticons = this.enricher.manageEmoticons(emojis.getObj1());
+        return !this.words(text).equals(this.words(emoticons.getObj1()));
+    }
+
+    /**
+     * @param text A text with the emojis and emoticons replaced
+     * @return The letters and digits of the text, without the textual representations of the emojis and emoticons
+     */
+    private String words(String text) {
+
+        StringBuilder words = new StringBuilder(text.length());
+        for (String word : WHITESPACES.split(text)) {
+            if (this.enricher.isTextualRepresentation(word)) {
+                continue;
+            }
+            for (int i = 0; i < word.length(); i++) {
+                if (Character.isLetterOrDigit(word.charAt(i))) {
+                    words.append(word.charAt(i));
+                }
+            }
+        }
+        return words.toString();
+    }
+
+    /**
+     * @param header The header of the CSV
+     * @param csvFile The CSV of reviews
+     * @return The index of each column of the reviews in the header
+     * @throws IOException if any column of the reviews is not in the header
+     */
+    private static int[] columns(String[] header, String csvFile) throws IOException {
+
+        if (header == null) {
+            throw new IOException(csvFile + " is empty");
+        }
+        int[] columns = new int[Review.COLUMNS.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Arrays.asList(header).indexOf(Review.COLUMNS[i]);
+            if (columns[i] < 0) {
+                throw new IOException(csvFile + " has not the column " + Review.COLUMNS[i]);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * @param row A row of the CSV
+     * @param columns The index of each column of the reviews in the row
+     * @return The review of the row
+     */
+    private static Review toReview(String[] row, int[] columns) {
+
+        int column = 0;
+        Review review = new Review();
+        review.title = row[columns[column++]];
+        review.author = row[columns[column++]];
+        review.isLocalGuide = parseInt(row[columns[column++]]) == 1;
+        review.numReviewsAuthor = parseInt(row[columns[column++]]);
+        review.rankingReview = row[columns[column++]];
+        review.dateExtractData = row[columns[column++]];
+        review.dateReview = row[columns[column++]];
+        review.textReviewOriginal = row[columns[column++]];
+        review.textReview = row[columns[column++]];
+        review.emojisTextReview = row[columns[column++]];
+        review.emojisPolarityReview = parseDouble(row[columns[column++]]);
+        review.emoticonsTextReview = row[columns[column++]];
+        review.emoticonsPolarityReview = parseDouble(row[columns[column++]]);
+        review.langTextReview = row[columns[column++]];
+        review.langReliabilityTextReview = parseDouble(row[columns[column++]]);
+        review.numPhotoReview = parseInt(row[columns[column++]]);
+        review.likesReview = parseInt(row[columns[column++]]);
+        review.dateAnswer = row[columns[column++]];
+        review.textAnswerOriginal = row[columns[column++]];
+        review.textAnswer = row[columns[column++]];
+        review.emojisTextAnswer = row[columns[column++]];
+        review.emojisPolarityAnswer = parseDouble(row[columns[column++]]);
+        review.emoticonsTextAnswer = row[columns[column++]];
+        review.emoticonsPolarityAnswer = parseDouble(row[columns[column++]]);
+        review.langTextAnswer = row[columns[column++]];
+        review.langReliabilityTextAnswer = parseDouble(row[columns[column]]);
+        return review;
+    }
+
+    /**
+     * @param value An integer of the CSV
+     * @return The integer, 0 if it is empty or not a number
+     */
+    private static int parseInt(String value) {
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param value A decimal number of the CSV
+     * @return The number, 0 if it is empty or not a number
+     */
+    private static double parseDouble(String value) {
+
+        try {
+            return Double.parseDouble(value.trim().replace(',', '.'));
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package org.EnoTurEPO.Reviews;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reader of the snapshot of a winery written by {@link SnapshotWriter}. The reviews are read one by one, so the
+ * snapshot of a winery with thousands of reviews is never loaded at once.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class SnapshotReader implements Closeable {
+
+    /**
+     * The input of the snapshot
+     */
+    private final DataInputStream in;
+
+    /**
+     * Winery name
+     */
+    private final String name;
+
+    /**
+     * Winery's designation of origin
+     */
+    private final String origin;
+
+    /**
+     * Google Maps web address where the winery is located
+     */
+    private final URL url;
+
+    /**
+     * Date in which the winery was read
+     */
+    private final String dateExtractData;
+
+    /**
+     * The page of the winery
+     */
+    private String placePage;
+
+    /**
+     * The index of the last photo of the gallery, or null if the gallery was not read
+     */
+    private String lastPhoto;
+
+    /**
+     * The first review, read while looking for the entries of the winery
+     */
+    private String nextReview;
+
+    /**
+     * True if the end of the entries has been read
+     */
+    private boolean finished;
+
+    /**
+     * Constructs a new instance of {@link SnapshotReader}, reading the entries of the winery
+     *
+     * @param file The file of the snapshot
+     * @throws IOException if the snapshot can not be read
+     */
+    SnapshotReader(File file) throws IOException {
+
+        this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+        try {
+            if (this.in.readInt() != SnapshotWriter.MAGIC) {
+                throw new IOException(file + " is not a snapshot");
+            }
+            int version = this.in.readInt();
+            if (version != SnapshotWriter.VERSION) {
+                throw new IOException("The version " + version + " of " + file + " is not supported");
+            }
+            this.name = readString(this.in);
+            this.origin = readString(this.in);
+            this.url = new URL(readString(this.in));
+            this.dateExtractData = readString(this.in);
+
+            this.finished = false;
+            while (!this.finished && this.nextReview == null) {
+                this.readEntry();
+            }
+            if (this.placePage == null) {
+                throw new IOException(file + " has not the page of the winery");
+            }
+        } catch (IOException e) {
+            this.in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Returns the winery name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return Returns the winery's designation of origin
+     */
+    public String getOrigin() {
+        return this.origin;
+    }
+
+    /**
+     * @return Returns the Google Maps web address where the winery is located
+     */
+    public URL getUrl() {
+        return this.url;
+    }
+
+    /**
+     * @return Returns the date in which the winery was read
+     */
+    public String getDateExtractData() {
+        return this.dateExtractData;
+    }
+
+    /**
+     * @return Returns the page of the winery
+     */
+    public String getPlacePage() {
+        return this.placePage;
+    }
+
+    /**
+     * @return Returns the index of the last photo of the gallery, or null if the gallery was not read
+     */
+    public String getLastPhoto() {
+        return this.lastPhoto;
+    }
+
+    /**
+     * Reads the next review
+     *
+     * @return The HTML of the review, or null if there are no more reviews
+     * @throws IOException if the snapshot can not be read
+     */
+    public String nextReview() throws IOException {
+
+        while (!this.finished && this.nextReview == null) {
+            this.readEntry();
+        }
+        String review = this.nextReview;
+        this.nextReview = null;
+        return review;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    /**
+     * Reads an entry of the snapshot
+     *
+     * @throws IOException if the snapshot can not be read or the entry is not known
+     */
+    private void readEntry() throws IOException {
+
+        byte type = this.in.readByte();
+        switch (type) {
+            case SnapshotWriter.END:
+                this.finished = true;
+                break;
+            case SnapshotWriter.PLACE_PAGE:
+                this.placePage = readString(this.in);
+                break;
+            case SnapshotWriter.LAST_PHOTO:
+                this.lastPhoto = readString(this.in);
+                break;
+            case SnapshotWriter.REVIEW:
+                this.nextReview = readString(this.in);
+                break;
+            default:
+                throw new IOException("Unknown entry of snapshot " + type);
+        }
+    }
+
+    /**
+     * Reads a string written as its length in bytes followed by its UTF-8 bytes
+     *
+     * @param in The input
+     * @return The string read
+     * @throws IOException if the string can not be read
+     */
+    private static String readString(DataInputStream in) throws IOException {
+
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
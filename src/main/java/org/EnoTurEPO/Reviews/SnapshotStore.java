@@ -0,0 +1,86 @@
+package org.EnoTurEPO.Reviews;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Local store of the raw pages read from Google Maps, to run the extraction and the enrichment again without a
+ * browser. The snapshot of each winery is a file of the folder of the store, compressed with GZIP, with the page
+ * of the winery, the index of the last photo of its gallery and the HTML of each of its reviews, in the order
+ * they were read. A snapshot is only kept when the winery has been read completely.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class SnapshotStore {
+
+    /**
+     * Extension of the snapshots
+     */
+    static final String EXTENSION = ".snap.gz";
+
+    /**
+     * The folder of the snapshots
+     */
+    private final File folder;
+
+    /**
+     * Constructs a new instance of {@link SnapshotStore}
+     *
+     * @param folder The folder of the snapshots, which is created if it does not exist
+     * @throws IOException if the folder can not be created
+     */
+    public SnapshotStore(String folder) throws IOException {
+
+        this.folder = new File(folder);
+        if (!this.folder.isDirectory() && !this.folder.mkdirs()) {
+            throw new IOException("The folder of the snapshots " + folder + " could not be created");
+        }
+    }
+
+    /**
+     * Starts the snapshot of a winery. It replaces the previous snapshot of the winery when it is committed
+     *
+     * @param name Winery name
+     * @param origin Winery's designation of origin
+     * @param url Google Maps web address where the winery is located
+     * @param dateExtractData Date in which the winery is read
+     * @return The writer of the snapshot
+     * @throws IOException if the snapshot can not be created
+     */
+    public SnapshotWriter create(String name, String origin, URL url, String dateExtractData) throws IOException {
+        return new SnapshotWriter(this.file(name, url), name, origin, url, dateExtractData);
+    }
+
+    /**
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @return True if there is a snapshot of the winery
+     */
+    public boolean exists(String name, URL url) {
+        return this.file(name, url).isFile();
+    }
+
+    /**
+     * Opens the snapshot of a winery
+     *
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @return The reader of the snapshot
+     * @throws IOException if the snapshot does not exist or it can not be read
+     */
+    public SnapshotReader open(String name, URL url) throws IOException {
+        return new SnapshotReader(this.file(name, url));
+    }
+
+    /**
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @return The file of the snapshot of the winery, named after the winery and a hash of its url
+     */
+    private File file(String name, URL url) {
+
+        String fileName = name.replaceAll("[^A-Za-z0-9_-]+", "_") + "-" + Integer.toHexString(url.toString().hashCode());
+        return new File(this.folder, fileName + EXTENSION);
+    }
+}
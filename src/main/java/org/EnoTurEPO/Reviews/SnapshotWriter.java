@@ -0,0 +1,205 @@
+package org.EnoTurEPO.Reviews;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writer of the snapshot of a winery in a {@link SnapshotStore}. The pages are written to a temporary file while
+ * the winery is read, which replaces the snapshot of the winery when it is committed. A snapshot marked as
+ * incomplete, as the one of a delta crawl which stops at the first known review, can not be committed, so it
+ * never replaces a complete one. The layout of the file,
+ * compressed with GZIP, is:
+ * <pre>
+ * int magic ("ENOS"), int version, string name, string D.O., string url, string date of extraction
+ * entries: byte type (1 page of the winery, 2 index of the last photo, 3 review, 0 end), string content
+ * string: int length in bytes and the UTF-8 bytes
+ * </pre>
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class SnapshotWriter {
+
+    /**
+     * Magic number at the beginning of the snapshot, "ENOS"
+     */
+    static final int MAGIC = 0x454E4F53;
+
+    /**
+     * Version of the layout of the snapshot
+     */
+    static final int VERSION = 1;
+
+    /**
+     * End of the entries
+     */
+    static final byte END = 0;
+
+    /**
+     * Entry with the page of the winery
+     */
+    static final byte PLACE_PAGE = 1;
+
+    /**
+     * Entry with the index of the last photo of the gallery
+     */
+    static final byte LAST_PHOTO = 2;
+
+    /**
+     * Entry with the HTML of a review
+     */
+    static final byte REVIEW = 3;
+
+    /**
+     * The file of the snapshot
+     */
+    private final File file;
+
+    /**
+     * The temporary file where the snapshot is written
+     */
+    private final File tmpFile;
+
+    /**
+     * The output of the temporary file
+     */
+    private final DataOutputStream out;
+
+    /**
+     * False if not all the reviews of the winery have been read
+     */
+    private boolean complete;
+
+    /**
+     * Constructs a new instance of {@link SnapshotWriter}
+     *
+     * @param file The file of the snapshot
+     * @param name Winery name
+     * @param origin Winery's designation of origin
+     * @param url Google Maps web address where the winery is located
+     * @param dateExtractData Date in which the winery is read
+     * @throws IOException if the snapshot can not be created
+     */
+    SnapshotWriter(File file, String name, String origin, URL url, String dateExtractData) throws IOException {
+
+        this.file = file;
+        this.tmpFile = new File(file.getPath() + ".tmp");
+        this.complete = true;
+        this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(this.tmpFile))));
+        try {
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+            writeString(this.out, name);
+            writeString(this.out, origin);
+            writeString(this.out, url.toString());
+            writeString(this.out, dateExtractData);
+        } catch (IOException e) {
+            this.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * @param html The page of the winery
+     */
+    public void writePlacePage(String html) {
+        this.write(PLACE_PAGE, html);
+    }
+
+    /**
+     * @param lastPhoto The index of the last photo of the gallery
+     */
+    public void writeLastPhoto(String lastPhoto) {
+        this.write(LAST_PHOTO, lastPhoto);
+    }
+
+    /**
+     * @param html The HTML of a review
+     */
+    public void writeReview(String html) {
+        this.write(REVIEW, html);
+    }
+
+    /**
+     * Marks the snapshot as incomplete, as the reading of the reviews stopped before the end of the list
+     */
+    public void markIncomplete() {
+        this.complete = false;
+    }
+
+    /**
+     * @return Returns false if not all the reviews of the winery have been read
+     */
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    /**
+     * Finishes the snapshot and replaces the previous snapshot of the winery with it
+     *
+     * @throws IOException if the snapshot can not be written
+     * @throws IllegalStateException if the snapshot is incomplete
+     */
+    public void commit() throws IOException {
+
+        if (!this.complete) {
+            throw new IllegalStateException("The snapshot " + this.tmpFile + " is incomplete and can not replace " + this.file);
+        }
+        this.out.writeByte(END);
+        this.out.close();
+        Files.move(this.tmpFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Discards the snapshot, keeping the previous snapshot of the winery
+     */
+    public void discard() {
+
+        try {
+            this.out.close();
+        } catch (IOException e) {
+            // The temporary file is deleted anyway
+        }
+        if (this.tmpFile.exists() && !this.tmpFile.delete()) {
+            System.err.println("The snapshot " + this.tmpFile + " could not be deleted");
+        }
+    }
+
+    /**
+     * Writes an entry
+     *
+     * @param type The type of the entry
+     * @param content The content of the entry
+     */
+    private void write(byte type, String content) {
+
+        try {
+            this.out.writeByte(type);
+            writeString(this.out, content);
+        } catch (IOException e) {
+            throw new UncheckedIOException("The snapshot " + this.tmpFile + " could not be written", e);
+        }
+    }
+
+    /**
+     * Writes a string as its length in bytes followed by its UTF-8 bytes
+     *
+     * @param out The output
+     * @param value The string to write
+     * @throws IOException if the string can not be written
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -1,33 +1,34 @@
 package org.EnoTurEPO.Reviews;
 
-import com.optimaize.langdetect.DetectedLanguage;
-import com.optimaize.langdetect.LanguageDetector;
-import com.optimaize.langdetect.LanguageDetectorBuilder;
-import com.optimaize.langdetect.i18n.LdLocale;
-import com.optimaize.langdetect.ngram.NgramExtractors;
-import com.optimaize.langdetect.profiles.LanguageProfile;
-import com.optimaize.langdetect.profiles.LanguageProfileReader;
+import org.EnoTurEPO.Output.BufferedDatasetWriter;
+import org.EnoTurEPO.Output.DatasetSink;
+import org.EnoTurEPO.util.CrawlMetrics;
+import org.EnoTurEPO.util.LanguageIdentifier;
+import org.EnoTurEPO.util.LexiconMatcher;
 import org.EnoTurEPO.util.Trio;
 import org.bdp4j.util.CSVDatasetWriter;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
 import org.openqa.selenium.By;
 import org.openqa.selenium.Cookie;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.firefox.FirefoxDriver;
-import org.openqa.selenium.firefox.FirefoxOptions;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import javax.json.Json;
-import javax.json.JsonObject;
-import javax.json.JsonReader;
 import java.io.*;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -40,49 +41,288 @@ import java.util.regex.Pattern;
 public class WebExtractor {
 
     /**
-     * A language detector to guess the language
+     * Logger of the fields of each review, at debug level
      */
-    private LanguageDetector languageDetector;
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebExtractor.class);
 
     /**
-     * A instance of CSVDatasetWriter which manage the CSV of winery information
+     * Maximum number of reviews of a winery in flight between the browser and the CSV
      */
-    private final CSVDatasetWriter outputPlacesCSV;
+    private static final int PIPELINE_CAPACITY = 64;
 
     /**
-     * A instance of CSVDatasetWriter which manage the CSV of winery reviews
+     * Number of reviews of a winery written between two checkpoints of the journal
      */
-    private final CSVDatasetWriter outputReviewsCSV;
+    private static final int CHECKPOINT_REVIEWS = 100;
 
     /**
-     * The folder name where emoticons file is located
+     * Selector of the button which opens the menu to sort the reviews
      */
-    private final String emoticonsFolder;
+    private static final String SORT_BUTTON = "button[data-value=\"Ordenar\"]";
 
     /**
-     * The folder name where emojis file is located
+     * Selector of the option of the menu which sorts the reviews by the newest
      */
-    private final String emojisFolder;
+    private static final String SORT_NEWEST = "li[role=\"menuitemradio\"][data-index=\"1\"]";
 
     /**
-     * A map with the winery information
+     * Script which removes the cookies consent dialog, if it is shown
      */
-    private Map<String, Object> placesCSV;
+    private static final String REMOVE_CONSENT_SCRIPT = "var consent = document.getElementById(\"consent-bump\"); if (consent) { consent.remove(); }";
 
     /**
-     * A map with the winery reviews
+     * Script which returns the HTML of the reviews which have not been returned yet and marks them as returned
      */
-    private Map<String, Object> reviewsCSV;
+    private static final String NEW_REVIEWS_SCRIPT = "var items = document.getElementsByClassName('section-review'); var html = [];" +
+            "for (var i = 0; i < items.length; i++) { if (!items[i].hasAttribute('data-enotur-read')) { html.push(items[i].outerHTML); items[i].setAttribute('data-enotur-read', '1'); } }" +
+            "return html;";
 
     /**
-     * A hashmap with the emoji dictionary
+     * Script which returns the index of the last photo loaded in the gallery, or null if there are no photos
      */
-    private HashMap<String, Trio<Pattern, String, Double>> emojiDictionary;
+    private static final String LAST_PHOTO_SCRIPT = "var cells = document.getElementsByClassName('gallery-cell');" +
+            "return cells.length > 0 ? cells[cells.length - 1].getAttribute('data-photo-index') : null;";
 
     /**
-     * A hashmap with the emoticon dictionary
+     * Script which keeps the timing of all the resources of the page, as by default only the first 150 are kept
      */
-    private HashMap<String, Trio<Pattern, String, Double>> emoticonDictionary;
+    private static final String KEEP_RESOURCES_SCRIPT = "performance.setResourceTimingBufferSize(100000);";
+
+    /**
+     * Script which returns the bytes transferred by the page and its resources. Cross-origin resources which do not
+     * allow their timing to be read count as zero, so it is a lower bound
+     */
+    private static final String TRANSFERRED_SCRIPT = "var entries = performance.getEntriesByType('navigation').concat(performance.getEntriesByType('resource'));" +
+            "var total = 0; for (var i = 0; i < entries.length; i++) { total += entries[i].transferSize || 0; } return total;";
+
+    /**
+     * Pattern of the coordinates of the winery in its Google Maps web address
+     */
+    private static final Pattern COORDS_PATTERN = Pattern.compile("(/@)(-?[0-9.]+,-?[0-9.]+)");
+
+    /**
+     * Pattern of the number of photos of the winery in its page
+     */
+    private static final Pattern PHOTOS_PATTERN = Pattern.compile("([0-9]+) fotos?");
+
+    /**
+     * Selector of the name of the winery
+     */
+    private static final Evaluator TITLE = new Evaluator.Class("section-hero-header-title-title");
+
+    /**
+     * Selector of the average rating of the winery
+     */
+    private static final Evaluator RANKING = new Evaluator.Class("section-star-display");
+
+    /**
+     * Selector of the button with the number of reviews of the winery
+     */
+    private static final Evaluator NUM_REVIEWS = QueryParser.parse(".section-rating-term-list button");
+
+    /**
+     * Selector of the address of the winery
+     */
+    private static final Evaluator ADDRESS = new Evaluator.AttributeWithValue("data-item-id", "address");
+
+    /**
+     * Selector of the opening hours of the winery
+     */
+    private static final Evaluator SCHEDULE = new Evaluator.Class("section-open-hours-container");
+
+    /**
+     * Selector of the web of the winery
+     */
+    private static final Evaluator WEB = new Evaluator.AttributeWithValue("data-item-id", "authority");
+
+    /**
+     * Selector of the telephone of the winery
+     */
+    private static final Evaluator TELEPHONE = new Evaluator.AttributeWithValueContaining("data-item-id", "phone:tel:");
+
+    /**
+     * Selector of the location of the winery
+     */
+    private static final Evaluator LOCATION = new Evaluator.AttributeWithValue("data-item-id", "oloc");
+
+    /**
+     * Selector of the plus code inside the location of the winery
+     */
+    private static final Evaluator PLUS_CODE = new Evaluator.Class("ugiz4pqJLAG__primary-text");
+
+    /**
+     * Selectors of the number of reviews with 1 to 5 stars, by the number of stars - 1
+     */
+    private static final Evaluator[] STARS = {
+            new Evaluator.AttributeWithValueContaining("aria-label", "1 estrellas,"),
+            new Evaluator.AttributeWithValueContaining("aria-label", "2 estrellas,"),
+            new Evaluator.AttributeWithValueContaining("aria-label", "3 estrellas,"),
+            new Evaluator.AttributeWithValueContaining("aria-label", "4 estrellas,"),
+            new Evaluator.AttributeWithValueContaining("aria-label", "5 estrellas,")};
+
+    /**
+     * Selector of the owner's answer of a review
+     */
+    private static final Evaluator REVIEW_ANSWER = new Evaluator.Class("section-review-owner-response");
+
+    /**
+     * Selector of the texts of a review and of its answer
+     */
+    private static final Evaluator REVIEW_TEXT = new Evaluator.Class("section-review-text");
+
+    /**
+     * Plan of the fields of the page of a winery, evaluated in one traversal of the page
+     */
+    private static final ExtractionPlan<Place> PLACE_PLAN = new ExtractionPlan<Place>()
+            .firstText(TITLE, (place, title) -> place.title = (title != null) ? title.trim() : null)
+            .text(RANKING, (place, ranking) -> place.ranking = ranking.replace(",", "."))
+            .text(NUM_REVIEWS, (place, numReviews) -> place.numReviews = numReviews.trim().isEmpty() ? 0
+                    : Integer.parseInt(numReviews.trim().replaceAll("[()]", "")))
+            .attr(ADDRESS, "aria-label", (place, address) -> place.address = address.replaceAll("^Dirección: ", "")
+                    .replaceAll("Province of Ourense", "Ourense").trim())
+            .attr(SCHEDULE, "aria-label", (place, schedule) -> place.schedule = schedule.replaceAll(". Ocultar el horario de la semana$", ""))
+            .attr(WEB, "aria-label", (place, web) -> place.web = web.replaceAll("^Sitio web: ", "").trim())
+            .attr(TELEPHONE, "aria-label", (place, telephone) -> place.telephone = telephone.replaceAll("^Teléfono: ", "").trim())
+            .firstText(LOCATION, PLUS_CODE, (place, plusCode) -> place.plusCode = (plusCode != null) ? plusCode : "")
+            .attr(STARS[0], "aria-label", (place, label) -> place.stars1 = parseStars(label))
+            .attr(STARS[1], "aria-label", (place, label) -> place.stars2 = parseStars(label))
+            .attr(STARS[2], "aria-label", (place, label) -> place.stars3 = parseStars(label))
+            .attr(STARS[3], "aria-label", (place, label) -> place.stars4 = parseStars(label))
+            .attr(STARS[4], "aria-label", (place, label) -> place.stars5 = parseStars(label))
+            .number(PHOTOS_PATTERN, (place, numPhotos) -> place.numPhotos = Math.max(numPhotos, 0));
+
+    /**
+     * Plan of the fields of a review, evaluated in one traversal of the review. The numerical rating and the date
+     * with its source, when the review has them, override the rating of the stars and the date
+     */
+    private static final ExtractionPlan<Review> REVIEW_PLAN = new ExtractionPlan<Review>()
+            .text(new Evaluator.Class("section-review-title"), (review, author) -> review.author = author)
+            .text(new Evaluator.Class("section-review-subtitle"), WebExtractor::parseSubtitle)
+            .attr(new Evaluator.Class("section-review-stars"), "aria-label",
+                    (review, stars) -> review.rankingReview = stars.trim().split(" ")[0])
+            .text(new Evaluator.Class("section-review-numerical-rating"), (review, rating) -> {
+                if (!rating.isEmpty()) {
+                    review.rankingReview = String.valueOf(rating.trim().charAt(0));
+                }
+            })
+            .text(new Evaluator.Class("section-review-publish-date"), (review, date) -> review.dateReview = date)
+            .firstText(new Evaluator.Class("section-review-publish-date-and-source"), (review, date) -> {
+                if (date != null) {
+                    review.dateReview = date.replaceAll(" en Google", "");
+                }
+            })
+            .count(new Evaluator.AttributeWithValue("aria-label", "Foto"), (review, numPhotos) -> review.numPhotoReview = numPhotos)
+            .text(REVIEW_ANSWER, new Evaluator.Class("section-review-owner-response-subtitle"), (review, date) -> review.dateAnswer = date)
+            .text(new Evaluator.Class("section-review-thumbs-up-count"), (review, likes) ->
+                    review.likesReview = likes.trim().equals("") ? 0 : Integer.parseInt(likes.trim()))
+            .text(REVIEW_TEXT, (review, text) -> {
+                String[] splitTextReview = text.trim().split("\\(Original\\)");
+                if (splitTextReview.length > 1) {
+                    review.textReview = splitTextReview[0].replaceAll("\\(Traducido por Google\\)", "").trim();
+                    review.textReviewOriginal = splitTextReview[1].trim();
+                } else {
+                    review.textReview = text.trim();
+                    review.textReviewOriginal = review.textReview.trim();
+                }
+            })
+            .text(REVIEW_ANSWER, REVIEW_TEXT, (review, text) -> {
+                String[] splitTextAnswer = text.trim().split("\\(Original\\) ");
+                if (splitTextAnswer.length > 1) {
+                    review.textAnswer = splitTextAnswer[0].replaceAll("\\(Traducido por Google\\) ", "").trim();
+                    review.textAnswerOriginal = splitTextAnswer[1].trim();
+                } else {
+                    review.textAnswer = text.trim();
+                    review.textAnswerOriginal = review.textAnswer.trim();
+                }
+            });
+
+    /**
+     * Script which expands the full text of all the reviews loaded
+     */
+    private static final String EXPAND_REVIEWS_SCRIPT = "var items = document.querySelectorAll('.section-expand-review');for (var i = 0; i < items.length; i++) { items[i].click();}";
+
+    /**
+     * The sinks where the rows of a winery are written. When the datasets are sharded, they are the shards of the
+     * thread which reads the winery, so the threads do not share a writer
+     */
+    private static class WineryOutput {
+
+        /**
+         * The sink of the information of the winery
+         */
+        private final DatasetSink places;
+
+        /**
+         * The sink of the reviews of the winery
+         */
+        private final DatasetSink reviews;
+
+        /**
+         * Constructs a new instance of {@link WineryOutput}
+         *
+         * @param places The sink of the information of the winery
+         * @param reviews The sink of the reviews of the winery
+         */
+        private WineryOutput(DatasetSink places, DatasetSink reviews) {
+
+            this.places = places;
+            this.reviews = reviews;
+        }
+
+        /**
+         * Writes the rows buffered in both sinks
+         */
+        private void flush() {
+
+            this.places.flush();
+            this.reviews.flush();
+        }
+    }
+
+    /**
+     * The sink which manage the dataset of winery information, by default a buffered CSVDatasetWriter
+     */
+    private final DatasetSink outputPlacesCSV;
+
+    /**
+     * The sink which manage the dataset of winery reviews, by default a buffered CSVDatasetWriter
+     */
+    private final DatasetSink outputReviewsCSV;
+
+    /**
+     * The waits for the conditions of the pages read
+     */
+    private final PageWaiter pageWaiter;
+
+    /**
+     * Counters and times of the stages of the extraction
+     */
+    private final CrawlMetrics metrics;
+
+    /**
+     * The pool of threads which parse and enrich the reviews of all the wineries
+     */
+    private final ExecutorService enrichers;
+
+    /**
+     * The journal where the progress of the wineries is recorded, or null to not record it
+     */
+    private volatile CrawlJournal journal;
+
+    /**
+     * The reviews read in a previous run, which are not written again, or null to write all the reviews
+     */
+    private volatile KnownReviews knownReviews;
+
+    /**
+     * The store where the pages read are kept, or null to not keep them
+     */
+    private volatile SnapshotStore snapshotStore;
+
+    /**
+     * The enricher of the reviews, with the emoji and emoticon dictionaries
+     */
+    private final ReviewEnricher enricher;
 
     /**
      * Constructs a new instance of {@link WebExtractor}
@@ -94,33 +334,132 @@ public class WebExtractor {
      * @throws FileNotFoundException if the files do not exist
      */
     public WebExtractor(String csvFilePlaces, String csvFileReviews, String emoticonsFolder, String emojisFolder) throws FileNotFoundException {
+        this(new BufferedDatasetWriter(new CSVDatasetWriter(csvFilePlaces)), new BufferedDatasetWriter(new CSVDatasetWriter(csvFileReviews)),
+                emoticonsFolder, emojisFolder);
+    }
 
-        try {
-            //load all languages:
-            List<LanguageProfile> languageProfiles = new LanguageProfileReader().readAllBuiltIn();
+    /**
+     * Constructs a new instance of {@link WebExtractor} which writes to the given sinks
+     *
+     * @param outputPlaces Sink of the winery information
+     * @param outputReviews Sink of the winery reviews
+     * @param emoticonsFolder Path of the folder where the emoticon files containing <emoticon,<polarity, synsetID>> are located
+     * @param emojisFolder Path of the folder where the emoji files containing <emoji,<polarity, synsetID>> are located
+     * @throws FileNotFoundException if the files do not exist
+     */
+    public WebExtractor(DatasetSink outputPlaces, DatasetSink outputReviews, String emoticonsFolder, String emojisFolder) throws FileNotFoundException {
 
-            //build language detector:
-            languageDetector = LanguageDetectorBuilder.create(NgramExtractors.standard())
-                    .withProfiles(languageProfiles)
-                    .build();
+        this.outputPlacesCSV = outputPlaces;
+        this.outputReviewsCSV = outputReviews;
 
-        } catch (IOException e) {
-            System.err.println("Language detector profiles could not be loaded");
-        }
+        this.metrics = new CrawlMetrics();
+        this.enricher = new ReviewEnricher(emoticonsFolder, emojisFolder, this.metrics);
+        this.pageWaiter = new PageWaiter();
+        this.pageWaiter.setMetrics(this.metrics);
+        this.enrichers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread thread = new Thread(r, "review-enricher");
+            thread.setDaemon(true);
+            return thread;
+        });
 
-        this.outputPlacesCSV = new CSVDatasetWriter(csvFilePlaces);
-        this.outputReviewsCSV = new CSVDatasetWriter(csvFileReviews);
+        this.initializePlacesCSV();
+        this.initializeReviewsCSV();
+    }
 
-        this.emoticonsFolder = emoticonsFolder;
-        this.emojisFolder = emojisFolder;
+    /**
+     * @return Returns the waits for the conditions of the pages read, to configure them or to read their times
+     */
+    public PageWaiter getPageWaiter() {
+        return this.pageWaiter;
+    }
 
-        this.placesCSV = new LinkedHashMap<>();
-        this.reviewsCSV = new LinkedHashMap<>();
+    /**
+     * @return Returns the counters and times of the stages of the extraction
+     */
+    public CrawlMetrics getMetrics() {
+        return this.metrics;
+    }
 
-        this.initializePlacesCSV();
-        this.initializeReviewsCSV();
-        this.loadEmojiDictionary();
-        this.loadEmoticonDictionary();
+    /**
+     * Sets the journal where the progress of the wineries is recorded. The wineries are resumed from their last
+     * checkpoint in the journal
+     *
+     * @param journal The journal, or null to not record the progress
+     */
+    public void setJournal(CrawlJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Sets the service which identifies the language of the reviews and the answers, for example to restrict it to
+     * some candidate languages. By default it is the one shared by the JVM with all the built-in languages.
+     *
+     * @param languageIdentifier The language identification service
+     */
+    public void setLanguageIdentifier(LanguageIdentifier languageIdentifier) {
+        this.enricher.setLanguageIdentifier(languageIdentifier);
+    }
+
+    /**
+     * Sets the reviews read in a previous run. The reviews are sorted by the newest and only the new ones are written,
+     * stopping the scroll of a winery when a known review is reached
+     *
+     * @param knownReviews The reviews of the previous run, or null to write all the reviews
+     */
+    public void setKnownReviews(KnownReviews knownReviews) {
+        this.knownReviews = knownReviews;
+    }
+
+    /**
+     * Sets the store where the pages of the wineries read are kept, to run the extraction again with
+     * {@link #replay(SnapshotReader)}
+     *
+     * @param snapshotStore The store of the pages, or null to not keep them
+     */
+    public void setSnapshotStore(SnapshotStore snapshotStore) {
+        this.snapshotStore = snapshotStore;
+    }
+
+    /**
+     * Writes the rows buffered in both datasets
+     */
+    public void flush() {
+
+        this.outputPlacesCSV.flush();
+        this.outputReviewsCSV.flush();
+    }
+
+    /**
+     * Closes both datasets and stops the pool of threads which enrich the reviews
+     */
+    public void close() {
+
+        this.outputPlacesCSV.close();
+        this.outputReviewsCSV.close();
+        this.enrichers.shutdown();
+        this.metrics.close();
+    }
+
+    /**
+     * Starts the rows of a winery in both datasets, in the shards of the calling thread if they are sharded
+     *
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @return The sinks of the rows of the winery
+     */
+    private WineryOutput openOutput(String name, URL url) {
+
+        String key = outputKey(name, url);
+        return new WineryOutput(this.outputPlacesCSV.group(key), this.outputReviewsCSV.group(key));
+    }
+
+    /**
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @return The key of the rows of the winery in the datasets, which sets their order when the shards are merged
+     */
+    public static String outputKey(String name, URL url) {
+        return name + "\t" + url;
     }
 
     /**
@@ -128,28 +467,9 @@ public class WebExtractor {
      */
     public void initializePlacesCSV() {
 
-        this.placesCSV.put("winery", 0);
-        this.placesCSV.put("D.O.", 0);
-        this.placesCSV.put("urlGoogleMaps", 0);
-        this.placesCSV.put("longitude", 0);
-        this.placesCSV.put("latitude", 0);
-        this.placesCSV.put("title", 0);
-        this.placesCSV.put("ranking", 0);
-        this.placesCSV.put("numReviews", 0);
-        this.placesCSV.put("address", 0);
-        this.placesCSV.put("schedule", 0);
-        this.placesCSV.put("web", 0);
-        this.placesCSV.put("telephone", 0);
-        this.placesCSV.put("plusCode", 0);
-        this.placesCSV.put("stars5", 0);
-        this.placesCSV.put("stars4", 0);
-        this.placesCSV.put("stars3", 0);
-        this.placesCSV.put("stars2", 0);
-        this.placesCSV.put("stars1", 0);
-        this.placesCSV.put("numPhotos", 0);
-
-        String[] columns = this.placesCSV.keySet().toArray(new String[0]);
-        this.outputPlacesCSV.addColumns(columns, this.placesCSV.values().toArray());
+        Object[] defaultValues = new Object[Place.COLUMNS.length];
+        Arrays.fill(defaultValues, 0);
+        this.outputPlacesCSV.addColumns(Place.COLUMNS, defaultValues);
     }
 
     /**
@@ -157,485 +477,702 @@ public class WebExtractor {
      */
     public void initializeReviewsCSV() {
 
-        this.reviewsCSV.put("title", 0);
-        this.reviewsCSV.put("author", 0);
-        this.reviewsCSV.put("isLocalGuide", 0);
-        this.reviewsCSV.put("numReviewsAuthor", 0);
-        this.reviewsCSV.put("rankingReview", 0);
-        this.reviewsCSV.put("dateExtractData", 0);
-        this.reviewsCSV.put("dateReview", 0);
-        this.reviewsCSV.put("textReviewOriginal", 0);
-        this.reviewsCSV.put("textReview", 0);
-        this.reviewsCSV.put("emojisTextReview", 0);
-        this.reviewsCSV.put("emojisPolarityReview", 0);
-        this.reviewsCSV.put("emoticonsTextReview", 0);
-        this.reviewsCSV.put("emoticonsPolarityReview", 0);
-        this.reviewsCSV.put("langTextReview", 0);
-        this.reviewsCSV.put("langReliabilityTextReview", 0);
-        this.reviewsCSV.put("numPhotoReview", 0);
-        this.reviewsCSV.put("likesReview", 0);
-        this.reviewsCSV.put("dateAnswer", 0);
-        this.reviewsCSV.put("textAnswerOriginal", 0);
-        this.reviewsCSV.put("textAnswer", 0);
-        this.reviewsCSV.put("emojisTextAnswer", 0);
-        this.reviewsCSV.put("emojisPolarityAnswer", 0);
-        this.reviewsCSV.put("emoticonsTextAnswer", 0);
-        this.reviewsCSV.put("emoticonsPolarityAnswer", 0);
-        this.reviewsCSV.put("langTextAnswer", 0);
-        this.reviewsCSV.put("langReliabilityTextAnswer", 0);
-
-        String[] columns = this.reviewsCSV.keySet().toArray(new String[0]);
-        this.outputReviewsCSV.addColumns(columns,this.reviewsCSV.values().toArray());
-    }
-
-    /**
-     * Loads the emojis dictionary from a .json file to a HashMap
+        Object[] defaultValues = new Object[Review.COLUMNS.length];
+        Arrays.fill(defaultValues, 0);
+        this.outputReviewsCSV.addColumns(Review.COLUMNS, defaultValues);
+    }
+
+    /**
+     * Loads the emojis dictionary from a .json file to a {@link LexiconMatcher}
      *
      * @throws FileNotFoundException if the emoji file does not exist
      */
     public void loadEmojiDictionary() throws FileNotFoundException {
-
-        this.emojiDictionary = new HashMap<>();
-
-        String emojisFilePath = this.emojisFolder + "emojisID.es.json";
-        File emojisFile = new File(emojisFilePath);
-        InputStream is = new FileInputStream(emojisFile);
-        JsonReader rdr = Json.createReader(is);
-        JsonObject jsonObject = rdr.readObject();
-        rdr.close();
-
-        for (String emoji : jsonObject.keySet()) {
-            this.emojiDictionary.put(emoji, new Trio<>(Pattern.compile(Pattern.quote(emoji)), jsonObject.getJsonObject(emoji).getString("synsetID"),
-                    jsonObject.getJsonObject(emoji).getJsonNumber("polarity").doubleValue()));
-
-        }
+        this.enricher.loadEmojiDictionary();
     }
 
     /**
-     * Loads the emoticons dictionary from a .json file to a HashMap
+     * Loads the emoticons dictionary from a .json file to a {@link LexiconMatcher}
      *
      * @throws FileNotFoundException if the emoticon file does not exist
      */
     public void loadEmoticonDictionary() throws FileNotFoundException {
+        this.enricher.loadEmoticonDictionary();
+    }
 
-        this.emoticonDictionary = new HashMap<>();
-
-        String emoticonsFilePath = this.emoticonsFolder + "emoticonsID.es.json";
-        File emoticonsFile = new File(emoticonsFilePath);
-        InputStream is = new FileInputStream(emoticonsFile);
-        JsonReader rdr = Json.createReader(is);
-        JsonObject jsonObject = rdr.readObject();
-        rdr.close();
+    /**
+     * Starts processing all the data from winery in a new Firefox session
+     *
+     * @param name Winery name
+     * @param origin Winery's designation of origin
+     * @param url Google Maps web address where the winery is located
+     * @throws InterruptedException if any thread has interrupted the current thread while waiting for the page
+     */
+    public void run(String name, String origin, URL url) throws InterruptedException {
 
-        for (String emoticon : jsonObject.keySet()) {
-            this.emoticonDictionary.put(emoticon, new Trio<>(Pattern.compile("(\\s|^)" + Pattern.quote(emoticon) + "(\\s|$)"), jsonObject.getJsonObject(emoticon).getString("synsetID"),
-                    jsonObject.getJsonObject(emoticon).getJsonNumber("polarity").doubleValue()));
+        WebDriver driver = new FirefoxDriver(DriverPool.defaultOptions());
+        try {
+            this.run(driver, name, origin, url);
+        } finally {
+            driver.quit();
         }
     }
 
     /**
-     * Starts processing all the data from winery
+     * Starts processing all the data from winery in the given browser session. The session is not closed, so it can
+     * be reused for the next winery. This method can be called from several threads at the same time.
      *
+     * @param driver Browser session used to read the winery's page
      * @param name Winery name
      * @param origin Winery's designation of origin
      * @param url Google Maps web address where the winery is located
-     * @throws InterruptedException if any thread has interrupted the current thread during the execution of Thread.sleep
+     * @throws InterruptedException if any thread has interrupted the current thread while waiting for the page
      */
-    public void run(String name, String origin, URL url) throws InterruptedException {
+    public void run(WebDriver driver, String name, String origin, URL url) throws InterruptedException {
 
-        this.placesCSV = new LinkedHashMap<>();
-        this.reviewsCSV = new LinkedHashMap<>();
+        LOGGER.info("--- Begin of data collection from winery {} ---", name);
 
-        System.out.println("--- Begin of data collection from winery " + name + " ---");
+        Place place = new Place();
+        place.winery = name;
+        place.origin = origin;
+        place.urlGoogleMaps = url;
 
-        String title, ranking, address, schedule, web, telephone, plusCode;
-        int numReviews, numPhotos, stars5, stars4, stars3, stars2, stars1;
+        if (!this.parseCoords(place)) {
+            return;
+        }
 
-        //Coords
-        Pattern pattern = Pattern.compile("(/@)(-?[0-9.]+,-?[0-9.]+)");
-        Matcher matcher = pattern.matcher(url.toString());
-        String coords = null;
-        while (matcher.find()) { coords = matcher.group(2); }
-        float lng, lat;
+        long start = this.metrics.start();
+        String dateExtractData = new SimpleDateFormat("dd-MM-yyyy").format(new Date());
+        WineryOutput output = this.openOutput(name, url);
+        SnapshotStore snapshotStore = this.snapshotStore;
+        SnapshotWriter snapshot = null;
+        int numWritten;
+        try {
+            if (snapshotStore != null) {
+                snapshot = snapshotStore.create(name, origin, url, dateExtractData);
+            }
+            numWritten = this.readWinery(driver, place, dateExtractData, snapshot, output);
+            if (snapshot != null) {
+                commitSnapshot(snapshot, name);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("The snapshot of the winery " + name + " could not be written", e);
+        } finally {
+            if (snapshot != null) {
+                // Once committed there is nothing to discard
+                snapshot.discard();
+            }
+        }
 
-        if (coords != null) {
-            lng = Float.parseFloat(coords.split(",")[0]);
-            lat = Float.parseFloat(coords.split(",")[1]);
-        } else {
-            System.err.println("The coordinates can not be obtained for :" + name + ". Aborting...");
-            return;
+        output.flush();
+        CrawlJournal journal = this.journal;
+        if (journal != null) {
+            journal.record(CrawlJournal.DONE, name, url, numWritten);
         }
+        this.metrics.stop("winery", start);
+        this.metrics.increment("wineries");
+        LOGGER.info("--- End of data collection from winery {} ---", name);
+    }
 
-        System.out.println("Longitude: " + lng + " Latitude: " + lat);
+    /**
+     * Replaces the previous snapshot of a winery with the one just read, unless it is incomplete. The snapshot of a
+     * delta crawl only has the newest reviews, so the previous complete snapshot is kept to be replayed
+     *
+     * @param snapshot The snapshot of the winery
+     * @param name Winery name
+     * @return True if the snapshot has been committed
+     * @throws IOException if the snapshot can not be written
+     */
+    static boolean commitSnapshot(SnapshotWriter snapshot, String name) throws IOException {
 
-        FirefoxOptions op = new FirefoxOptions();
-        op.addPreference("javascript.enable", true);
-        WebDriver driver = new FirefoxDriver(op);
-        JavascriptExecutor js;
-        Document doc = null, docPhotos = null, docReviews = null, docAuxReviews;
+        if (!snapshot.isComplete()) {
+            LOGGER.info("*** The snapshot of the winery {} is not kept, as not all its reviews were read ***", name);
+            return false;
+        }
+        snapshot.commit();
+        return true;
+    }
 
-        System.out.println("*** Start reading the winery's page " + name + " ***");
+    /**
+     * Extracts and saves the information and the reviews of a winery from its snapshot, without a browser. The
+     * reviews of a previous run are skipped as in {@link #run(WebDriver, String, String, URL)}, and the date of
+     * extraction is the date in which the snapshot was taken.
+     *
+     * @param snapshot The snapshot of the winery
+     * @throws IOException if the snapshot can not be read
+     * @throws InterruptedException if the thread is interrupted while the reviews are processed
+     */
+    public void replay(SnapshotReader snapshot) throws IOException, InterruptedException {
+
+        String name = snapshot.getName();
+        LOGGER.info("--- Begin of the replay of winery {} ---", name);
+
+        Place place = new Place();
+        place.winery = name;
+        place.origin = snapshot.getOrigin();
+        place.urlGoogleMaps = snapshot.getUrl();
+        if (!this.parseCoords(place)) {
+            return;
+        }
+
+        this.parsePlace(snapshot.getPlacePage(), place);
+        if (snapshot.getLastPhoto() != null) {
+            place.numPhotos = Integer.parseInt(snapshot.getLastPhoto()) + 1;
+            LOGGER.debug("NumPhotos: {}", place.numPhotos);
+        }
+        WineryOutput output = this.openOutput(name, place.urlGoogleMaps);
+        this.savePlace(output, place);
 
+        Set<Long> known = (this.knownReviews != null) ? this.knownReviews.get(place.title) : null;
+        int[] numWritten = {0};
+        ReviewPipeline pipeline = this.openPipeline(output, null, name, place.urlGoogleMaps, numWritten);
+        int contReview = 1;
         try {
-            driver.get(url.toExternalForm());
-            WebDriverWait wait = new WebDriverWait(driver,30);
-            wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.className("section-hero-header-title-title")));
-            Thread.sleep(3000);
-            doc = Jsoup.parse(driver.getPageSource()).normalise();
-            Thread.sleep(1000);
-            js = (JavascriptExecutor) driver;
-            js.executeScript("document.getElementById(\"consent-bump\").remove()");
-            Thread.sleep(1000);
-            if (driver.findElements(By.cssSelector("button[aria-labelledby=\"card-label-Todas\"]")).size() != 0) {
-                driver.findElement(By.cssSelector("button[aria-labelledby=\"card-label-Todas\"]")).click();
-                Thread.sleep(3000);
-                js = (JavascriptExecutor) driver;
-                while (driver.findElements(By.className("section-" +
-                        "loading")).size() > 0) {
-                    js.executeScript("document.getElementsByClassName(\"section-loading\")[0].scrollIntoView()");
-                    Thread.sleep(4000);
+            String html;
+            while ((html = snapshot.nextReview()) != null) {
+                Elements reviews = new Elements();
+                long start = this.metrics.start();
+                Element e = parseReviewHtml(html);
+                this.metrics.stop("parse.review", start);
+                if (e != null) {
+                    reviews.add(e);
+                }
+                this.removeKnownReviews(reviews, known, Collections.emptySet());
+                contReview = this.processReviews(pipeline, reviews, place.title, snapshot.getDateExtractData(), contReview);
+            }
+        } catch (IOException | RuntimeException | InterruptedException e) {
+            pipeline.abort();
+            throw e;
+        }
+        pipeline.finish();
+        output.flush();
+
+        LOGGER.info("*** Saved {} reviews of the winery {} ***", numWritten[0], place.title);
+        LOGGER.info("--- End of the replay of winery {} ---", name);
+    }
+
+    /**
+     * Reads the pages of a winery in the browser and saves its information and its reviews
+     *
+     * @param driver Browser session used to read the winery's page
+     * @param place The winery, with its name, D.O., url and coordinates
+     * @param dateExtractData Date in which the winery is read
+     * @param snapshot The snapshot where the pages read are stored, or null
+     * @param output The sinks of the rows of the winery
+     * @return Number of reviews of the winery written, including those of previous runs
+     * @throws InterruptedException if any thread has interrupted the current thread while waiting for the page
+     */
+    private int readWinery(WebDriver driver, Place place, String dateExtractData, SnapshotWriter snapshot, WineryOutput output) throws InterruptedException {
+
+        String name = place.winery;
+        URL url = place.urlGoogleMaps;
+        JavascriptExecutor js;
+
+        LOGGER.info("*** Start reading the winery's page {} ***", name);
+
+        long transferred = 0;
+        long start = this.metrics.start();
+        driver.get(url.toExternalForm());
+        this.metrics.stop("pageLoad", start);
+        keepResources(driver);
+        WebDriverWait wait = new WebDriverWait(driver,30);
+        wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.className("section-hero-header-title-title")));
+        this.pageWaiter.untilSettled(driver, "placePage");
+        String placePage = driver.getPageSource();
+        if (snapshot != null) {
+            snapshot.writePlacePage(placePage);
+        }
+        this.parsePlace(placePage, place);
+        js = (JavascriptExecutor) driver;
+        js.executeScript(REMOVE_CONSENT_SCRIPT);
+        if (driver.findElements(By.cssSelector("button[aria-labelledby=\"card-label-Todas\"]")).size() != 0) {
+            driver.findElement(By.cssSelector("button[aria-labelledby=\"card-label-Todas\"]")).click();
+            this.pageWaiter.until(driver, "photoGallery", ExpectedConditions.presenceOfAllElementsLocatedBy(By.className("gallery-cell")));
+            this.pageWaiter.untilSettled(driver, "photoGallery");
+            while (driver.findElements(By.className("section-" +
+                    "loading")).size() > 0) {
+                int numCells = driver.findElements(By.className("gallery-cell")).size();
+                this.metrics.increment("scroll.photos");
+                js.executeScript("document.getElementsByClassName(\"section-loading\")[0].scrollIntoView()");
+                if (!this.pageWaiter.untilCountGrows(driver, "photoScroll", "gallery-cell", numCells)) {
+                    break;
                 }
-                docPhotos = Jsoup.parse(driver.getPageSource()).normalise();
-                Thread.sleep(3000);
-                driver.get(url.toExternalForm());
-                Thread.sleep(1000);
-                js = (JavascriptExecutor) driver;
-                js.executeScript("document.getElementById(\"consent-bump\").remove()");
-                Thread.sleep(1000);
             }
-            Thread.sleep(3000);
-            if (driver.findElements(By.cssSelector("button[jsaction=\"pane.rating.moreReviews\"]")).size() != 0) {
-                driver.findElement(By.cssSelector("button[jsaction=\"pane.rating.moreReviews\"]")).click();
-                Thread.sleep(3000);
-                js = (JavascriptExecutor) driver;
-                js.executeScript("var items = document.querySelectorAll('.section-expand-review');for (var i = 0; i < items.length; i++) { items[i].click();}");
-                Thread.sleep(3000);
-                while (driver.findElements(By.className("section-loading")).size() > 0) {
-                    docAuxReviews = Jsoup.parse(driver.getPageSource()).normalise();
-                    js.executeScript("document.getElementsByClassName(\"section-loading\")[0].scrollIntoView()");
-                    js.executeScript("var items = document.querySelectorAll('.section-expand-review');for (var i = 0; i < items.length; i++) { items[i].click();}");
-                    Thread.sleep(4000);
-                    docReviews = Jsoup.parse(driver.getPageSource()).normalise();
-                    if (docAuxReviews.toString().equals(docReviews.toString())) {
-                        break;
-                    }
+            Object lastPhoto = js.executeScript(LAST_PHOTO_SCRIPT);
+            if (lastPhoto != null) {
+                if (snapshot != null) {
+                    snapshot.writeLastPhoto(lastPhoto.toString());
                 }
-                js.executeScript("var items = document.querySelectorAll('.section-expand-review');for (var i = 0; i < items.length; i++) { items[i].click();}");
-                Thread.sleep(3000);
-                docReviews = Jsoup.parse(driver.getPageSource()).normalise();
+                place.numPhotos = Integer.parseInt(lastPhoto.toString()) + 1;
+                LOGGER.debug("NumPhotos: {}", place.numPhotos);
             }
-
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } finally {
-            driver.quit();
+            transferred += transferredBytes(driver);
+            start = this.metrics.start();
+            driver.get(url.toExternalForm());
+            this.metrics.stop("pageLoad", start);
+            keepResources(driver);
+            wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.className("section-hero-header-title-title")));
+            js.executeScript(REMOVE_CONSENT_SCRIPT);
+            this.pageWaiter.untilSettled(driver, "placePage");
         }
 
-        System.out.println("*** Finish reading the winery's page " + name + " ***");
-        title = doc.getElementsByClass("section-hero-header-title-title").first().text().trim();
-        System.out.println("Title: " + title);
+        LOGGER.info("*** Finish reading the winery's page {} ***", name);
+        if (place.title == null) {
+            throw new IllegalStateException("The page of the winery " + name + " could not be read");
+        }
 
-        ranking = doc.getElementsByClass("section-star-display").text().replace(",",".");
-        System.out.println("Ranking: " + ranking);
+        CrawlJournal journal = this.journal;
+        if (journal != null && journal.isPlaceWritten(name, url)) {
+            LOGGER.info("*** The data of the winery {} was already saved ***", place.title);
+        } else {
+            LOGGER.info("*** Saving the data of the winery {} ***", place.title);
+            this.savePlace(output, place);
+            this.checkpoint(output, journal, CrawlJournal.PLACE, name, url, 0, Collections.emptyList());
+            LOGGER.info("*** Saved the data of the winery {} ***", place.title);
+        }
 
-        if (doc.getElementsByClass("section-rating-term-list").select("button").size() != 0) {
-            numReviews = Integer.parseInt(doc.getElementsByClass("section-rating-term-list").select("button").text().trim().replaceAll("[()]",""));
+        int numWritten = 0;
+        if (driver.findElements(By.cssSelector("button[jsaction=\"pane.rating.moreReviews\"]")).size() != 0) {
+            driver.findElement(By.cssSelector("button[jsaction=\"pane.rating.moreReviews\"]")).click();
+            numWritten = this.readReviews(driver, name, url, place.title, dateExtractData, snapshot, output);
         } else {
-            numReviews = 0;
+            LOGGER.info("*** There are not reviews of the winery {} ***", place.title);
         }
-        System.out.println("Number of reviews: " + numReviews);
+        this.metrics.record("bytes.winery", transferred + transferredBytes(driver));
+        return numWritten;
+    }
+
+    /**
+     * Keeps the timing of all the resources of the page loaded, to measure the bytes it transfers
+     *
+     * @param driver Browser session where the page is loaded
+     */
+    private static void keepResources(WebDriver driver) {
 
-        address = doc.getElementsByAttributeValue("data-item-id", "address").attr("aria-label").replaceAll("^Dirección: ", "").replaceAll("Province of Ourense", "Ourense").trim();
-        System.out.println("Address: " + address);
+        try {
+            ((JavascriptExecutor) driver).executeScript(KEEP_RESOURCES_SCRIPT);
+        } catch (RuntimeException e) {
+            // The bytes of the page are not measured
+        }
+    }
 
-        schedule = doc.getElementsByClass("section-open-hours-container").attr("aria-label").replaceAll(". Ocultar el horario de la semana$", "");
-        System.out.println("Schedule: " + schedule);
+    /**
+     * @param driver Browser session where the page is loaded
+     * @return The bytes transferred by the page loaded and its resources, 0 if they can not be measured
+     */
+    private static long transferredBytes(WebDriver driver) {
 
-        web = doc.getElementsByAttributeValue("data-item-id", "authority").attr("aria-label").replaceAll("^Sitio web: ", "").trim();
-        System.out.println("Web: " + web);
+        try {
+            Object bytes = ((JavascriptExecutor) driver).executeScript(TRANSFERRED_SCRIPT);
+            return (bytes instanceof Number) ? ((Number) bytes).longValue() : 0;
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
 
-        telephone = doc.getElementsByAttributeValueContaining("data-item-id", "phone:tel:").attr("aria-label").replaceAll("^Teléfono: ", "").trim();
-        System.out.println("Telephone: " + telephone);
+    /**
+     * Extracts the coordinates of the winery from its url
+     *
+     * @param place The winery, whose coordinates are filled
+     * @return False if the url has not the coordinates
+     */
+    private boolean parseCoords(Place place) {
 
-        plusCode = doc.getElementsByAttributeValue("data-item-id", "oloc").first().getElementsByClass("ugiz4pqJLAG__primary-text").first().text();
-        System.out.println("Plus code: " + plusCode);
+        Matcher matcher = COORDS_PATTERN.matcher(place.urlGoogleMaps.toString());
+        String coords = null;
+        while (matcher.find()) { coords = matcher.group(2); }
 
-        if (!doc.getElementsByAttributeValueContaining("aria-label", "5 estrellas,").attr("aria-label").equals("")) {
-            stars5 = Integer.parseInt(doc.getElementsByAttributeValueContaining("aria-label", "5 estrellas,").attr("aria-label").split(",")[1].trim().split(" ")[0].trim().replace(" ", ""));
-        } else {
-            stars5 = -1;
-        }
-        if (!doc.getElementsByAttributeValueContaining("aria-label", "4 estrellas,").attr("aria-label").equals("")) {
-            stars4 = Integer.parseInt(doc.getElementsByAttributeValueContaining("aria-label", "4 estrellas,").attr("aria-label").split(",")[1].trim().split(" ")[0].trim().replace(" ", ""));
-        } else {
-            stars4 = -1;
-        }
-        if (!doc.getElementsByAttributeValueContaining("aria-label", "3 estrellas,").attr("aria-label").equals("")) {
-            stars3 = Integer.parseInt(doc.getElementsByAttributeValueContaining("aria-label", "3 estrellas,").attr("aria-label").split(",")[1].trim().split(" ")[0].trim().replace(" ", ""));
+        if (coords != null) {
+            place.longitude = Double.parseDouble(coords.split(",")[0]);
+            place.latitude = Double.parseDouble(coords.split(",")[1]);
         } else {
-            stars3 = -1;
+            LOGGER.warn("The coordinates can not be obtained for {}. Aborting...", place.winery);
+            return false;
         }
-        if (!doc.getElementsByAttributeValueContaining("aria-label", "2 estrellas,").attr("aria-label").equals("")) {
-            stars2 = Integer.parseInt(doc.getElementsByAttributeValueContaining("aria-label", "2 estrellas,").attr("aria-label").split(",")[1].trim().split(" ")[0].trim().replace(" ", ""));
-        } else {
-            stars2 = -1;
+
+        LOGGER.debug("Longitude: {} Latitude: {}", place.longitude, place.latitude);
+        return true;
+    }
+
+    /**
+     * Extracts the fields of the winery from its page. The page is parsed once, all the fields are read with
+     * {@link #PLACE_PLAN} in one traversal and the document is released when this method returns. The number of
+     * photos is read from the page, and it is replaced by the photos of the gallery when the gallery is opened.
+     *
+     * @param html The HTML of the page of the winery
+     * @param place The winery, whose fields are filled
+     * @throws IllegalStateException if the page has not the name of the winery
+     */
+    private void parsePlace(String html, Place place) {
+
+        long start = this.metrics.start();
+        Document doc = Jsoup.parse(html);
+        this.metrics.stop("parse.place", start);
+
+        PLACE_PLAN.extract(doc, place);
+        if (place.title == null) {
+            throw new IllegalStateException("The page of the winery " + place.winery + " has not its name");
         }
-        if (!doc.getElementsByAttributeValueContaining("aria-label", "1 estrellas,").attr("aria-label").equals("")) {
-            stars1 = Integer.parseInt(doc.getElementsByAttributeValueContaining("aria-label", "1 estrellas,").attr("aria-label").split(",")[1].trim().split(" ")[0].trim().replace(" ", ""));
-        } else {
-            stars1 = -1;
+
+        LOGGER.debug("Title: {}", place.title);
+        LOGGER.debug("Ranking: {}", place.ranking);
+        LOGGER.debug("Number of reviews: {}", place.numReviews);
+        LOGGER.debug("Address: {}", place.address);
+        LOGGER.debug("Schedule: {}", place.schedule);
+        LOGGER.debug("Web: {}", place.web);
+        LOGGER.debug("Telephone: {}", place.telephone);
+        LOGGER.debug("Plus code: {}", place.plusCode);
+        LOGGER.debug("Stars5: {}, Stars4: {}, Stars3: {}, Stars2: {}, Stars1: {}", place.stars5, place.stars4, place.stars3, place.stars2, place.stars1);
+        LOGGER.debug("NumPhotos: {}", place.numPhotos);
+
+        if (place.ranking.equals("")) {
+            place.ranking = "UND";
         }
-        System.out.println("Stars5: " + stars5 + "\nStars4: " + stars4 + "\nStars3: " + stars3 + "\nStars2: " + stars2 + "\nStars1: " + stars1);
+    }
+
+    /**
+     * @param label The label of the number of reviews with some stars, such as "5 estrellas, 40 reseñas"
+     * @return The number of reviews, or -1 if there is no label
+     */
+    private static int parseStars(String label) {
+        return label.equals("") ? -1 : Integer.parseInt(label.split(",")[1].trim().split(" ")[0].trim().replace(" ", ""));
+    }
+
+    /**
+     * Reads if the author of a review is a local guide and the number of reviews of the author from the subtitle
+     *
+     * @param review The review
+     * @param subtitle The subtitle of the review
+     */
+    private static void parseSubtitle(Review review, String subtitle) {
 
-        if (docPhotos != null) {
-            numPhotos = Integer.parseInt(docPhotos.getElementsByClass("gallery-cell").last().attr("data-photo-index")) + 1;
+        subtitle = subtitle.trim();
+        if (subtitle.contains("・")) {
+            String[] subtitleSplit = subtitle.split("・");
+            review.isLocalGuide = true;
+            review.numReviewsAuthor = Integer.parseInt(subtitleSplit[1].split(" ")[0].trim().replace(".", ""));
         } else {
-            Pattern pattern2 = Pattern.compile("([0-9]+) fotos?");
-            Matcher matcher2 = pattern2.matcher(doc.toString());
-            if (matcher2.find()) {
-                numPhotos = Integer.parseInt(matcher2.group(1));
-            } else{
-                numPhotos = 0;
+            if (subtitle.matches("Local Guide [0-9]+ reseñas?")) {
+                review.isLocalGuide = false;
+                review.numReviewsAuthor = Integer.parseInt(subtitle.split(" ")[2].replace(".", ""));
+            } else {
+                review.isLocalGuide = !subtitle.trim().equals("");
+                review.numReviewsAuthor = 0;
             }
         }
-        System.out.println("NumPhotos: " + numPhotos);
+    }
 
-        this.placesCSV.put("winery", name);
-        this.placesCSV.put("D.O.", origin);
-        this.placesCSV.put("urlGoogleMaps", url);
-        this.placesCSV.put("longitude", lng);
-        this.placesCSV.put("latitude", lat);
-        this.placesCSV.put("title", title);
-        if (ranking.equals("")) {
-            this.placesCSV.put("ranking", "UND");
-        } else {
-            this.placesCSV.put("ranking", ranking);
-        }
-        this.placesCSV.put("numReviews", numReviews);
-        this.placesCSV.put("address", address);
-        this.placesCSV.put("schedule", schedule);
-        this.placesCSV.put("web", web);
-        this.placesCSV.put("telephone", telephone);
-        this.placesCSV.put("plusCode", plusCode);
-        this.placesCSV.put("stars5", stars5);
-        this.placesCSV.put("stars4", stars4);
-        this.placesCSV.put("stars3", stars3);
-        this.placesCSV.put("stars2", stars2);
-        this.placesCSV.put("stars1", stars1);
-        this.placesCSV.put("numPhotos", numPhotos);
-
-        System.out.println("*** Saving the data of the winery " + title + " ***");
-        this.outputPlacesCSV.addRow(this.placesCSV.values().toArray());
-        this.outputPlacesCSV.flushAndClose();
-        System.out.println("*** Saved the data of the winery " + title + " ***");
-
-        if (docReviews != null) {
-
-            String author;
-            boolean isLocalGuide;
-            int numReviewsAuthor;
-            String rankingReview, dateReview, textReview, langTextReview;
-            double langReliabilityTextReview, langReliabilityTextAnswer;
-            int numPhotoReview, likesReview;
-            String dateAnswer, textAnswer, langTextAnswer;
-
-            SimpleDateFormat dateFormat = new SimpleDateFormat("dd-MM-yyyy");
-            String dateExtractData = dateFormat.format(new Date())  ;
-
-            System.out.println("*** Start reading the reviews of winery's page " + title + " ***");
-
-            int contReview = 1;
-            for(Element e : docReviews.getElementsByClass("section-review")) {
-
-                System.out.println("**************************************************");
-                System.out.println("Num review: " + contReview);
-
-                author = e.getElementsByClass("section-review-title").text();
-                System.out.println("Author: " + author);
-
-                String subtitle = e.getElementsByClass("section-review-subtitle").text().trim();
-                if (subtitle.contains("・")) {
-                    String[] subtitleSplit = subtitle.split("・");
-                    isLocalGuide = true;
-                    numReviewsAuthor = Integer.parseInt(subtitleSplit[1].split(" ")[0].trim().replace(".", ""));
-                } else {
-                    if (subtitle.matches("Local Guide [0-9]+ reseñas?")) {
-                        isLocalGuide = false;
-                        numReviewsAuthor = Integer.parseInt(subtitle.split(" ")[2].replace(".", ""));
-                    } else {
-                        isLocalGuide = !subtitle.trim().equals("");
-                        numReviewsAuthor = 0;
-                    }
-                }
-                System.out.println("IsLocalGuide: " + isLocalGuide);
-                System.out.println("NumReviewsAuthor: " + numReviewsAuthor);
+    /**
+     * Reads the reviews of the winery while the list is scrolled. After each scroll only the reviews appended to
+     * the list are taken from the browser and processed, until the number of reviews stops growing.
+     *
+     * If the winery has a journal checkpoint, the reviews already written are skipped by their fingerprints wherever
+     * they appear, as the order of the list changes between sessions and skipping the first reviews could lose
+     * reviews never read. If there are reviews of a previous run, the list is sorted by the newest and read until a
+     * known review appears.
+     *
+     * @param driver Browser session with the list of reviews opened
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @param title Name of the winery indicated in Google Maps
+     * @param dateExtractData Date in which the reviews are read
+     * @param snapshot The snapshot where the reviews read are stored, or null
+     * @param output The sinks of the rows of the winery
+     * @return Number of reviews of the winery written, including those of previous runs
+     * @throws InterruptedException if any thread has interrupted the current thread while waiting for the page
+     */
+    private int readReviews(WebDriver driver, String name, URL url, String title, String dateExtractData, SnapshotWriter snapshot, WineryOutput output) throws InterruptedException {
 
-                if (e.getElementsByClass("section-review-numerical-rating") != null && e.getElementsByClass("section-review-numerical-rating").size() > 0) {
-                    rankingReview = String.valueOf(e.getElementsByClass("section-review-numerical-rating").text().trim().charAt(0));
-                } else {
-                    rankingReview = e.getElementsByClass("section-review-stars").attr("aria-label").trim().split(" ")[0];
-                }
-                System.out.println("RankingReview: " + rankingReview);
+        LOGGER.info("*** Start reading the reviews of winery's page {} ***", title);
 
-                if (e.getElementsByClass("section-review-publish-date-and-source") != null && e.getElementsByClass("section-review-publish-date-and-source").size() > 0) {
-                    dateReview = e.getElementsByClass("section-review-publish-date-and-source").first().text().replaceAll(" en Google", "");
-                } else {
-                    dateReview = e.getElementsByClass("section-review-publish-date").text();
-                }
-                System.out.println("DateReview: " + dateReview);
+        JavascriptExecutor js = (JavascriptExecutor) driver;
+        this.pageWaiter.until(driver, "moreReviews", ExpectedConditions.presenceOfAllElementsLocatedBy(By.className("section-review")));
 
-                numPhotoReview = e.getElementsByAttributeValue("aria-label", "Foto").size();
-                System.out.println("NumPhotoReview: " + numPhotoReview);
+        Set<Long> known = null;
+        boolean stopAtKnown = false;
+        if (this.knownReviews != null) {
+            known = this.knownReviews.get(title);
+            stopAtKnown = !known.isEmpty() && this.sortByNewest(driver);
+            if (!known.isEmpty() && !stopAtKnown) {
+                LOGGER.warn("The reviews of the winery {} could not be sorted by the newest. Reading all of them...", title);
+            }
+        }
 
-                dateAnswer = e.getElementsByClass("section-review-owner-response").select(".section-review-owner-response-subtitle").text();
-                System.out.println("DateAnswer: " + dateAnswer);
+        js.executeScript(EXPAND_REVIEWS_SCRIPT);
+        this.pageWaiter.untilSettled(driver, "expandReviews");
 
-                if (e.getElementsByClass("section-review-thumbs-up-count").text().trim().equals("")) {
-                    likesReview = 0;
-                } else {
-                    likesReview = Integer.parseInt(e.getElementsByClass("section-review-thumbs-up-count").text().trim());
-                }
-                System.out.println("LikesReview: " + likesReview);
+        CrawlJournal journal = this.journal;
+        int numSaved = (journal != null) ? journal.getReviewsWritten(name, url) : 0;
+        Set<Long> saved = (journal != null) ? journal.getFingerprints(name, url) : Collections.emptySet();
+        if (!saved.isEmpty()) {
+            LOGGER.info("*** Skipping the {} reviews already saved of the winery {} ***", saved.size(), title);
+        }
 
-                textReview = e.getElementsByClass("section-review-text").text().trim();
-                String[] splitTextReview = textReview.split("\\(Original\\)");
-                String textReviewOriginal;
-                if (splitTextReview.length > 1) {
-                    textReview = splitTextReview[0].replaceAll("\\(Traducido por Google\\)", "").trim();
-                    textReviewOriginal = splitTextReview[1].trim();
-                } else {
-                    textReviewOriginal = textReview.trim();
-                }
-                System.out.println("TextReview: " + textReview);
-                System.out.println("TextReviewOriginal: " + textReviewOriginal);
-
-                List<DetectedLanguage> langList = this.languageDetector.getProbabilities(new StringBuffer(textReviewOriginal));
-
-                LdLocale bestlang = null;
-                double prob = 0.0;
-                for (DetectedLanguage lang : langList) {
-                    if (lang.getProbability() > prob) {
-                        bestlang = lang.getLocale();
-                        prob = lang.getProbability();
-                    }
+        int[] numWritten = {numSaved};
+        ReviewPipeline pipeline = this.openPipeline(output, journal, name, url, numWritten);
+        int contReview = numSaved + 1;
+        try {
+            Elements reviews = this.readNewReviews(js, snapshot);
+            boolean reachedKnown = this.removeKnownReviews(reviews, known, saved);
+            contReview = this.processReviews(pipeline, reviews, title, dateExtractData, contReview);
+            while (!(stopAtKnown && reachedKnown) && driver.findElements(By.className("section-loading")).size() > 0) {
+                int numLoaded = driver.findElements(By.className("section-review")).size();
+                this.metrics.increment("scroll.reviews");
+                js.executeScript("document.getElementsByClassName(\"section-loading\")[0].scrollIntoView()");
+                if (!this.pageWaiter.untilCountGrows(driver, "reviewScroll", "section-review", numLoaded)) {
+                    break;
                 }
+                js.executeScript(EXPAND_REVIEWS_SCRIPT);
+                this.pageWaiter.untilSettled(driver, "expandReviews");
+                reviews = this.readNewReviews(js, snapshot);
+                reachedKnown = this.removeKnownReviews(reviews, known, saved);
+                contReview = this.processReviews(pipeline, reviews, title, dateExtractData, contReview);
+            }
+            js.executeScript(EXPAND_REVIEWS_SCRIPT);
+            this.pageWaiter.untilSettled(driver, "expandReviews");
+            reviews = this.readNewReviews(js, snapshot);
+            this.removeKnownReviews(reviews, known, saved);
+            contReview = this.processReviews(pipeline, reviews, title, dateExtractData, contReview);
+            if (stopAtKnown && reachedKnown && snapshot != null) {
+                // The older reviews were not read, so the snapshot can not replace a complete one
+                snapshot.markIncomplete();
+            }
+        } catch (RuntimeException | InterruptedException e) {
+            pipeline.abort();
+            throw e;
+        }
+        pipeline.finish();
 
-                if (bestlang != null) {
-                    langTextReview = bestlang.getLanguage().toUpperCase();
-                    langReliabilityTextReview = prob;
-                } else {
-                    langTextReview = "UND";
-                    langReliabilityTextReview = -1.0;
-                }
+        LOGGER.info("*** Saved {} reviews of the winery {} ***", numWritten[0] - numSaved, title);
+        return numWritten[0];
+    }
 
-                System.out.println("LangTextReview: " + langTextReview);
-                System.out.println("LangReliabilityTextReview: " + langReliabilityTextReview);
+    /**
+     * Sorts the list of reviews by the newest
+     *
+     * @param driver Browser session with the list of reviews opened
+     * @return True if the list has been sorted
+     * @throws InterruptedException if any thread has interrupted the current thread while waiting for the page
+     */
+    private boolean sortByNewest(WebDriver driver) throws InterruptedException {
 
-                textAnswer = e.getElementsByClass("section-review-owner-response").select(".section-review-text").text().trim();
-                String[] splitTextAnswer = textAnswer.split("\\(Original\\) ");
-                String textAnswerOriginal;
-                if (splitTextAnswer.length > 1) {
-                    textAnswer = splitTextAnswer[0].replaceAll("\\(Traducido por Google\\) ", "").trim();
-                    textAnswerOriginal = splitTextAnswer[1].trim();
-                } else {
-                    textAnswerOriginal = textAnswer.trim();
-                }
-                System.out.println("TextAnswer: " + textAnswer);
-                System.out.println("TextAnswerOriginal: " + textAnswerOriginal);
-                langList = this.languageDetector.getProbabilities(new StringBuffer(textAnswerOriginal));
-
-                bestlang = null;
-                prob = 0.0;
-                for (DetectedLanguage lang : langList) {
-                    if (lang.getProbability() > prob) {
-                        bestlang = lang.getLocale();
-                        prob = lang.getProbability();
-                    }
-                }
+        if (driver.findElements(By.cssSelector(SORT_BUTTON)).isEmpty()) {
+            return false;
+        }
+        driver.findElement(By.cssSelector(SORT_BUTTON)).click();
+        if (!this.pageWaiter.until(driver, "sortMenu", ExpectedConditions.elementToBeClickable(By.cssSelector(SORT_NEWEST)))) {
+            return false;
+        }
+        driver.findElement(By.cssSelector(SORT_NEWEST)).click();
+        this.pageWaiter.untilSettled(driver, "sortReviews");
+        return this.pageWaiter.until(driver, "moreReviews", ExpectedConditions.presenceOfAllElementsLocatedBy(By.className("section-review")));
+    }
 
-                if (bestlang != null) {
-                    langTextAnswer = bestlang.getLanguage().toUpperCase();
-                    langReliabilityTextAnswer = prob;
-                } else {
-                    langTextAnswer = "UND";
-                    langReliabilityTextAnswer = -1.0;
-                }
-                System.out.println("LangTextAnswer: " + langTextAnswer);
-                System.out.println("LangReliabilityTextAnswer: " + langReliabilityTextAnswer);
+    /**
+     * Removes the reviews read in a previous run and those already saved by an interrupted one
+     *
+     * @param reviews The elements of the reviews
+     * @param known The fingerprints of the reviews of the winery read in a previous run, or null
+     * @param saved The fingerprints of the reviews of the winery saved before the crawl was resumed
+     * @return True if any review was read in a previous run
+     */
+    private boolean removeKnownReviews(Elements reviews, Set<Long> known, Set<Long> saved) {
 
-                System.out.println("**************************************************");
+        if ((known == null || known.isEmpty()) && saved.isEmpty()) {
+            return false;
+        }
 
-                this.reviewsCSV.put("title", title);
-                this.reviewsCSV.put("author", author);
-                if (isLocalGuide) {
-                    this.reviewsCSV.put("isLocalGuide", 1);
-                } else {
-                    this.reviewsCSV.put("isLocalGuide", 0);
-                }
-                this.reviewsCSV.put("numReviewsAuthor", numReviewsAuthor);
-                this.reviewsCSV.put("rankingReview", rankingReview);
-                this.reviewsCSV.put("dateExtractData", dateExtractData);
-                this.reviewsCSV.put("dateReview", dateReview);
-                this.reviewsCSV.put("textReviewOriginal", textReviewOriginal);
+        boolean removed = false;
+        Iterator<Element> it = reviews.iterator();
+        while (it.hasNext()) {
+            Element e = it.next();
+            String author = e.getElementsByClass("section-review-title").text();
+            String[] splitTextReview = e.getElementsByClass("section-review-text").text().trim().split("\\(Original\\)");
+            String textReviewOriginal = (splitTextReview.length > 1) ? splitTextReview[1].trim() : splitTextReview[0].trim();
+            long fingerprint = KnownReviews.fingerprint(author, textReviewOriginal);
+            if (known != null && known.contains(fingerprint)) {
+                it.remove();
+                removed = true;
+            } else if (saved.contains(fingerprint)) {
+                it.remove();
+            }
+        }
+        return removed;
+    }
 
-                Trio<String, String, Double> outputEmojisReview = this.manageEmojis(textReview);
-                textReview = outputEmojisReview.getObj1();
-                String emojisTextReview = outputEmojisReview.getObj2();
-                Double emojisPolarityReview = outputEmojisReview.getObj3();
+    /**
+     * Takes from the browser the reviews which have not been read yet and marks them as read. Each review is parsed
+     * on its own, so a review waiting in the pipeline only keeps its own elements alive.
+     *
+     * @param js Browser session with the list of reviews opened
+     * @param snapshot The snapshot where the reviews read are stored, or null
+     * @return The new reviews
+     */
+    private Elements readNewReviews(JavascriptExecutor js, SnapshotWriter snapshot) {
 
-                Trio<String, String, Double> outputEmoticonsReview = this.manageEmoticons(textReview);
-                textReview = outputEmoticonsReview.getObj1();
-                String emoticonsTextReview = outputEmoticonsReview.getObj2();
-                Double emoticonsPolarityReview = outputEmoticonsReview.getObj3();
+        Elements reviews = new Elements();
+        Object html = js.executeScript(NEW_REVIEWS_SCRIPT);
+        if (!(html instanceof List)) {
+            return reviews;
+        }
 
-                this.reviewsCSV.put("textReview", textReview);
-                this.reviewsCSV.put("emojisTextReview", emojisTextReview);
-                this.reviewsCSV.put("emojisPolarityReview", emojisPolarityReview);
+        for (Object review : (List<?>) html) {
+            if (snapshot != null) {
+                snapshot.writeReview(review.toString());
+            }
+            long start = this.metrics.start();
+            Element e = parseReviewHtml(review.toString());
+            this.metrics.stop("parse.review", start);
+            if (e != null) {
+                reviews.add(e);
+            }
+        }
+        return reviews;
+    }
 
-                this.reviewsCSV.put("emoticonsTextReview", emoticonsTextReview);
-                this.reviewsCSV.put("emoticonsPolarityReview", emoticonsPolarityReview);
+    /**
+     * @param html The HTML of a review
+     * @return The element of the review, or null if the HTML is not a review
+     */
+    static Element parseReviewHtml(String html) {
 
-                this.reviewsCSV.put("langTextReview", langTextReview);
-                this.reviewsCSV.put("langReliabilityTextReview", langReliabilityTextReview);
-                this.reviewsCSV.put("numPhotoReview", numPhotoReview);
-                this.reviewsCSV.put("likesReview", likesReview);
+        Element e = Jsoup.parseBodyFragment(html).body().children().first();
+        return (e != null && e.hasClass("section-review")) ? e : null;
+    }
 
-                this.reviewsCSV.put("dateAnswer", dateAnswer);
-                this.reviewsCSV.put("textAnswerOriginal", textAnswerOriginal);
+    /**
+     * Creates the pipeline which processes and saves the reviews of a winery
+     *
+     * @param output The sinks of the rows of the winery
+     * @param journal The journal where the progress of the winery is recorded, or null
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @param numWritten Number of reviews of the winery written, counted by the writer of the pipeline. It must be
+     *                   read once the pipeline has finished
+     * @return The pipeline
+     */
+    private ReviewPipeline openPipeline(WineryOutput output, CrawlJournal journal, String name, URL url, int[] numWritten) {
+
+        // Only used by the writer of the pipeline
+        List<Long> written = new ArrayList<>(CHECKPOINT_REVIEWS);
+        return new ReviewPipeline(this.enrichers, PIPELINE_CAPACITY, review -> {
+            this.saveReview(output, review);
+            written.add(KnownReviews.fingerprint(review.author, review.textReviewOriginal));
+            numWritten[0]++;
+            if (numWritten[0] % CHECKPOINT_REVIEWS == 0) {
+                this.checkpoint(output, journal, CrawlJournal.REVIEWS, name, url, numWritten[0], written);
+                written.clear();
+            }
+        });
+    }
 
-                Trio<String, String, Double> outputEmojisAnswer = this.manageEmojis(textAnswer);
-                textAnswer = outputEmojisAnswer.getObj1();
-                String emojisTextAnswer = outputEmojisAnswer.getObj2();
-                Double emojiPolarityAnswer = outputEmojisAnswer.getObj3();
+    /**
+     * Sends a group of reviews to the pipeline which processes and saves them
+     *
+     * @param pipeline The pipeline of the winery
+     * @param reviews The elements of the reviews
+     * @param title Name of the winery indicated in Google Maps
+     * @param dateExtractData Date in which the reviews are read
+     * @param contReview Number of the first review of the group
+     * @return Number of the next review
+     * @throws InterruptedException if the thread is interrupted while the pipeline is full
+     */
+    private int processReviews(ReviewPipeline pipeline, Elements reviews, String title, String dateExtractData, int contReview) throws InterruptedException {
 
-                Trio<String, String, Double> outputEmoticonsAnswer = this.manageEmoticons(textAnswer);
-                textAnswer = outputEmoticonsAnswer.getObj1();
-                String emoticonsTextAnswer = outputEmoticonsAnswer.getObj2();
-                Double emoticonsPolarityAnswer = outputEmoticonsAnswer.getObj3();
+        for (Element e : reviews) {
+            int numReview = contReview;
+            contReview++;
+            pipeline.submit(() -> this.enricher.enrich(this.parseReview(e, title, dateExtractData, numReview)));
+        }
+        return contReview;
+    }
 
-                this.reviewsCSV.put("textAnswer", textAnswer);
+    /**
+     * Extracts the fields of a review. The texts are kept as they are read, to be enriched by
+     * {@link ReviewEnricher#enrich(Review)}
+     *
+     * @param e The element of the review
+     * @param title Name of the winery indicated in Google Maps
+     * @param dateExtractData Date in which the review is read
+     * @param contReview Number of the review in the winery
+     * @return The review, whose enrichment fields keep their default values
+     */
+    Review parseReview(Element e, String title, String dateExtractData, int contReview) {
+
+        long start = this.metrics.start();
+        Review review = new Review();
+        review.title = title;
+        review.dateExtractData = dateExtractData;
+
+        LOGGER.debug("Num review: {}", contReview);
+
+        REVIEW_PLAN.extract(e, review);
+
+        LOGGER.debug("Author: {}", review.author);
+        LOGGER.debug("IsLocalGuide: {}", review.isLocalGuide);
+        LOGGER.debug("NumReviewsAuthor: {}", review.numReviewsAuthor);
+        LOGGER.debug("RankingReview: {}", review.rankingReview);
+        LOGGER.debug("DateReview: {}", review.dateReview);
+        LOGGER.debug("NumPhotoReview: {}", review.numPhotoReview);
+        LOGGER.debug("DateAnswer: {}", review.dateAnswer);
+        LOGGER.debug("LikesReview: {}", review.likesReview);
+        LOGGER.debug("TextReview: {}", review.textReview);
+        LOGGER.debug("TextReviewOriginal: {}", review.textReviewOriginal);
+        LOGGER.debug("TextAnswer: {}", review.textAnswer);
+        LOGGER.debug("TextAnswerOriginal: {}", review.textAnswerOriginal);
+
+        this.metrics.stop("extract.review", start);
+        return review;
+    }
 
-                this.reviewsCSV.put("emojisTextAnswer", emojisTextAnswer);
-                this.reviewsCSV.put("emojisPolarityAnswer", emojiPolarityAnswer);
+    /**
+     * Flushes the rows of the winery and records a checkpoint of the winery in the journal
+     *
+     * @param output The sinks of the rows of the winery
+     * @param journal The journal, or null to not record the checkpoint
+     * @param state State of the winery
+     * @param name Winery name
+     * @param url Google Maps web address where the winery is located
+     * @param numReviews Number of reviews of the winery written
+     * @param written The fingerprints of the reviews written since the previous checkpoint
+     */
+    private void checkpoint(WineryOutput output, CrawlJournal journal, String state, String name, URL url, int numReviews, List<Long> written) {
 
-                this.reviewsCSV.put("emoticonsTextAnswer", emoticonsTextAnswer);
-                this.reviewsCSV.put("emoticonsPolarityAnswer", emoticonsPolarityAnswer);
+        if (journal == null) {
+            return;
+        }
+        output.flush();
+        journal.record(state, name, url, numReviews, written);
+    }
 
-                this.reviewsCSV.put("langTextAnswer", langTextAnswer);
-                this.reviewsCSV.put("langReliabilityTextAnswer", langReliabilityTextAnswer);
+    /**
+     * Writes a row in the CSV of winery information. The writer is shared by all the threads running wineries,
+     * unless the dataset is sharded
+     *
+     * @param output The sinks of the rows of the winery
+     * @param place The information of the winery
+     */
+    private void savePlace(WineryOutput output, Place place) {
 
-                System.out.println("*** Saving the " + contReview + " review of the winery " + title + " ***");
-                this.outputReviewsCSV.addRow(this.reviewsCSV.values().toArray());
-                this.outputReviewsCSV.flushAndClose();
-                System.out.println("*** Saved the " + contReview + " review of the winery " + title + " ***");
+        long start = this.metrics.start();
+        output.places.addRecord(place);
+        this.metrics.stop("write.place", start);
+        this.metrics.increment("places");
+    }
 
-                contReview++;
-            }
-            Thread.sleep(1000);
-        } else {
-            System.out.println("*** There are not reviews of the winery " + title + " ***");
-        }
-        System.out.println("--- End of data collection from winery " + name + " ---");
+    /**
+     * Writes a row in the CSV of winery reviews. The writer is shared by all the threads running wineries, unless
+     * the dataset is sharded
+     *
+     * @param output The sinks of the rows of the winery
+     * @param review The review
+     */
+    private void saveReview(WineryOutput output, Review review) {
+
+        long start = this.metrics.start();
+        output.reviews.addRecord(review);
+        this.metrics.stop("write.review", start);
+        this.metrics.increment("reviews");
     }
 
     /**
@@ -645,30 +1182,7 @@ public class WebExtractor {
      * @return Trio structure with the text modified, the emojis found and the polarity calculated
      */
     public Trio<String, String, Double> manageEmojis(String text) {
-
-        String value = "";
-        StringBuffer sb = new StringBuffer(text);
-        int numEmojis = 0;
-        double score = 0;
-        for (String emoji: this.emojiDictionary.keySet()) {
-            Pattern pat = this.emojiDictionary.get(emoji).getObj1();
-            Matcher match = pat.matcher(sb);
-            int last = 0;
-            while (match.find(last)) {
-                last = match.start(0) + 1;
-                // Now replaces emoji pattern by its meaning
-                score += this.emojiDictionary.get(emoji).getObj3();
-                numEmojis++;
-                value += emoji;
-                sb = sb.replace(match.start(0),match.end(0)," " + this.emojiDictionary.get(emoji).getObj2() + " ");
-            }
-        }
-        //Calculate arithmetic mean and store in a property
-        Double mean = score / (new Double(numEmojis));
-        if (Double.isNaN(mean)) {
-            mean = 0.0;
-        }
-        return  new Trio<>(sb.toString().trim(), value, mean) ;
+        return this.enricher.manageEmojis(text);
     }
 
     /**
@@ -678,29 +1192,6 @@ public class WebExtractor {
      * @return Trio structure with the text modified, the emoticons found and the polarity calculated
      */
     public Trio<String, String, Double> manageEmoticons(String text) {
-
-        String value = "";
-        StringBuffer sb = new StringBuffer(text);
-        int numEmoticons = 0;
-        double score = 0;
-        for (String emoticon: this.emoticonDictionary.keySet()) {
-            Pattern pat = this.emoticonDictionary.get(emoticon).getObj1();
-            Matcher match = pat.matcher(sb);
-            int last = 0;
-            while (match.find(last)) {
-                last = match.start(0) + 1;
-                // Now replaces emoji pattern by its meaning
-                score += this.emoticonDictionary.get(emoticon).getObj3();
-                numEmoticons++;
-                value += emoticon;
-                sb = sb.replace(match.start(0),match.end(0)," " + this.emoticonDictionary.get(emoticon).getObj2() + " ");
-            }
-        }
-        //Calculate arithmetic mean and store in a property
-        Double mean = score / (new Double(numEmoticons));
-        if (Double.isNaN(mean)) {
-            mean = 0.0;
-        }
-        return  new Trio<>(sb.toString().trim(), value, mean) ;
+        return this.enricher.manageEmoticons(text);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,349 @@
+package org.EnoTurEPO.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, timers and histograms of the stages of a crawl, which can be updated from several threads at the same
+ * time without locks. Timers and histograms keep the number of values, their sum, their maximum and their
+ * distribution in buckets of powers of two, from which their percentiles are estimated.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class CrawlMetrics {
+
+    /**
+     * Distribution of the values recorded by a timer or a histogram
+     */
+    private static class Histogram {
+
+        /**
+         * Number of values
+         */
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * Sum of the values
+         */
+        private final LongAdder sum = new LongAdder();
+
+        /**
+         * Maximum value
+         */
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Number of values of each bucket. The bucket i keeps the values in [2^(i-1), 2^i), and the bucket 0 the zeros
+         */
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+        /**
+         * @param value A value, negative values are recorded as zero
+         */
+        void record(long value) {
+
+            value = Math.max(value, 0);
+            this.count.increment();
+            this.sum.add(value);
+            this.max.accumulate(value);
+            this.buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        }
+
+        /**
+         * @param quantile The quantile, between 0 and 1
+         * @return The upper bound of the bucket where the quantile is, never greater than the maximum
+         */
+        long percentile(double quantile) {
+
+            long target = (long) Math.ceil(quantile * this.count.sum());
+            long seen = 0;
+            for (int i = 0; i < this.buckets.length(); i++) {
+                seen += this.buckets.get(i);
+                if (seen >= target && seen > 0) {
+                    long upper = (i == 0) ? 0 : (i >= 63) ? Long.MAX_VALUE : (1L << i) - 1;
+                    return Math.min(upper, this.max.get());
+                }
+            }
+            return this.max.get();
+        }
+    }
+
+    /**
+     * The counters, by name
+     */
+    private final Map<String, LongAdder> counters;
+
+    /**
+     * The timers, by name, in nanoseconds
+     */
+    private final Map<String, Histogram> timers;
+
+    /**
+     * The histograms, by name
+     */
+    private final Map<String, Histogram> histograms;
+
+    /**
+     * The thread which prints the summary periodically, or null if it has not been started
+     */
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Constructs a new instance of {@link CrawlMetrics} without metrics
+     */
+    public CrawlMetrics() {
+
+        this.counters = new ConcurrentSkipListMap<>();
+        this.timers = new ConcurrentSkipListMap<>();
+        this.histograms = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Adds one to a counter
+     *
+     * @param counter The name of the counter
+     */
+    public void increment(String counter) {
+        this.increment(counter, 1);
+    }
+
+    /**
+     * Adds an amount to a counter
+     *
+     * @param counter The name of the counter
+     * @param amount The amount added
+     */
+    public void increment(String counter, long amount) {
+        this.counters.computeIfAbsent(counter, k -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * @return Returns the time to pass to {@link #stop(String, long)} when the timed stage finishes
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time of a stage
+     *
+     * @param timer The name of the timer
+     * @param start The time returned by {@link #start()} when the stage began
+     */
+    public void stop(String timer, long start) {
+        this.timers.computeIfAbsent(timer, k -> new Histogram()).record(System.nanoTime() - start);
+    }
+
+    /**
+     * Records a value in a histogram
+     *
+     * @param histogram The name of the histogram
+     * @param value The value
+     */
+    public void record(String histogram, long value) {
+        this.histograms.computeIfAbsent(histogram, k -> new Histogram()).record(value);
+    }
+
+    /**
+     * @param counter The name of the counter
+     * @return Returns the value of the counter, 0 if it has not been incremented
+     */
+    public long getCount(String counter) {
+
+        LongAdder adder = this.counters.get(counter);
+        return (adder != null) ? adder.sum() : 0;
+    }
+
+    /**
+     * @return Returns a summary with the value of each counter, and the number of values, the mean, the percentiles
+     * 50, 95 and 99 and the maximum of each timer in milliseconds and of each histogram
+     */
+    public String summary() {
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LongAdder> entry : this.counters.entrySet()) {
+            sb.append(entry.getKey()).append(": ").append(entry.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : this.timers.entrySet()) {
+            appendHistogram(sb, entry.getKey(), entry.getValue(), 1e6, " ms");
+        }
+        for (Map.Entry<String, Histogram> entry : this.histograms.entrySet()) {
+            appendHistogram(sb, entry.getKey(), entry.getValue(), 1, "");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes all the metrics to a file separated by tabs, with a row for each metric and the columns type, name,
+     * count, sum, mean, p50, p95, p99 and max. Timers are written in milliseconds.
+     *
+     * @param file The path of the file, which is overwritten
+     * @throws IOException if the file can not be written
+     */
+    public void export(String file) throws IOException {
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            writer.println("type\tname\tcount\tsum\tmean\tp50\tp95\tp99\tmax");
+            for (Map.Entry<String, LongAdder> entry : this.counters.entrySet()) {
+                long value = entry.getValue().sum();
+                writer.println("counter\t" + entry.getKey() + "\t" + value + "\t" + value + "\t\t\t\t\t");
+            }
+            for (Map.Entry<String, Histogram> entry : this.timers.entrySet()) {
+                writer.println("timer\t" + entry.getKey() + "\t" + formatRow(entry.getValue(), 1e6));
+            }
+            for (Map.Entry<String, Histogram> entry : this.histograms.entrySet()) {
+                writer.println("histogram\t" + entry.getKey() + "\t" + formatRow(entry.getValue(), 1));
+            }
+        }
+    }
+
+    /**
+     * Reads the mean of each timer and histogram of a file written by {@link #export(String)}
+     *
+     * @param file The path of the file
+     * @return The means by the name of their metric, timers in milliseconds, or none if the file does not exist
+     * @throws IOException if the file can not be read
+     */
+    public static Map<String, Double> loadMeans(String file) throws IOException {
+
+        Map<String, Double> means = new HashMap<>();
+        if (!new File(file).exists()) {
+            return means;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length >= 5 && !fields[0].equals("counter") && !fields[4].isEmpty()) {
+                    try {
+                        means.put(fields[1], Double.parseDouble(fields[4]));
+                    } catch (NumberFormatException e) {
+                        // A line which is not valid is ignored
+                    }
+                }
+            }
+        }
+        return means;
+    }
+
+    /**
+     * @param timer The name of the timer
+     * @return Returns the mean of the timer in milliseconds, 0 if it has no values
+     */
+    public double getMeanMillis(String timer) {
+
+        Histogram histogram = this.timers.get(timer);
+        long count = (histogram != null) ? histogram.count.sum() : 0;
+        return (count > 0) ? histogram.sum.sum() / (double) count / 1e6 : 0;
+    }
+
+    /**
+     * @param timer The name of the timer
+     * @param quantile The quantile, between 0 and 1
+     * @return Returns the estimated percentile of the timer in milliseconds, 0 if it has no values
+     */
+    public double getPercentileMillis(String timer, double quantile) {
+
+        Histogram histogram = this.timers.get(timer);
+        return (histogram != null) ? histogram.percentile(quantile) / 1e6 : 0;
+    }
+
+    /**
+     * @param histogram The name of the histogram
+     * @return Returns the mean of the histogram, 0 if it has no values
+     */
+    public double getMean(String histogram) {
+
+        Histogram values = this.histograms.get(histogram);
+        long count = (values != null) ? values.count.sum() : 0;
+        return (count > 0) ? values.sum.sum() / (double) count : 0;
+    }
+
+    /**
+     * Prints the summary periodically until {@link #close()} is called
+     *
+     * @param period The time between two summaries
+     * @param unit The unit of the period
+     */
+    public synchronized void startReporter(long period, TimeUnit unit) {
+
+        if (this.reporter != null) {
+            return;
+        }
+        this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reporter.scheduleAtFixedRate(() -> System.out.println("--- Metrics of the crawl ---\n" + this.summary()),
+                period, period, unit);
+    }
+
+    /**
+     * Stops printing the summary
+     */
+    public synchronized void close() {
+
+        if (this.reporter != null) {
+            this.reporter.shutdownNow();
+            this.reporter = null;
+        }
+    }
+
+    /**
+     * @param sb The summary
+     * @param name The name of the metric
+     * @param histogram The values of the metric
+     * @param scale The divisor applied to the values
+     * @param unit The unit of the values after scaling them
+     */
+    private static void appendHistogram(StringBuilder sb, String name, Histogram histogram, double scale, String unit) {
+
+        long count = histogram.count.sum();
+        if (count == 0) {
+            return;
+        }
+        sb.append(name).append(": ").append(count).append(" values, ")
+                .append(format(histogram.sum.sum() / (double) count / scale)).append(unit).append(" mean, ")
+                .append(format(histogram.percentile(0.5) / scale)).append(unit).append(" p50, ")
+                .append(format(histogram.percentile(0.95) / scale)).append(unit).append(" p95, ")
+                .append(format(histogram.percentile(0.99) / scale)).append(unit).append(" p99, ")
+                .append(format(histogram.max.get() / scale)).append(unit).append(" max\n");
+    }
+
+    /**
+     * @param histogram The values of a metric
+     * @param scale The divisor applied to the values
+     * @return The count, sum, mean, percentiles and maximum of the metric separated by tabs
+     */
+    private static String formatRow(Histogram histogram, double scale) {
+
+        long count = histogram.count.sum();
+        double sum = histogram.sum.sum() / scale;
+        return count + "\t" + format(sum) + "\t" + format((count > 0) ? sum / count : 0) + "\t"
+                + format(histogram.percentile(0.5) / scale) + "\t" + format(histogram.percentile(0.95) / scale) + "\t"
+                + format(histogram.percentile(0.99) / scale) + "\t" + format(histogram.max.get() / scale);
+    }
+
+    /**
+     * @param value A value
+     * @return The value with up to three decimals
+     */
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value).replaceAll("\\.?0+$", "");
+    }
+}
@@ -0,0 +1,256 @@
+package org.EnoTurEPO.util;
+
+import com.optimaize.langdetect.DetectedLanguage;
+import com.optimaize.langdetect.LanguageDetector;
+import com.optimaize.langdetect.LanguageDetectorBuilder;
+import com.optimaize.langdetect.ngram.NgramExtractors;
+import com.optimaize.langdetect.profiles.LanguageProfile;
+import com.optimaize.langdetect.profiles.LanguageProfileReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Service which identifies the language of the texts of the reviews. The built-in language profiles are loaded
+ * once per JVM and shared by all the identifiers, which can be called from several threads at the same time.
+ * Blank and very short texts are not sent to the detector, and the results are kept in a bounded LRU cache, as
+ * many texts repeat, such as the templated answers of the owners.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class LanguageIdentifier {
+
+    /**
+     * Language of the texts whose language is not identified
+     */
+    public static final String UNDEFINED = "UND";
+
+    /**
+     * Reliability of the texts whose language is not identified
+     */
+    public static final double UNDEFINED_RELIABILITY = -1.0;
+
+    /**
+     * Default number of texts whose language is cached
+     */
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    /**
+     * Default minimum number of letters of a text to identify its language
+     */
+    public static final int DEFAULT_MIN_LETTERS = 3;
+
+    /**
+     * The identifiers created, by their candidate languages
+     */
+    private static final Map<String, LanguageIdentifier> INSTANCES = new HashMap<>();
+
+    /**
+     * The built-in language profiles, loaded on first use
+     */
+    private static List<LanguageProfile> builtInProfiles;
+
+    /**
+     * The detector of the candidate languages, or null if the profiles could not be loaded
+     */
+    private final LanguageDetector languageDetector;
+
+    /**
+     * Minimum number of letters of a text to identify its language
+     */
+    private final int minLetters;
+
+    /**
+     * The results of the texts identified, by their normalized text, in access order
+     */
+    private final Map<String, Result> cache;
+
+    /**
+     * Language identified in a text and its reliability
+     */
+    public static final class Result {
+
+        /**
+         * The code of the language in upper case, or {@link #UNDEFINED}
+         */
+        private final String language;
+
+        /**
+         * The probability of the language, or {@link #UNDEFINED_RELIABILITY}
+         */
+        private final double reliability;
+
+        /**
+         * Constructs a new instance of {@link Result}
+         *
+         * @param language The code of the language in upper case, or {@link #UNDEFINED}
+         * @param reliability The probability of the language, or {@link #UNDEFINED_RELIABILITY}
+         */
+        private Result(String language, double reliability) {
+            this.language = language;
+            this.reliability = reliability;
+        }
+
+        /**
+         * @return Returns the code of the language in upper case, or {@link #UNDEFINED}
+         */
+        public String getLanguage() {
+            return this.language;
+        }
+
+        /**
+         * @return Returns the probability of the language, or {@link #UNDEFINED_RELIABILITY}
+         */
+        public double getReliability() {
+            return this.reliability;
+        }
+    }
+
+    /**
+     * Result of the texts whose language is not identified
+     */
+    private static final Result UNDEFINED_RESULT = new Result(UNDEFINED, UNDEFINED_RELIABILITY);
+
+    /**
+     * Constructs a new instance of {@link LanguageIdentifier}
+     *
+     * @param languages Codes of the candidate languages (es, gl, en, pt...), or empty to use all the built-in ones
+     * @param cacheSize Number of texts whose language is cached
+     * @param minLetters Minimum number of letters of a text to identify its language
+     */
+    public LanguageIdentifier(Collection<String> languages, int cacheSize, int minLetters) {
+
+        List<LanguageProfile> profiles = profiles(languages);
+        this.languageDetector = (profiles.isEmpty()) ? null : LanguageDetectorBuilder.create(NgramExtractors.standard())
+                .withProfiles(profiles)
+                .build();
+        this.minLetters = minLetters;
+        this.cache = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                return this.size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return Returns the identifier shared by the JVM with all the built-in languages
+     */
+    public static LanguageIdentifier getInstance() {
+        return getInstance(Collections.emptyList());
+    }
+
+    /**
+     * @param languages Codes of the candidate languages (es, gl, en, pt...), or empty to use all the built-in ones
+     * @return Returns the identifier shared by the JVM with the candidate languages
+     */
+    public static synchronized LanguageIdentifier getInstance(Collection<String> languages) {
+
+        TreeSet<String> key = new TreeSet<>();
+        for (String language : languages) {
+            key.add(language.trim().toLowerCase(Locale.ROOT));
+        }
+        return INSTANCES.computeIfAbsent(key.toString(),
+                k -> new LanguageIdentifier(key, DEFAULT_CACHE_SIZE, DEFAULT_MIN_LETTERS));
+    }
+
+    /**
+     * Identifies the language of a text
+     *
+     * @param text The text
+     * @return The most probable language of the text and its probability, or {@link #UNDEFINED} if it has not
+     * enough letters or no language is identified
+     */
+    public Result detect(String text) {
+
+        String normalized = normalize(text);
+        if (this.languageDetector == null || countLetters(normalized) < this.minLetters) {
+            return UNDEFINED_RESULT;
+        }
+
+        Result result;
+        synchronized (this.cache) {
+            result = this.cache.get(normalized);
+        }
+        if (result != null) {
+            return result;
+        }
+
+        result = UNDEFINED_RESULT;
+        double prob = 0.0;
+        for (DetectedLanguage lang : this.languageDetector.getProbabilities(normalized)) {
+            if (lang.getProbability() > prob) {
+                prob = lang.getProbability();
+                result = new Result(lang.getLocale().getLanguage().toUpperCase(), prob);
+            }
+        }
+
+        synchronized (this.cache) {
+            this.cache.put(normalized, result);
+        }
+        return result;
+    }
+
+    /**
+     * @param text A text
+     * @return The text without spaces at the ends and with single spaces between its words
+     */
+    private static String normalize(String text) {
+        return (text == null) ? "" : text.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * @param text A text
+     * @return Number of letters of the text
+     */
+    private static int countLetters(String text) {
+
+        int letters = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetter(text.charAt(i))) {
+                letters++;
+            }
+        }
+        return letters;
+    }
+
+    /**
+     * @param languages Codes of the candidate languages, or empty to use all the built-in ones
+     * @return The built-in profiles of the candidate languages
+     */
+    private static synchronized List<LanguageProfile> profiles(Collection<String> languages) {
+
+        if (builtInProfiles == null) {
+            try {
+                builtInProfiles = new LanguageProfileReader().readAllBuiltIn();
+            } catch (IOException e) {
+                System.err.println("Language detector profiles could not be loaded");
+                return Collections.emptyList();
+            }
+        }
+        if (languages.isEmpty()) {
+            return builtInProfiles;
+        }
+
+        List<LanguageProfile> profiles = new ArrayList<>();
+        for (LanguageProfile profile : builtInProfiles) {
+            for (String language : languages) {
+                if (profile.getLocale().getLanguage().equalsIgnoreCase(language.trim())) {
+                    profiles.add(profile);
+                }
+            }
+        }
+        if (profiles.isEmpty()) {
+            System.err.println("There are not language profiles for " + languages);
+        }
+        return profiles;
+    }
+}
@@ -0,0 +1,422 @@
+package org.EnoTurEPO.util;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Loader of the lexicons of emojis and emoticons. A lexicon is read from its .json source, or from its compiled
+ * .lex file when it is not older than the source, and the matcher of each file is built once per JVM and shared by
+ * all the threads. The compiled file is the automaton already built by {@link LexiconMatcher}, so it is loaded by
+ * mapping the file and copying its arrays in bulk, without adding the entries to a trie again. Its layout is:
+ * <pre>
+ * int magic ("ENOL"), int version, byte whitespace bounded
+ * strings of the synsets, strings of the entries, the synset of each entry (ints)
+ * int number of distinct polarities, the polarities (doubles), the polarity of each entry (ints)
+ * int number of nodes, the first child of each node plus the number of children (ints)
+ * the chars of the children (chars), the node of each child (ints)
+ * the failure link (ints), the output link (ints) and the entry (ints) of each node
+ * </pre>
+ * A list of strings is stored as int number of strings, the end of each string (ints), int number of chars and the
+ * chars. The polarities are kept as the doubles of the source, so the mean polarity of a text does not change, but
+ * each distinct value is stored once.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class LexiconFile {
+
+    /**
+     * Extension of the source of a lexicon
+     */
+    public static final String JSON_EXTENSION = ".json";
+
+    /**
+     * Extension of a compiled lexicon
+     */
+    public static final String COMPILED_EXTENSION = ".lex";
+
+    /**
+     * Magic number at the beginning of a compiled lexicon, "ENOL"
+     */
+    private static final int MAGIC = 0x454E4F4C;
+
+    /**
+     * Version of the layout of a compiled lexicon
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * A matcher loaded and the modification time of the file it was loaded from
+     */
+    private static class Loaded {
+
+        /**
+         * Modification time of the file
+         */
+        private final long lastModified;
+
+        /**
+         * The matcher
+         */
+        private final LexiconMatcher matcher;
+
+        /**
+         * Constructs a new instance of {@link Loaded}
+         *
+         * @param lastModified Modification time of the file
+         * @param matcher The matcher
+         */
+        private Loaded(long lastModified, LexiconMatcher matcher) {
+
+            this.lastModified = lastModified;
+            this.matcher = matcher;
+        }
+    }
+
+    /**
+     * The matchers loaded, by the path of their file
+     */
+    private static final Map<String, Loaded> LOADED = new HashMap<>();
+
+    /**
+     * Constructor hidden, as all the methods are static
+     */
+    private LexiconFile() {
+    }
+
+    /**
+     * Loads a lexicon from its compiled file, or from its source if the compiled file does not exist, it is older
+     * than the source or it can not be read. The matcher is shared with the previous calls while the file does not
+     * change.
+     *
+     * @param path Path of the lexicon without extension, for example emojis/emojisID.es
+     * @param whitespaceBounded True if the entries must be surrounded by whitespaces, as emoticons are
+     * @return The matcher of the lexicon, already built
+     * @throws FileNotFoundException if neither the source nor the compiled file exist
+     */
+    public static synchronized LexiconMatcher load(String path, boolean whitespaceBounded) throws FileNotFoundException {
+
+        File json = new File(path + JSON_EXTENSION);
+        File compiled = new File(path + COMPILED_EXTENSION);
+        if (compiled.isFile() && (!json.isFile() || compiled.lastModified() >= json.lastModified())) {
+            Loaded loaded = LOADED.get(compiled.getAbsolutePath());
+            if (loaded != null && loaded.lastModified == compiled.lastModified()
+                    && loaded.matcher.isWhitespaceBounded() == whitespaceBounded) {
+                return loaded.matcher;
+            }
+            try {
+                LexiconMatcher matcher = readCompiled(compiled);
+                if (matcher.isWhitespaceBounded() == whitespaceBounded) {
+                    LOADED.put(compiled.getAbsolutePath(), new Loaded(compiled.lastModified(), matcher));
+                    return matcher;
+                }
+                System.err.println("The lexicon " + compiled + " was compiled with other bounds. Reading " + json + "...");
+            } catch (IOException e) {
+                System.err.println("The lexicon " + compiled + " could not be read: " + e.getMessage() + ". Reading " + json + "...");
+            }
+        }
+
+        Loaded loaded = LOADED.get(json.getAbsolutePath());
+        if (loaded != null && loaded.lastModified == json.lastModified()
+                && loaded.matcher.isWhitespaceBounded() == whitespaceBounded) {
+            return loaded.matcher;
+        }
+        LexiconMatcher matcher = readJson(json, whitespaceBounded);
+        LOADED.put(json.getAbsolutePath(), new Loaded(json.lastModified(), matcher));
+        return matcher;
+    }
+
+    /**
+     * Compiles the source of a lexicon, replacing its compiled file
+     *
+     * @param path Path of the lexicon without extension, for example emojis/emojisID.es
+     * @param whitespaceBounded True if the entries must be surrounded by whitespaces, as emoticons are
+     * @return Number of entries of the lexicon
+     * @throws IOException if the source can not be read or the compiled file can not be written
+     */
+    public static int compile(String path, boolean whitespaceBounded) throws IOException {
+
+        LexiconMatcher matcher = readJson(new File(path + JSON_EXTENSION), whitespaceBounded);
+        File compiled = new File(path + COMPILED_EXTENSION);
+        File tmpFile = new File(compiled.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            writeCompiled(matcher, out);
+        }
+        Files.move(tmpFile.toPath(), compiled.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return matcher.size();
+    }
+
+    /**
+     * Builds the matcher of a dictionary containing <entry,<polarity, synsetID>>
+     *
+     * @param file The .json file of the dictionary
+     * @param whitespaceBounded True if the entries must be surrounded by whitespaces, as emoticons are
+     * @return The matcher of the dictionary, already built
+     * @throws FileNotFoundException if the file does not exist
+     */
+    private static LexiconMatcher readJson(File file, boolean whitespaceBounded) throws FileNotFoundException {
+
+        InputStream is = new FileInputStream(file);
+        JsonReader rdr = Json.createReader(is);
+        JsonObject jsonObject = rdr.readObject();
+        rdr.close();
+
+        // The entries are added in HashMap order, which is the order the matches were always reported in
+        HashMap<String, JsonObject> entries = new HashMap<>();
+        for (String entry : jsonObject.keySet()) {
+            entries.put(entry, jsonObject.getJsonObject(entry));
+        }
+
+        LexiconMatcher matcher = new LexiconMatcher(whitespaceBounded);
+        for (String entry : entries.keySet()) {
+            matcher.add(entry, entries.get(entry).getString("synsetID"), entries.get(entry).getJsonNumber("polarity").doubleValue());
+        }
+        matcher.build();
+
+        return matcher;
+    }
+
+    /**
+     * Writes the automaton of a matcher, keeping the order of its entries
+     *
+     * @param matcher The matcher, already built
+     * @param out The output
+     * @throws IOException if the matcher can not be written
+     */
+    private static void writeCompiled(LexiconMatcher matcher, DataOutputStream out) throws IOException {
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte(matcher.isWhitespaceBounded() ? 1 : 0);
+
+        List<String> synsets = new ArrayList<>();
+        int[] entrySynsets = indexValues(matcher.size(), matcher::getSynsetID, synsets);
+        List<Double> polarities = new ArrayList<>();
+        int[] entryPolarities = indexValues(matcher.size(), matcher::getPolarity, polarities);
+        List<String> keys = new ArrayList<>(matcher.size());
+        for (int i = 0; i < matcher.size(); i++) {
+            keys.add(matcher.getKey(i));
+        }
+
+        writeStrings(out, synsets);
+        writeStrings(out, keys);
+        writeInts(out, entrySynsets);
+        out.writeInt(polarities.size());
+        for (double polarity : polarities) {
+            out.writeDouble(polarity);
+        }
+        writeInts(out, entryPolarities);
+
+        out.writeInt(matcher.getFail().length);
+        writeInts(out, matcher.getNodeStart());
+        for (char label : matcher.getLabels()) {
+            out.writeChar(label);
+        }
+        writeInts(out, matcher.getChildren());
+        writeInts(out, matcher.getFail());
+        writeInts(out, matcher.getOutput());
+        writeInts(out, matcher.getNodeEntry());
+    }
+
+    /**
+     * Replaces the value of each entry by its index in a list of the distinct values
+     *
+     * @param size Number of entries
+     * @param valueOf The value of an entry
+     * @param distinct The list where the distinct values are added, in order of appearance
+     * @param <T> The type of the values
+     * @return The index of the value of each entry
+     */
+    private static <T> int[] indexValues(int size, IntFunction<T> valueOf, List<T> distinct) {
+
+        Map<T, Integer> indexes = new HashMap<>();
+        int[] entryIndexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            T value = valueOf.apply(i);
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = distinct.size();
+                distinct.add(value);
+                indexes.put(value, index);
+            }
+            entryIndexes[i] = index;
+        }
+        return entryIndexes;
+    }
+
+    /**
+     * Writes a list of strings as the end of each string followed by all their chars
+     *
+     * @param out The output
+     * @param strings The strings
+     * @throws IOException if the strings can not be written
+     */
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+
+        out.writeInt(strings.size());
+        int end = 0;
+        for (String string : strings) {
+            end += string.length();
+            out.writeInt(end);
+        }
+        out.writeInt(end);
+        for (String string : strings) {
+            out.writeChars(string);
+        }
+    }
+
+    /**
+     * Writes the values of an array, without its length
+     *
+     * @param out The output
+     * @param values The values
+     * @throws IOException if the values can not be written
+     */
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Reads a compiled lexicon, mapping the file in memory
+     *
+     * @param file The compiled file
+     * @return The matcher of the lexicon, already built
+     * @throws IOException if the file can not be read or it is not a compiled lexicon
+     */
+    private static LexiconMatcher readCompiled(File file) throws IOException {
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a compiled lexicon");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("The version " + version + " of " + file + " is not supported");
+            }
+            boolean whitespaceBounded = buffer.get() != 0;
+
+            String[] synsets = readStrings(buffer);
+            String[] keys = readStrings(buffer);
+            int[] entrySynsets = readInts(buffer, keys.length);
+            double[] distinctPolarities = new double[checkedLength(buffer, 8)];
+            buffer.asDoubleBuffer().get(distinctPolarities);
+            buffer.position(buffer.position() + 8 * distinctPolarities.length);
+            int[] entryPolarities = readInts(buffer, keys.length);
+
+            String[] entrySynsetIDs = new String[keys.length];
+            double[] polarities = new double[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                if (entrySynsets[i] < 0 || entrySynsets[i] >= synsets.length
+                        || entryPolarities[i] < 0 || entryPolarities[i] >= distinctPolarities.length) {
+                    throw new IOException(file + " is corrupted");
+                }
+                entrySynsetIDs[i] = synsets[entrySynsets[i]];
+                polarities[i] = distinctPolarities[entryPolarities[i]];
+            }
+
+            int numNodes = checkedLength(buffer, 16);
+            int[] nodeStart = readInts(buffer, numNodes + 1);
+            int numChildren = nodeStart[numNodes];
+            if (numChildren < 0 || numChildren > buffer.remaining()) {
+                throw new IOException(file + " is corrupted");
+            }
+            char[] labels = new char[numChildren];
+            buffer.asCharBuffer().get(labels);
+            buffer.position(buffer.position() + 2 * numChildren);
+            int[] children = readInts(buffer, numChildren);
+            int[] fail = readInts(buffer, numNodes);
+            int[] output = readInts(buffer, numNodes);
+            int[] nodeEntry = readInts(buffer, numNodes);
+
+            return new LexiconMatcher(whitespaceBounded, keys, entrySynsetIDs, polarities, nodeStart, labels,
+                    children, fail, output, nodeEntry);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException(file + " is corrupted", e);
+        }
+    }
+
+    /**
+     * Reads a length which is followed by at least that number of values of a size
+     *
+     * @param buffer The mapped file
+     * @param valueSize Size in bytes of each value
+     * @return The length
+     * @throws IOException if the length is negative or the file is not long enough
+     */
+    private static int checkedLength(ByteBuffer buffer, int valueSize) throws IOException {
+
+        int length = buffer.getInt();
+        if (length < 0 || (long) length * valueSize > buffer.remaining()) {
+            throw new IOException("The length " + length + " is out of the file");
+        }
+        return length;
+    }
+
+    /**
+     * Reads a number of ints in bulk
+     *
+     * @param buffer The mapped file
+     * @param length Number of ints
+     * @return The ints
+     */
+    private static int[] readInts(ByteBuffer buffer, int length) {
+
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * length);
+        return values;
+    }
+
+    /**
+     * Reads a list of strings written by {@link #writeStrings(DataOutputStream, List)}
+     *
+     * @param buffer The mapped file
+     * @return The strings
+     * @throws IOException if the list is out of the file or its ends are not in order
+     */
+    private static String[] readStrings(ByteBuffer buffer) throws IOException {
+
+        int[] ends = readInts(buffer, checkedLength(buffer, 4));
+        char[] chars = new char[checkedLength(buffer, 2)];
+        buffer.asCharBuffer().get(chars);
+        buffer.position(buffer.position() + 2 * chars.length);
+
+        String[] strings = new String[ends.length];
+        int start = 0;
+        for (int i = 0; i < ends.length; i++) {
+            if (ends[i] < start || ends[i] > chars.length) {
+                throw new IOException("The strings are corrupted");
+            }
+            strings[i] = new String(chars, start, ends[i] - start);
+            start = ends[i];
+        }
+        return strings;
+    }
+}
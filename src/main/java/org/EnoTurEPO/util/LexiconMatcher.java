@@ -0,0 +1,607 @@
+package org.EnoTurEPO.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Multi-pattern matcher for a lexicon of emojis or emoticons based on an Aho-Corasick automaton.
+ * The automaton is built once and finds every entry of the lexicon in one left-to-right pass over the text,
+ * instead of running one regular expression per entry. While the entries are added the automaton is a trie of nodes;
+ * once it is built it is stored in flat arrays indexed by the number of each node in breadth-first order, which
+ * {@link LexiconFile} writes and reads back as they are.
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class LexiconMatcher {
+
+    /**
+     * A node of the trie while the entries are added
+     */
+    private static class Node {
+
+        /**
+         * Children of the node by their char, in ascending order
+         */
+        private final TreeMap<Character, Node> next = new TreeMap<>();
+
+        /**
+         * Index of the entry ending in this node or -1 if there is none
+         */
+        private int entry = -1;
+
+        /**
+         * Number of the node in breadth-first order, assigned when the automaton is built
+         */
+        private int id;
+    }
+
+    /**
+     * Buffers reused by the calls to {@link #replace(String)} of a thread, so a text is rewritten without allocating
+     * anything but the strings returned
+     */
+    private static class Scratch {
+
+        /**
+         * Capacity above which a buffer is not kept after a call, so a huge review does not pin its buffers
+         */
+        private static final int MAX_RETAINED = 1 << 16;
+
+        /**
+         * Longest entry (index + 1) starting at each position of the text
+         */
+        private int[] longest = new int[256];
+
+        /**
+         * Matches encoded as (entry << 32 | start)
+         */
+        private long[] matches = new long[16];
+
+        /**
+         * The text with the entries replaced
+         */
+        private StringBuilder text = new StringBuilder(256);
+
+        /**
+         * The entries found, concatenated
+         */
+        private StringBuilder value = new StringBuilder(32);
+
+        /**
+         * Prepares the buffers for a text
+         *
+         * @param length Length of the text
+         */
+        private void reset(int length) {
+
+            if (this.longest.length < length) {
+                this.longest = new int[Math.max(length, this.longest.length * 2)];
+            } else {
+                Arrays.fill(this.longest, 0, length, 0);
+            }
+            this.text.setLength(0);
+            this.value.setLength(0);
+        }
+
+        /**
+         * Drops the buffers which have grown too much
+         */
+        private void shrink() {
+
+            if (this.longest.length > MAX_RETAINED) {
+                this.longest = new int[256];
+            }
+            if (this.matches.length > MAX_RETAINED) {
+                this.matches = new long[16];
+            }
+            if (this.text.capacity() > MAX_RETAINED) {
+                this.text = new StringBuilder(256);
+            }
+            if (this.value.capacity() > MAX_RETAINED) {
+                this.value = new StringBuilder(32);
+            }
+        }
+    }
+
+    /**
+     * True if the entries must be surrounded by whitespaces or by the limits of the text, as emoticons are
+     */
+    private final boolean whitespaceBounded;
+
+    /**
+     * The root of the trie while the entries are added, null once the automaton is built
+     */
+    private Node root;
+
+    /**
+     * Position in {@link #labels} of the first child of each node, plus the number of children as the last value
+     */
+    private int[] nodeStart;
+
+    /**
+     * Chars of the children of each node, in ascending order within each node
+     */
+    private char[] labels;
+
+    /**
+     * The node of each child in {@link #labels}
+     */
+    private int[] children;
+
+    /**
+     * Longest proper suffix of each node that is also a node of the trie
+     */
+    private int[] fail;
+
+    /**
+     * Nearest node through the failure links of each node which ends an entry, or -1 if there is none
+     */
+    private int[] output;
+
+    /**
+     * Index of the entry ending in each node or -1 if there is none
+     */
+    private int[] nodeEntry;
+
+    /**
+     * The entries of the lexicon in the order they were added
+     */
+    private final List<String> keys;
+
+    /**
+     * The replacement of each entry, " " + synsetID + " "
+     */
+    private final List<String> replacements;
+
+    /**
+     * The replacement of each synsetID, so the entries of a synset share the same string
+     */
+    private final HashMap<String, String> synsetReplacements;
+
+    /**
+     * The polarity of each entry
+     */
+    private double[] polarities;
+
+    /**
+     * The length of each entry, once the trie is built
+     */
+    private int[] keyLengths;
+
+    /**
+     * The buffers of each thread
+     */
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * True if the failure links are already computed
+     */
+    private boolean built;
+
+    /**
+     * Constructs a new instance of {@link LexiconMatcher}
+     *
+     * @param whitespaceBounded True if the entries only match when they are surrounded by whitespaces or by the limits of the text
+     */
+    public LexiconMatcher(boolean whitespaceBounded) {
+
+        this.whitespaceBounded = whitespaceBounded;
+        this.root = new Node();
+        this.keys = new ArrayList<>();
+        this.replacements = new ArrayList<>();
+        this.synsetReplacements = new HashMap<>();
+        this.polarities = new double[16];
+        this.scratch = ThreadLocal.withInitial(Scratch::new);
+        this.built = false;
+    }
+
+    /**
+     * Constructs a new instance of {@link LexiconMatcher} from an automaton already built, as written by
+     * {@link LexiconFile}. The arrays are not copied.
+     *
+     * @param whitespaceBounded True if the entries only match when they are surrounded by whitespaces or by the limits of the text
+     * @param keys The entries of the lexicon
+     * @param synsetIDs The textual representation of each entry
+     * @param polarities The polarity of each entry
+     * @param nodeStart Position of the first child of each node, plus the number of children as the last value
+     * @param labels Chars of the children of each node, in ascending order within each node
+     * @param children The node of each child
+     * @param fail The failure link of each node
+     * @param output The output link of each node, or -1
+     * @param nodeEntry The entry ending in each node, or -1
+     * @throws IllegalArgumentException if the arrays are not a consistent automaton of the entries
+     */
+    LexiconMatcher(boolean whitespaceBounded, String[] keys, String[] synsetIDs, double[] polarities, int[] nodeStart,
+                   char[] labels, int[] children, int[] fail, int[] output, int[] nodeEntry) {
+
+        this(whitespaceBounded);
+        int numNodes = fail.length;
+        if (synsetIDs.length != keys.length || polarities.length != keys.length || numNodes < 1
+                || nodeStart.length != numNodes + 1 || output.length != numNodes || nodeEntry.length != numNodes
+                || children.length != labels.length || nodeStart[0] != 0 || nodeStart[numNodes] != labels.length) {
+            throw new IllegalArgumentException("The sizes of the automaton are not consistent");
+        }
+        for (int node = 0; node < numNodes; node++) {
+            if (nodeStart[node] > nodeStart[node + 1] || fail[node] < 0 || fail[node] >= numNodes
+                    || output[node] < -1 || output[node] >= numNodes || nodeEntry[node] < -1 || nodeEntry[node] >= keys.length) {
+                throw new IllegalArgumentException("The node " + node + " of the automaton is not consistent");
+            }
+        }
+        for (int child : children) {
+            if (child <= 0 || child >= numNodes) {
+                throw new IllegalArgumentException("A child of the automaton is not a node");
+            }
+        }
+
+        this.root = null;
+        for (int i = 0; i < keys.length; i++) {
+            this.keys.add(keys[i]);
+            this.replacements.add(this.replacementOf(synsetIDs[i]));
+        }
+        this.polarities = polarities;
+        this.nodeStart = nodeStart;
+        this.labels = labels;
+        this.children = children;
+        this.fail = fail;
+        this.output = output;
+        this.nodeEntry = nodeEntry;
+        this.keyLengths = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            this.keyLengths[i] = keys[i].length();
+        }
+        this.built = true;
+    }
+
+    /**
+     * Adds an entry to the lexicon. The order in which the entries are added is the order in which their matches
+     * are reported in the concatenated string and summed to compute the polarity.
+     *
+     * @param key The emoji or emoticon
+     * @param synsetID The textual representation which replaces the entry
+     * @param polarity The polarity of the entry
+     */
+    public void add(String key, String synsetID, double polarity) {
+
+        if (this.built) {
+            throw new IllegalStateException("The lexicon can not be modified once it has been built");
+        }
+        if (key.isEmpty()) {
+            return;
+        }
+
+        Node node = this.root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.next.computeIfAbsent(key.charAt(i), c -> new Node());
+        }
+
+        if (node.entry != -1) {
+            // A repeated key keeps its first position and takes the last values, as a map would do
+            this.replacements.set(node.entry, this.replacementOf(synsetID));
+            this.polarities[node.entry] = polarity;
+            return;
+        }
+
+        node.entry = this.keys.size();
+        if (node.entry == this.polarities.length) {
+            this.polarities = Arrays.copyOf(this.polarities, this.polarities.length * 2);
+        }
+        this.keys.add(key);
+        this.replacements.add(this.replacementOf(synsetID));
+        this.polarities[node.entry] = polarity;
+    }
+
+    /**
+     * @param synsetID A textual representation
+     * @return The replacement of the entries of the synset
+     */
+    private String replacementOf(String synsetID) {
+        return this.synsetReplacements.computeIfAbsent(synsetID, k -> " " + k + " ");
+    }
+
+    /**
+     * Computes the failure and output links of the automaton and moves it to flat arrays. After this call the matcher
+     * can not be modified and can be shared between threads.
+     */
+    public void build() {
+
+        if (this.built) {
+            return;
+        }
+
+        // The nodes are numbered in breadth-first order, so a failure link always points to a node numbered before
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(this.root);
+        for (int n = 0; n < nodes.size(); n++) {
+            for (Node child : nodes.get(n).next.values()) {
+                child.id = nodes.size();
+                nodes.add(child);
+            }
+        }
+
+        int numNodes = nodes.size();
+        this.nodeStart = new int[numNodes + 1];
+        this.labels = new char[numNodes - 1];
+        this.children = new int[numNodes - 1];
+        this.nodeEntry = new int[numNodes];
+        int edge = 0;
+        for (int n = 0; n < numNodes; n++) {
+            Node node = nodes.get(n);
+            this.nodeStart[n] = edge;
+            for (Map.Entry<Character, Node> child : node.next.entrySet()) {
+                this.labels[edge] = child.getKey();
+                this.children[edge++] = child.getValue().id;
+            }
+            this.nodeEntry[n] = node.entry;
+        }
+        this.nodeStart[numNodes] = edge;
+
+        this.fail = new int[numNodes];
+        this.output = new int[numNodes];
+        this.output[0] = -1;
+        for (int n = 0; n < numNodes; n++) {
+            for (edge = this.nodeStart[n]; edge < this.nodeStart[n + 1]; edge++) {
+                int child = this.children[edge];
+                int fail = 0;
+                if (n != 0) {
+                    fail = this.fail[n];
+                    int target;
+                    while ((target = this.child(fail, this.labels[edge])) < 0 && fail != 0) {
+                        fail = this.fail[fail];
+                    }
+                    fail = (target >= 0 && target != child) ? target : 0;
+                }
+                this.fail[child] = fail;
+                this.output[child] = (this.nodeEntry[fail] != -1) ? fail : this.output[fail];
+            }
+        }
+
+        this.root = null;
+        this.keyLengths = new int[this.keys.size()];
+        for (int i = 0; i < this.keyLengths.length; i++) {
+            this.keyLengths[i] = this.keys.get(i).length();
+        }
+        this.polarities = Arrays.copyOf(this.polarities, this.keys.size());
+        this.built = true;
+    }
+
+    /**
+     * @param node A node of the built automaton
+     * @param c The next char
+     * @return The child of the node for that char, or -1 if there is none
+     */
+    private int child(int node, char c) {
+
+        int index = Arrays.binarySearch(this.labels, this.nodeStart[node], this.nodeStart[node + 1], c);
+        return (index >= 0) ? this.children[index] : -1;
+    }
+
+    /**
+     * @return Returns the number of entries of the lexicon
+     */
+    public int size() {
+        return this.keys.size();
+    }
+
+    /**
+     * @return Returns true if the entries only match when they are surrounded by whitespaces
+     */
+    public boolean isWhitespaceBounded() {
+        return this.whitespaceBounded;
+    }
+
+    /**
+     * @param entry The index of an entry, in the order they were added
+     * @return Returns the emoji or emoticon of the entry
+     */
+    public String getKey(int entry) {
+        return this.keys.get(entry);
+    }
+
+    /**
+     * @param entry The index of an entry, in the order they were added
+     * @return Returns the textual representation of the entry
+     */
+    public String getSynsetID(int entry) {
+
+        String replacement = this.replacements.get(entry);
+        return replacement.substring(1, replacement.length() - 1);
+    }
+
+    /**
+     * @param synsetID A textual representation
+     * @return Returns true if any entry is replaced by the textual representation
+     */
+    public boolean hasSynsetID(String synsetID) {
+        return this.synsetReplacements.containsKey(synsetID);
+    }
+
+    /**
+     * @param entry The index of an entry, in the order they were added
+     * @return Returns the polarity of the entry
+     */
+    public double getPolarity(int entry) {
+        return this.polarities[entry];
+    }
+
+    /**
+     * @return Returns the position of the first child of each node, plus the number of children, once it is built
+     */
+    int[] getNodeStart() {
+        return this.nodeStart;
+    }
+
+    /**
+     * @return Returns the chars of the children of each node, once it is built
+     */
+    char[] getLabels() {
+        return this.labels;
+    }
+
+    /**
+     * @return Returns the node of each child, once it is built
+     */
+    int[] getChildren() {
+        return this.children;
+    }
+
+    /**
+     * @return Returns the failure link of each node, once it is built
+     */
+    int[] getFail() {
+        return this.fail;
+    }
+
+    /**
+     * @return Returns the output link of each node or -1, once it is built
+     */
+    int[] getOutput() {
+        return this.output;
+    }
+
+    /**
+     * @return Returns the entry ending in each node or -1, once it is built
+     */
+    int[] getNodeEntry() {
+        return this.nodeEntry;
+    }
+
+    /**
+     * Detects and replaces the entries found by their textual representation and calculates their polarity.
+     * When several entries overlap, the leftmost and then the longest one is replaced. The text is rewritten in a
+     * single pass into buffers reused by the thread.
+     *
+     * @param text Text to be processed
+     * @return Trio structure with the text modified, the entries found and the mean polarity calculated
+     */
+    public Trio<String, String, Double> replace(String text) {
+
+        this.build();
+
+        int length = text.length();
+        Scratch scratch = this.scratch.get();
+        scratch.reset(length);
+
+        // Longest entry (index + 1) starting at each position of the text
+        int[] longest = scratch.longest;
+        int node = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            int child = this.child(node, c);
+            while (child < 0 && node != 0) {
+                node = this.fail[node];
+                child = this.child(node, c);
+            }
+            node = (child >= 0) ? child : 0;
+
+            for (int found = (this.nodeEntry[node] != -1) ? node : this.output[node]; found != -1; found = this.output[found]) {
+                int entry = this.nodeEntry[found];
+                int end = i + 1;
+                int start = end - this.keyLengths[entry];
+                if (this.whitespaceBounded && !this.isBounded(text, start, end)) {
+                    continue;
+                }
+                if (longest[start] == 0 || this.keyLengths[longest[start] - 1] < end - start) {
+                    longest[start] = entry + 1;
+                }
+            }
+        }
+
+        // Matches encoded as (entry << 32 | start) in text order
+        long[] matches = scratch.matches;
+        int numMatches = 0;
+        StringBuilder sb = scratch.text;
+        int cursor = 0;
+        for (int start = 0; start < length; start++) {
+            if (longest[start] == 0 || start < cursor) {
+                continue;
+            }
+            int entry = longest[start] - 1;
+            int end = start + this.keyLengths[entry];
+
+            if (this.whitespaceBounded) {
+                // The whitespaces around the emoticon are part of the replaced text
+                if (start > 0 && start - 1 < cursor) {
+                    sb.setLength(sb.length() - 1);
+                } else if (start > 0) {
+                    sb.append(text, cursor, start - 1);
+                }
+                cursor = (end < length) ? end + 1 : end;
+            } else {
+                sb.append(text, cursor, start);
+                cursor = end;
+            }
+            sb.append(this.replacements.get(entry));
+
+            if (numMatches == matches.length) {
+                matches = Arrays.copyOf(matches, numMatches * 2);
+                scratch.matches = matches;
+            }
+            matches[numMatches++] = ((long) entry << 32) | start;
+        }
+        sb.append(text, Math.min(cursor, length), length);
+
+        // Entries are reported grouped in lexicon order and in text order within each entry
+        Arrays.sort(matches, 0, numMatches);
+        StringBuilder value = scratch.value;
+        double score = 0;
+        for (int i = 0; i < numMatches; i++) {
+            int entry = (int) (matches[i] >>> 32);
+            score += this.polarities[entry];
+            value.append(this.keys.get(entry));
+        }
+
+        //Calculate arithmetic mean
+        double mean = score / numMatches;
+        if (Double.isNaN(mean)) {
+            mean = 0.0;
+        }
+        Trio<String, String, Double> result = new Trio<>(trim(sb), value.toString(), mean);
+        scratch.shrink();
+        return result;
+    }
+
+    /**
+     * Copies a text without its leading and trailing whitespaces, as {@link String#trim()} would do, without
+     * copying it twice
+     *
+     * @param sb The text
+     * @return The text trimmed
+     */
+    private static String trim(StringBuilder sb) {
+
+        int start = 0;
+        int end = sb.length();
+        while (start < end && sb.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && sb.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return sb.substring(start, end);
+    }
+
+    /**
+     * Checks if an entry found in the text is surrounded by whitespaces or by the limits of the text
+     *
+     * @param text Text where the entry has been found
+     * @param start Start index of the entry, inclusive
+     * @param end End index of the entry, exclusive
+     * @return True if the entry is bounded
+     */
+    private boolean isBounded(CharSequence text, int start, int end) {
+        return (start == 0 || isWhitespace(text.charAt(start - 1))) && (end == text.length() || isWhitespace(text.charAt(end)));
+    }
+
+    /**
+     * Checks if a char is a whitespace as the regular expression \s defines it
+     *
+     * @param c The char to check
+     * @return True if the char is a whitespace
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
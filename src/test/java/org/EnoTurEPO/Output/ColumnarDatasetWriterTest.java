@@ -0,0 +1,269 @@
+package org.EnoTurEPO.Output;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the columnar files are read back as they were written, also when a crawl is interrupted after a flush
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class ColumnarDatasetWriterTest {
+
+    /**
+     * The columns of the dataset of the tests
+     */
+    private static final String[] COLUMNS = {"id", "rating", "author", "language"};
+
+    /**
+     * The folder of the files of the tests
+     */
+    private File folder;
+
+    /**
+     * The columnar file of the tests
+     */
+    private String file;
+
+    /**
+     * Creates the folder of the files
+     *
+     * @throws IOException if the folder can not be created
+     */
+    @Before
+    public void setUp() throws IOException {
+
+        this.folder = Files.createTempDirectory("columnar").toFile();
+        this.file = new File(this.folder, "reviews.enoc").getPath();
+    }
+
+    /**
+     * Deletes the folder of the files
+     */
+    @After
+    public void tearDown() {
+
+        File[] files = this.folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.folder.delete();
+    }
+
+    /**
+     * The typed values and the nulls are read back in the order they were written
+     *
+     * @throws IOException if the file can not be read
+     */
+    @Test
+    public void rowsAreReadBackAsWritten() throws IOException {
+
+        ColumnarDatasetWriter writer = new ColumnarDatasetWriter(this.file, 3);
+        writer.addColumns(COLUMNS, null);
+        for (int i = 0; i < 7; i++) {
+            writer.addRow(row(i));
+        }
+        writer.addRow(new Object[]{7, 4.5, null, "es"});
+        writer.close();
+
+        List<Object[]> rows = this.readAll();
+        assertEquals(8, rows.size());
+        for (int i = 0; i < 7; i++) {
+            assertArrayEquals(row(i), rows.get(i));
+        }
+        assertArrayEquals(new Object[]{7, 4.5, null, "es"}, rows.get(7));
+    }
+
+    /**
+     * A flush keeps the rows in the open row group, which is only written when it is full or the writer is closed
+     *
+     * @throws IOException if the file can not be read
+     */
+    @Test
+    public void flushDoesNotCutTheRowGroup() throws IOException {
+
+        ColumnarDatasetWriter writer = new ColumnarDatasetWriter(this.file, 100);
+        writer.addColumns(COLUMNS, null);
+        for (int i = 0; i < 250; i++) {
+            writer.addRow(row(i));
+            writer.flush();
+        }
+        assertTrue(new File(this.file + ColumnarDatasetWriter.PENDING_SUFFIX).exists());
+        writer.close();
+
+        assertEquals(3, this.countRowGroups());
+        assertEquals(250, this.readAll().size());
+        assertFalse(new File(this.file + ColumnarDatasetWriter.PENDING_SUFFIX).exists());
+    }
+
+    /**
+     * The rows flushed to the open row group before an interruption are written by the next writer of the file,
+     * while those which were not flushed are lost, as in the CSVs
+     *
+     * @throws IOException if the file can not be read
+     */
+    @Test
+    public void flushedRowsAreKeptAfterAnInterruption() throws IOException {
+
+        ColumnarDatasetWriter interrupted = new ColumnarDatasetWriter(this.file, 100);
+        interrupted.addColumns(COLUMNS, null);
+        for (int i = 0; i < 5; i++) {
+            interrupted.addRow(row(i));
+        }
+        interrupted.flush();
+        interrupted.addRow(row(99));
+        // The writer is not closed, as when the crawl is interrupted
+
+        ColumnarDatasetWriter resumed = new ColumnarDatasetWriter(this.file, 100);
+        resumed.addColumns(COLUMNS, null);
+        resumed.flush();
+        resumed.addRow(row(5));
+        resumed.close();
+
+        List<Object[]> rows = this.readAll();
+        assertEquals(6, rows.size());
+        for (int i = 0; i < 6; i++) {
+            assertArrayEquals(row(i), rows.get(i));
+        }
+        assertEquals(1, this.countRowGroups());
+    }
+
+    /**
+     * The pending rows of a row group which was written before the interruption are not written again
+     *
+     * @throws IOException if the file can not be read or copied
+     */
+    @Test
+    public void pendingRowsOfAWrittenRowGroupAreDiscarded() throws IOException {
+
+        File pending = new File(this.file + ColumnarDatasetWriter.PENDING_SUFFIX);
+        File copy = new File(this.folder, "copy.pending");
+        ColumnarDatasetWriter writer = new ColumnarDatasetWriter(this.file, 3);
+        writer.addColumns(COLUMNS, null);
+        writer.addRow(row(0));
+        writer.addRow(row(1));
+        writer.flush();
+        Files.copy(pending.toPath(), copy.toPath());
+        writer.addRow(row(2));
+        writer.close();
+        // The interruption happened after the row group was written, but before the pending file was deleted
+        Files.move(copy.toPath(), pending.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        ColumnarDatasetWriter resumed = new ColumnarDatasetWriter(this.file, 3);
+        resumed.addColumns(COLUMNS, null);
+        resumed.addRow(row(3));
+        resumed.close();
+
+        List<Object[]> rows = this.readAll();
+        assertEquals(4, rows.size());
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(row(i), rows.get(i));
+        }
+        assertFalse(pending.exists());
+    }
+
+    /**
+     * The rows of every run are accumulated in the file, as in the CSVs
+     *
+     * @throws IOException if the file can not be read
+     */
+    @Test
+    public void rowsOfEveryRunAreAppended() throws IOException {
+
+        for (int run = 0; run < 3; run++) {
+            ColumnarDatasetWriter writer = new ColumnarDatasetWriter(this.file);
+            writer.addColumns(COLUMNS, null);
+            writer.addRow(row(2 * run));
+            writer.addRow(row(2 * run + 1));
+            writer.close();
+        }
+
+        List<Object[]> rows = this.readAll();
+        assertEquals(6, rows.size());
+        for (int i = 0; i < 6; i++) {
+            assertArrayEquals(row(i), rows.get(i));
+        }
+    }
+
+    /**
+     * A file with other columns is not appended to
+     */
+    @Test(expected = java.io.UncheckedIOException.class)
+    public void otherColumnsAreRejected() {
+
+        ColumnarDatasetWriter writer = new ColumnarDatasetWriter(this.file);
+        writer.addColumns(COLUMNS, null);
+        writer.addRow(row(0));
+        writer.close();
+
+        new ColumnarDatasetWriter(this.file).addColumns(new String[]{"id", "text"}, null);
+    }
+
+    /**
+     * @param i The index of the row
+     * @return The values of a row, whose author is unique and whose language repeats
+     */
+    private static Object[] row(int i) {
+        return new Object[]{i, i / 2.0, "Author " + i, (i % 3 == 0) ? "gl" : "es"};
+    }
+
+    /**
+     * @return The rows of the file
+     * @throws IOException if the file can not be read
+     */
+    private List<Object[]> readAll() throws IOException {
+
+        List<Object[]> rows = new ArrayList<>();
+        try (ColumnarDatasetReader reader = new ColumnarDatasetReader(this.file)) {
+            assertArrayEquals(COLUMNS, reader.getColumns());
+            Object[] row;
+            while ((row = reader.readNext()) != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return The number of row groups of the file
+     * @throws IOException if the file can not be read
+     */
+    private int countRowGroups() throws IOException {
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)))) {
+            assertEquals(ColumnarDatasetWriter.MAGIC, in.readInt());
+            assertEquals(ColumnarDatasetWriter.VERSION, in.readInt());
+            int numColumns = in.readInt();
+            for (int column = 0; column < numColumns; column++) {
+                in.skipBytes(in.readInt());
+            }
+            int groups = 0;
+            while (in.readInt() > 0) {
+                for (int column = 0; column < numColumns; column++) {
+                    in.readByte();
+                    in.skipBytes(in.readInt());
+                }
+                groups++;
+            }
+            return groups;
+        }
+    }
+}
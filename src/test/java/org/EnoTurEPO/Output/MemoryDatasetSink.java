@@ -0,0 +1,76 @@
+package org.EnoTurEPO.Output;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sink which keeps the rows of a dataset in memory, to check the rows written by the tests
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class MemoryDatasetSink implements DatasetSink {
+
+    /**
+     * The names of the columns
+     */
+    private String[] columns;
+
+    /**
+     * The rows added, in the order they were added
+     */
+    private final List<Object[]> rows = new ArrayList<>();
+
+    @Override
+    public synchronized void addColumns(String[] columns, Object[] defaultValues) {
+        this.columns = columns.clone();
+    }
+
+    @Override
+    public synchronized void addRow(Object[] row) {
+        this.rows.add(row.clone());
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return Returns the names of the columns
+     */
+    public synchronized String[] getColumns() {
+        return this.columns;
+    }
+
+    /**
+     * @return Returns a copy of the rows added
+     */
+    public synchronized List<Object[]> getRows() {
+        return new ArrayList<>(this.rows);
+    }
+
+    /**
+     * @param column The name of a column
+     * @return Returns the values of the column in the rows added
+     */
+    public synchronized List<Object> getValues(String column) {
+
+        int index = -1;
+        for (int i = 0; i < this.columns.length; i++) {
+            if (this.columns[i].equals(column)) {
+                index = i;
+            }
+        }
+        if (index < 0) {
+            throw new IllegalArgumentException("There is not a column " + column);
+        }
+        List<Object> values = new ArrayList<>();
+        for (Object[] row : this.rows) {
+            values.add(row[index]);
+        }
+        return values;
+    }
+}
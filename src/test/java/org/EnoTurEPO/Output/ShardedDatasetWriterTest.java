@@ -0,0 +1,216 @@
+package org.EnoTurEPO.Output;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the shards are merged in the order of the keys of their groups, and that a merge interrupted at any
+ * point is undone or finished by the next one without losing or repeating rows
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class ShardedDatasetWriterTest {
+
+    /**
+     * The columns of the dataset of the tests
+     */
+    private static final String[] COLUMNS = {"winery", "review"};
+
+    /**
+     * The folder of the files of the tests
+     */
+    private File folder;
+
+    /**
+     * The CSV of the dataset of the tests
+     */
+    private String csv;
+
+    /**
+     * Creates the folder of the files
+     *
+     * @throws IOException if the folder can not be created
+     */
+    @Before
+    public void setUp() throws IOException {
+
+        this.folder = Files.createTempDirectory("sharded").toFile();
+        this.csv = new File(this.folder, "reviews.csv").getPath();
+    }
+
+    /**
+     * Deletes the folder of the files
+     */
+    @After
+    public void tearDown() {
+
+        File[] files = this.folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.folder.delete();
+    }
+
+    /**
+     * The groups are copied in the order of their keys, whichever thread and shard wrote them, and the shards are
+     * deleted
+     *
+     * @throws Exception if the shards can not be written or merged
+     */
+    @Test
+    public void groupsAreMergedInTheOrderOfTheKeys() throws Exception {
+
+        ShardedDatasetWriter writer = this.writer();
+        Thread other = new Thread(() -> addGroup(writer, "B", 3));
+        other.start();
+        addGroup(writer, "C", 2);
+        other.join();
+        addGroup(writer, "A", 2);
+        writer.close();
+        assertTrue(ShardedDatasetWriter.hasPendingShards(this.csv));
+
+        assertEquals(2, ShardedDatasetWriter.merge(this.csv, Arrays.asList("A", "B", "C")));
+        assertEquals(Arrays.asList("A", "A", "B", "B", "B", "C", "C"), this.readWineries());
+        assertFalse(ShardedDatasetWriter.hasPendingShards(this.csv));
+        assertEquals(1, this.folder.list().length);
+    }
+
+    /**
+     * The rows of a later crawl are appended to the CSV without a second header
+     *
+     * @throws IOException if the shards can not be merged
+     */
+    @Test
+    public void laterMergesAppendWithoutHeader() throws IOException {
+
+        this.writeGroups("A", "B");
+        ShardedDatasetWriter.merge(this.csv, Arrays.asList("A", "B"));
+        this.writeGroups("C");
+        ShardedDatasetWriter.merge(this.csv, Arrays.asList("A", "B", "C"));
+
+        assertEquals(Arrays.asList("A", "A", "B", "B", "C", "C"), this.readWineries());
+    }
+
+    /**
+     * A merge interrupted while it copied the rows is undone, truncating the CSV to its length before the merge,
+     * and done again
+     *
+     * @throws IOException if the shards can not be merged
+     */
+    @Test
+    public void interruptedCopyIsUndone() throws IOException {
+
+        this.writeGroups("A");
+        ShardedDatasetWriter.merge(this.csv, Arrays.asList("A", "B"));
+        this.writeGroups("B");
+        long length = new File(this.csv).length();
+        Files.write(new File(this.csv + ".merging").toPath(), Arrays.asList(String.valueOf(length), "1"), StandardCharsets.UTF_8);
+        Files.write(new File(this.csv).toPath(), "\"B\";\"cut".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertTrue(ShardedDatasetWriter.hasPendingShards(this.csv));
+
+        assertEquals(1, ShardedDatasetWriter.merge(this.csv, Arrays.asList("A", "B")));
+        assertEquals(Arrays.asList("A", "A", "B", "B"), this.readWineries());
+        assertFalse(ShardedDatasetWriter.hasPendingShards(this.csv));
+    }
+
+    /**
+     * A merge interrupted after it copied all the rows only deletes its shards, whose rows are not appended again
+     *
+     * @throws IOException if the shards can not be merged or copied
+     */
+    @Test
+    public void finishedMergeIsNotRepeated() throws IOException {
+
+        this.writeGroups("A", "B");
+        File[] shards = this.folder.listFiles();
+        File saved = new File(this.folder, "saved");
+        assertTrue(saved.mkdir());
+        for (File shard : shards) {
+            Files.copy(shard.toPath(), new File(saved, shard.getName()).toPath());
+        }
+        ShardedDatasetWriter.merge(this.csv, Arrays.asList("A", "B"));
+        // The interruption happened after the rows were appended, but before the shards were deleted
+        for (File shard : shards) {
+            Files.move(new File(saved, shard.getName()).toPath(), shard.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        assertTrue(saved.delete());
+        Files.write(new File(this.csv + ".merging").toPath(), Arrays.asList("0", "1", "merged"), StandardCharsets.UTF_8);
+
+        assertEquals(0, ShardedDatasetWriter.merge(this.csv, Arrays.asList("A", "B")));
+        assertEquals(Arrays.asList("A", "A", "B", "B"), this.readWineries());
+        assertFalse(ShardedDatasetWriter.hasPendingShards(this.csv));
+    }
+
+    /**
+     * @return A new writer of the dataset, with its columns added
+     */
+    private ShardedDatasetWriter writer() {
+
+        ShardedDatasetWriter writer = new ShardedDatasetWriter(this.csv);
+        writer.addColumns(COLUMNS, new Object[]{"", ""});
+        return writer;
+    }
+
+    /**
+     * Writes two rows of each winery to a shard, in the order given, and closes it
+     *
+     * @param wineries The keys of the groups
+     */
+    private void writeGroups(String... wineries) {
+
+        ShardedDatasetWriter writer = this.writer();
+        for (String winery : wineries) {
+            addGroup(writer, winery, 2);
+        }
+        writer.close();
+    }
+
+    /**
+     * Adds a group of rows to the shard of the calling thread
+     *
+     * @param writer The writer of the dataset
+     * @param winery The key of the group, written in the first column of its rows
+     * @param numRows The number of rows of the group
+     */
+    private static void addGroup(ShardedDatasetWriter writer, String winery, int numRows) {
+
+        DatasetSink group = writer.group(winery);
+        for (int i = 0; i < numRows; i++) {
+            group.addRow(new Object[]{winery, "Review " + i});
+        }
+        group.flush();
+    }
+
+    /**
+     * @return The first column of the rows of the CSV, checking that it has a single header
+     * @throws IOException if the CSV can not be read
+     */
+    private List<String> readWineries() throws IOException {
+
+        List<String> lines = Files.readAllLines(new File(this.csv).toPath(), StandardCharsets.UTF_8);
+        assertTrue(lines.get(0).contains(COLUMNS[1]));
+        List<String> wineries = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            assertFalse(line.contains(COLUMNS[1]));
+            wineries.add(line.split(";")[0].replace("\"", ""));
+        }
+        return wineries;
+    }
+}
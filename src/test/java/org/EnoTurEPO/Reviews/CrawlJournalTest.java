@@ -0,0 +1,173 @@
+package org.EnoTurEPO.Reviews;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a crawl resumed from the journal knows what the interrupted crawl wrote, also when the journal was cut
+ * by a crash while a checkpoint was being written
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class CrawlJournalTest {
+
+    /**
+     * The folder of the journal of the tests
+     */
+    private File folder;
+
+    /**
+     * The journal file of the tests
+     */
+    private String file;
+
+    /**
+     * The web address of the first winery
+     */
+    private URL first;
+
+    /**
+     * The web address of the second winery
+     */
+    private URL second;
+
+    /**
+     * Creates the folder of the journal
+     *
+     * @throws IOException if the folder can not be created
+     */
+    @Before
+    public void setUp() throws IOException {
+
+        this.folder = Files.createTempDirectory("journal").toFile();
+        this.file = new File(this.folder, "crawl.journal").getPath();
+        this.first = new URL("https://www.google.com/maps/place/Bodega+A");
+        this.second = new URL("https://www.google.com/maps/place/Bodega+B");
+    }
+
+    /**
+     * Deletes the folder of the journal
+     */
+    @After
+    public void tearDown() {
+
+        File[] files = this.folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.folder.delete();
+    }
+
+    /**
+     * The last checkpoint of each winery is loaded, with the fingerprints of all its checkpoints
+     *
+     * @throws IOException if the journal can not be written or read
+     */
+    @Test
+    public void lastCheckpointIsLoaded() throws IOException {
+
+        CrawlJournal journal = new CrawlJournal(this.file);
+        journal.record(CrawlJournal.PLACE, "Bodega A", this.first, 0);
+        journal.record(CrawlJournal.REVIEWS, "Bodega A", this.first, 2, Arrays.asList(1L, 2L));
+        journal.record(CrawlJournal.REVIEWS, "Bodega A", this.first, 3, Collections.singletonList(-1L));
+        journal.record(CrawlJournal.PLACE, "Bodega B", this.second, 0);
+        journal.close();
+
+        CrawlJournal resumed = new CrawlJournal(this.file);
+        assertTrue(resumed.isPlaceWritten("Bodega A", this.first));
+        assertFalse(resumed.isFinished("Bodega A", this.first));
+        assertEquals(3, resumed.getReviewsWritten("Bodega A", this.first));
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L, -1L)), resumed.getFingerprints("Bodega A", this.first));
+        assertTrue(resumed.isPlaceWritten("Bodega B", this.second));
+        assertEquals(0, resumed.getReviewsWritten("Bodega B", this.second));
+        assertTrue(resumed.getFingerprints("Bodega B", this.second).isEmpty());
+        assertEquals(0, resumed.getNumFinished());
+        resumed.close();
+    }
+
+    /**
+     * The fingerprints of a finished winery are not kept, as its reviews are not crawled again
+     *
+     * @throws IOException if the journal can not be written or read
+     */
+    @Test
+    public void fingerprintsAreDroppedWhenFinished() throws IOException {
+
+        CrawlJournal journal = new CrawlJournal(this.file);
+        journal.record(CrawlJournal.REVIEWS, "Bodega A", this.first, 2, Arrays.asList(1L, 2L));
+        journal.record(CrawlJournal.DONE, "Bodega A", this.first, 2);
+        assertTrue(journal.getFingerprints("Bodega A", this.first).isEmpty());
+        journal.close();
+
+        CrawlJournal resumed = new CrawlJournal(this.file);
+        assertTrue(resumed.isFinished("Bodega A", this.first));
+        assertEquals(2, resumed.getReviewsWritten("Bodega A", this.first));
+        assertTrue(resumed.getFingerprints("Bodega A", this.first).isEmpty());
+        assertEquals(1, resumed.getNumFinished());
+        resumed.close();
+    }
+
+    /**
+     * The line cut by a crash is ignored, as its list of fingerprints may be incomplete, and the next checkpoint is
+     * not joined to it
+     *
+     * @throws IOException if the journal can not be written or read
+     */
+    @Test
+    public void cutLineIsIgnored() throws IOException {
+
+        CrawlJournal journal = new CrawlJournal(this.file);
+        journal.record(CrawlJournal.REVIEWS, "Bodega A", this.first, 1, Collections.singletonList(1L));
+        journal.close();
+        Files.write(new File(this.file).toPath(), ("REVIEWS\tBodega A\t" + this.first + "\t3\t2,3").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        CrawlJournal resumed = new CrawlJournal(this.file);
+        assertEquals(1, resumed.getReviewsWritten("Bodega A", this.first));
+        assertEquals(Collections.singleton(1L), resumed.getFingerprints("Bodega A", this.first));
+        resumed.record(CrawlJournal.PLACE, "Bodega B", this.second, 0);
+        resumed.close();
+
+        CrawlJournal again = new CrawlJournal(this.file);
+        assertEquals(1, again.getReviewsWritten("Bodega A", this.first));
+        assertTrue(again.isPlaceWritten("Bodega B", this.second));
+        again.close();
+        assertEquals(2, Files.readAllLines(new File(this.file).toPath(), StandardCharsets.UTF_8).size());
+    }
+
+    /**
+     * A deleted journal starts the next crawl from the beginning
+     *
+     * @throws IOException if the journal can not be written or read
+     */
+    @Test
+    public void deletedJournalStartsOver() throws IOException {
+
+        CrawlJournal journal = new CrawlJournal(this.file);
+        journal.record(CrawlJournal.DONE, "Bodega A", this.first, 4);
+        journal.delete();
+        assertFalse(new File(this.file).exists());
+
+        CrawlJournal next = new CrawlJournal(this.file);
+        assertFalse(next.isPlaceWritten("Bodega A", this.first));
+        assertEquals(0, next.getNumFinished());
+        next.close();
+    }
+}
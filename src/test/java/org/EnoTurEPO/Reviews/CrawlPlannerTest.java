@@ -0,0 +1,169 @@
+package org.EnoTurEPO.Reviews;
+
+import org.EnoTurEPO.util.Trio;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the planner keeps the order of the input CSV unless batches are requested, and that it plans the
+ * batches largest first when the costs of the wineries are known
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class CrawlPlannerTest {
+
+    /**
+     * The folder of the input CSV of the tests
+     */
+    private File folder;
+
+    /**
+     * The input CSV of the tests
+     */
+    private String csv;
+
+    /**
+     * Creates the folder and the input CSV, with wineries of two D.O.s mixed and three rows which are not valid
+     *
+     * @throws IOException if the CSV can not be written
+     */
+    @Before
+    public void setUp() throws IOException {
+
+        this.folder = Files.createTempDirectory("planner").toFile();
+        this.csv = new File(this.folder, "wineries.csv").getPath();
+        Files.write(new File(this.csv).toPath(), Arrays.asList(
+                "name;D.O.;url",
+                "Adega Ribeiro;Ribeiro;https://www.google.com/maps/place/A/@42.31,-8.14,15z",
+                "Bodega Rías Baixas;Rías Baixas;https://www.google.com/maps/place/B/@42.43,-8.64,15z",
+                "Casa Ribeiro;Ribeiro;https://www.google.com/maps/place/C/@42.28,-8.10,15z",
+                "Sin columnas",
+                "Sin web;Ribeiro;maps/place/D",
+                "Sin coordenadas;Ribeiro;https://www.google.com/maps/place/E",
+                "Doña Rías Baixas;Rías Baixas;https://www.google.com/maps/place/F/@42.45,-8.70,15z"), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Deletes the folder of the input CSV
+     */
+    @After
+    public void tearDown() {
+
+        new File(this.csv).delete();
+        this.folder.delete();
+    }
+
+    /**
+     * The rows which are not valid are reported with their line, and the valid ones are read in the order of the CSV
+     *
+     * @throws IOException if the CSV can not be read
+     */
+    @Test
+    public void invalidRowsAreReported() throws IOException {
+
+        CrawlPlanner planner = new CrawlPlanner();
+        assertEquals(4, planner.read(this.csv));
+        assertEquals(3, planner.getInvalidRows().size());
+        assertTrue(planner.getInvalidRows().get(0).startsWith("Line 5 "));
+        assertTrue(planner.getInvalidRows().get(2).startsWith("Line 7 "));
+        assertEquals(Arrays.asList("Adega Ribeiro", "Bodega Rías Baixas", "Casa Ribeiro", "Doña Rías Baixas"),
+                names(planner.getWineries()));
+    }
+
+    /**
+     * Without batches each winery is planned alone in the order of the CSV, and the skipped ones are left out
+     *
+     * @throws IOException if the CSV can not be read
+     */
+    @Test
+    public void inputOrderIsKeptWithoutBatches() throws IOException {
+
+        CrawlPlanner planner = new CrawlPlanner();
+        planner.read(this.csv);
+        List<List<Trio<String, String, URL>>> batches = planner.plan(winery -> winery.getObj1().equals("Casa Ribeiro"));
+
+        assertEquals(3, batches.size());
+        assertEquals(Arrays.asList("Adega Ribeiro", "Bodega Rías Baixas", "Doña Rías Baixas"), flatten(batches));
+        for (List<Trio<String, String, URL>> batch : batches) {
+            assertEquals(1, batch.size());
+        }
+    }
+
+    /**
+     * With batches the wineries of each D.O. are grouped, in the order the D.O.s appear in the CSV, starting from
+     * the westernmost one
+     *
+     * @throws IOException if the CSV can not be read
+     */
+    @Test
+    public void batchesGroupTheWineriesOfADesignation() throws IOException {
+
+        CrawlPlanner planner = new CrawlPlanner();
+        planner.setBatched(true);
+        planner.read(this.csv);
+        List<List<Trio<String, String, URL>>> batches = planner.plan(winery -> false);
+
+        assertEquals(2, batches.size());
+        assertEquals(Arrays.asList("Adega Ribeiro", "Casa Ribeiro"), names(batches.get(0)));
+        assertEquals(Arrays.asList("Doña Rías Baixas", "Bodega Rías Baixas"), names(batches.get(1)));
+    }
+
+    /**
+     * With costs the wineries are planned from the most expensive one, and an unknown winery costs the mean
+     *
+     * @throws IOException if the CSV can not be read
+     */
+    @Test
+    public void costsPlanTheLargestFirst() throws IOException {
+
+        CrawlCosts costs = new CrawlCosts();
+        costs.add("Adega Ribeiro", 10);
+        costs.add("Bodega Rías Baixas", 500);
+        costs.add("Casa Ribeiro", 90);
+        CrawlPlanner planner = new CrawlPlanner();
+        planner.setCosts(costs);
+        planner.read(this.csv);
+
+        assertEquals(Arrays.asList("Bodega Rías Baixas", "Doña Rías Baixas", "Casa Ribeiro", "Adega Ribeiro"),
+                flatten(planner.plan(winery -> false)));
+    }
+
+    /**
+     * @param batches Some batches
+     * @return The names of the wineries of all the batches, in order
+     */
+    private static List<String> flatten(List<List<Trio<String, String, URL>>> batches) {
+
+        List<String> names = new ArrayList<>();
+        for (List<Trio<String, String, URL>> batch : batches) {
+            names.addAll(names(batch));
+        }
+        return names;
+    }
+
+    /**
+     * @param wineries Some trios <name, D.O., url>
+     * @return The names of the wineries, in order
+     */
+    private static List<String> names(List<Trio<String, String, URL>> wineries) {
+
+        List<String> names = new ArrayList<>();
+        for (Trio<String, String, URL> winery : wineries) {
+            names.add(winery.getObj1());
+        }
+        return names;
+    }
+}
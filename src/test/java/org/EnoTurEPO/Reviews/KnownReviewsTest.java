@@ -0,0 +1,114 @@
+package org.EnoTurEPO.Reviews;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the reviews of a previous run are recognized by their fingerprints, whatever columns surround them
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class KnownReviewsTest {
+
+    /**
+     * The folder of the CSV of the tests
+     */
+    private File folder;
+
+    /**
+     * The CSV of reviews of the tests
+     */
+    private String csv;
+
+    /**
+     * Creates the folder of the CSV
+     *
+     * @throws IOException if the folder can not be created
+     */
+    @Before
+    public void setUp() throws IOException {
+
+        this.folder = Files.createTempDirectory("known").toFile();
+        this.csv = new File(this.folder, "reviews.csv").getPath();
+    }
+
+    /**
+     * Deletes the folder of the CSV
+     */
+    @After
+    public void tearDown() {
+
+        new File(this.csv).delete();
+        this.folder.delete();
+    }
+
+    /**
+     * The fingerprint ignores the whitespaces around the author and the text, but tells an edited text apart
+     */
+    @Test
+    public void fingerprintIdentifiesTheReview() {
+
+        long fingerprint = KnownReviews.fingerprint("Ana", "Muy buena visita");
+        assertEquals(fingerprint, KnownReviews.fingerprint(" Ana ", "Muy buena visita\n"));
+        assertNotEquals(fingerprint, KnownReviews.fingerprint("Ana", "Muy buena visita!"));
+        assertNotEquals(fingerprint, KnownReviews.fingerprint("Ana Muy", "buena visita"));
+    }
+
+    /**
+     * The reviews are loaded by the title of their winery, finding the columns by their names
+     *
+     * @throws IOException if the CSV can not be written or read
+     */
+    @Test
+    public void reviewsAreLoadedByWinery() throws IOException {
+
+        Files.write(new File(this.csv).toPath(), Arrays.asList(
+                "date;author;title;rating;textReviewOriginal",
+                "hace 2 meses;Ana;Bodega A;5;Muy buena visita",
+                "hace un año;Luis;Bodega A;4;\"Buen vino; repetiremos\"",
+                "hace 3 días;Ana;Bodega B;3;Caro",
+                "incompleta;Eva"), StandardCharsets.UTF_8);
+
+        KnownReviews known = KnownReviews.load(this.csv);
+        assertEquals(2, known.getNumWineries());
+        assertEquals(2, known.get("Bodega A").size());
+        assertTrue(known.get("Bodega A").contains(KnownReviews.fingerprint("Luis", "Buen vino; repetiremos")));
+        assertTrue(known.get("Bodega B").contains(KnownReviews.fingerprint("Ana", "Caro")));
+        assertFalse(known.get("Bodega B").contains(KnownReviews.fingerprint("Ana", "Muy buena visita")));
+        assertTrue(known.get("Bodega C").isEmpty());
+    }
+
+    /**
+     * A missing CSV means there are no reviews of a previous run
+     *
+     * @throws IOException if the CSV can not be read
+     */
+    @Test
+    public void missingFileHasNoReviews() throws IOException {
+        assertEquals(0, KnownReviews.load(this.csv).getNumWineries());
+    }
+
+    /**
+     * A CSV without the needed columns is rejected
+     *
+     * @throws IOException as the CSV has not the needed columns
+     */
+    @Test(expected = IOException.class)
+    public void otherColumnsAreRejected() throws IOException {
+
+        Files.write(new File(this.csv).toPath(), Arrays.asList("title;author", "Bodega A;Ana"), StandardCharsets.UTF_8);
+        KnownReviews.load(this.csv);
+    }
+}
@@ -0,0 +1,87 @@
+package org.EnoTurEPO.Reviews;
+
+import org.EnoTurEPO.util.CrawlMetrics;
+import org.EnoTurEPO.util.Trio;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the detection of the translated texts by {@link ReviewReprocessor}
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class ReviewReprocessorTest {
+
+    /**
+     * The enricher of the reviews, with the dictionaries of the project
+     */
+    private static ReviewEnricher enricher;
+
+    /**
+     * The reprocessor whose detection is tested
+     */
+    private static ReviewReprocessor reprocessor;
+
+    /**
+     * Loads the dictionaries of the project
+     *
+     * @throws FileNotFoundException if the dictionaries do not exist
+     */
+    @BeforeClass
+    public static void setUp() throws FileNotFoundException {
+
+        enricher = new ReviewEnricher("src/main/resources/emoticons/", "src/main/resources/emojis/", new CrawlMetrics());
+        reprocessor = new ReviewReprocessor(enricher, 1, 1);
+    }
+
+    /**
+     * An untranslated text whose emojis and emoticons were replaced is not translated
+     */
+    @Test
+    public void untranslatedTextWithEmojisIsNotTranslated() {
+
+        String original = "Great wine 😂, we will come back :D";
+        String text = replace(original);
+
+        assertNotEquals(original, text);
+        assertFalse(reprocessor.isTranslated(text, original, "EN"));
+    }
+
+    /**
+     * A text translated by Google, whose emojis and emoticons were replaced, is translated
+     */
+    @Test
+    public void translatedTextWithEmojisIsTranslated() {
+
+        String original = "Great wine 😂, we will come back :D";
+        String text = replace("Gran vino 😂, volveremos :D");
+
+        assertTrue(reprocessor.isTranslated(text, original, "EN"));
+    }
+
+    /**
+     * A text without emojis nor emoticons is translated only if it differs from its original text
+     */
+    @Test
+    public void textWithoutEmojisIsTranslatedIfItDiffers() {
+
+        assertFalse(reprocessor.isTranslated("Great wine", "Great wine", "EN"));
+        assertTrue(reprocessor.isTranslated("Gran vino", "Great wine", "EN"));
+    }
+
+    /**
+     * @param text A text
+     * @return The text with its emojis and emoticons replaced, as it is saved by the crawl
+     */
+    private static String replace(String text) {
+
+        Trio<String, String, Double> emojis = enricher.manageEmojis(text);
+        return enricher.manageEmoticons(emojis.getObj1()).getObj1();
+    }
+}
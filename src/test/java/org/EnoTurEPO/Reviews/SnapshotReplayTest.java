@@ -0,0 +1,147 @@
+package org.EnoTurEPO.Reviews;
+
+import org.EnoTurEPO.Output.MemoryDatasetSink;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that the snapshots of a delta crawl do not replace the complete snapshots which are replayed
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class SnapshotReplayTest {
+
+    /**
+     * Name of the winery of the tests
+     */
+    private static final String NAME = "Adega A Coroa";
+
+    /**
+     * Page of the winery, with only its name
+     */
+    private static final String PLACE_PAGE = "<html><body><h1 class=\"section-hero-header-title-title\">A Coroa</h1></body></html>";
+
+    /**
+     * The folder of the snapshots
+     */
+    private File folder;
+
+    /**
+     * Google Maps web address of the winery
+     */
+    private URL url;
+
+    /**
+     * Creates the folder of the snapshots
+     *
+     * @throws IOException if the folder can not be created
+     */
+    @Before
+    public void setUp() throws IOException {
+
+        this.folder = Files.createTempDirectory("snapshots").toFile();
+        this.url = new URL("https://www.google.com/maps/place/A+Coroa/@42.4016987,-7.0931604,15z");
+    }
+
+    /**
+     * Deletes the folder of the snapshots
+     */
+    @After
+    public void tearDown() {
+
+        File[] files = this.folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.folder.delete();
+    }
+
+    /**
+     * The replay after a delta crawl reads all the reviews of the complete crawl before it
+     *
+     * @throws Exception if the snapshots can not be written or replayed
+     */
+    @Test
+    public void replayAfterDeltaCrawlReadsTheCompleteSnapshot() throws Exception {
+
+        SnapshotStore store = new SnapshotStore(this.folder.getPath());
+
+        SnapshotWriter complete = store.create(NAME, "Valdeorras", this.url, "01-01-2020");
+        complete.writePlacePage(PLACE_PAGE);
+        complete.writeReview(review("Ana", "Muy buen vino"));
+        complete.writeReview(review("Brais", "Volveremos"));
+        complete.writeReview(review("Carme", "Trato excelente"));
+        assertTrue(WebExtractor.commitSnapshot(complete, NAME));
+
+        // The delta crawl reads the newest review and stops at the first known one
+        SnapshotWriter delta = store.create(NAME, "Valdeorras", this.url, "01-02-2020");
+        delta.writePlacePage(PLACE_PAGE);
+        delta.writeReview(review("Diego", "Gran visita"));
+        delta.writeReview(review("Ana", "Muy buen vino"));
+        delta.markIncomplete();
+        try {
+            assertFalse(WebExtractor.commitSnapshot(delta, NAME));
+        } finally {
+            delta.discard();
+        }
+
+        MemoryDatasetSink places = new MemoryDatasetSink();
+        MemoryDatasetSink reviews = new MemoryDatasetSink();
+        WebExtractor webExtractor = new WebExtractor(places, reviews, "src/main/resources/emoticons/", "src/main/resources/emojis/");
+        try (SnapshotReader snapshot = store.open(NAME, this.url)) {
+            webExtractor.replay(snapshot);
+        } finally {
+            webExtractor.close();
+        }
+
+        assertEquals(Arrays.asList("Ana", "Brais", "Carme"), reviews.getValues("author"));
+        assertEquals(Arrays.asList("01-01-2020", "01-01-2020", "01-01-2020"), reviews.getValues("dateExtractData"));
+        assertEquals(1, places.getRows().size());
+    }
+
+    /**
+     * An incomplete snapshot can not be committed
+     *
+     * @throws IOException if the snapshot can not be written
+     */
+    @Test
+    public void incompleteSnapshotIsNotCommitted() throws IOException {
+
+        SnapshotStore store = new SnapshotStore(this.folder.getPath());
+        SnapshotWriter delta = store.create(NAME, "Valdeorras", this.url, "01-02-2020");
+        delta.markIncomplete();
+        try {
+            delta.commit();
+            fail("An incomplete snapshot has been committed");
+        } catch (IllegalStateException e) {
+            // Expected
+        } finally {
+            delta.discard();
+        }
+        assertFalse(store.exists(NAME, this.url));
+    }
+
+    /**
+     * @param author The author of the review
+     * @param text The text of the review
+     * @return The HTML of the review
+     */
+    private static String review(String author, String text) {
+        return "<div class=\"section-review\"><div class=\"section-review-title\">" + author + "</div>"
+                + "<span class=\"section-review-text\">" + text + "</span></div>";
+    }
+}
@@ -0,0 +1,214 @@
+package org.EnoTurEPO.util;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the automaton of {@link LexiconMatcher} replaces the entries of the shipped dictionaries as the regular
+ * expression per entry it replaced did, over generated reviews and over the entries which contain other entries
+ *
+ * @author Miguel Ferreiro Díaz
+ */
+public class LexiconMatcherTest {
+
+    /**
+     * Words of the generated reviews
+     */
+    private static final String[] WORDS = {"bodega", "vino", "visita", "cata", "albariño", "godello", "mencía",
+            "muy", "buena", "atención", "precio", "repetiremos", "D.O.", "Ribeiro", "x", "(", ")", ":", ";", "-", "."};
+
+    /**
+     * Separators of the words of the generated reviews
+     */
+    private static final String[] SEPARATORS = {" ", " ", " ", "  ", "\n", "\t", ""};
+
+    /**
+     * Number of generated reviews
+     */
+    private static final int NUM_REVIEWS = 5000;
+
+    /**
+     * The matcher of the emojis
+     */
+    private static LexiconMatcher emojis;
+
+    /**
+     * The matcher of the emoticons
+     */
+    private static LexiconMatcher emoticons;
+
+    /**
+     * Loads the shipped dictionaries
+     *
+     * @throws FileNotFoundException if the dictionaries do not exist
+     */
+    @BeforeClass
+    public static void loadDictionaries() throws FileNotFoundException {
+
+        emojis = LexiconFile.load("src/main/resources/emojis/emojisID.es", false);
+        emoticons = LexiconFile.load("src/main/resources/emoticons/emoticonsID.es", true);
+    }
+
+    /**
+     * No emoji contains another one, so every review gets the result of the regular expressions
+     */
+    @Test
+    public void emojisAreReplacedAsByTheRegularExpressions() {
+
+        assertEquals(0, containedPairs(emojis));
+        Baseline baseline = new Baseline(emojis);
+        for (String review : generateReviews(emojis, 1)) {
+            assertResult(baseline.replace(review), emojis.replace(review), review);
+        }
+    }
+
+    /**
+     * The 108 pairs of emoticons where one contains the other are where the leftmost-longest rule of the automaton
+     * could differ from the regular expressions, which replace the entry that comes first in the dictionary. As the
+     * contained emoticon is never surrounded by whitespaces inside the other one, both replace the longer one
+     */
+    @Test
+    public void emoticonsAreReplacedAsByTheRegularExpressions() {
+
+        assertEquals(108, containedPairs(emoticons));
+        Baseline baseline = new Baseline(emoticons);
+        for (String review : generateReviews(emoticons, 2)) {
+            assertResult(baseline.replace(review), emoticons.replace(review), review);
+        }
+        for (int i = 0; i < emoticons.size(); i++) {
+            for (int j = 0; j < emoticons.size(); j++) {
+                String container = emoticons.getKey(j);
+                if (i != j && container.contains(emoticons.getKey(i))) {
+                    for (String review : new String[]{container, "vino " + container + " bodega", emoticons.getKey(i) + " " + container}) {
+                        assertResult(baseline.replace(review), emoticons.replace(review), review);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the result of the automaton is the result of the regular expressions
+     *
+     * @param expected The result of the regular expressions
+     * @param actual The result of the automaton
+     * @param review The review
+     */
+    private static void assertResult(Trio<String, String, Double> expected, Trio<String, String, Double> actual, String review) {
+
+        assertEquals(review, expected.getObj1(), actual.getObj1());
+        assertEquals(review, expected.getObj2(), actual.getObj2());
+        assertEquals(review, expected.getObj3(), actual.getObj3(), 1e-9);
+    }
+
+    /**
+     * @param matcher A matcher
+     * @return The number of ordered pairs of entries where the first one is contained in the second one
+     */
+    private static int containedPairs(LexiconMatcher matcher) {
+
+        int pairs = 0;
+        for (int i = 0; i < matcher.size(); i++) {
+            for (int j = 0; j < matcher.size(); j++) {
+                if (i != j && matcher.getKey(j).contains(matcher.getKey(i))) {
+                    pairs++;
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Generates reviews of words and separators, with entries of a lexicon among them
+     *
+     * @param matcher The matcher of the lexicon
+     * @param seed The seed of the reviews
+     * @return The reviews
+     */
+    private static List<String> generateReviews(LexiconMatcher matcher, long seed) {
+
+        Random random = new Random(seed);
+        List<String> reviews = new ArrayList<>(NUM_REVIEWS);
+        for (int i = 0; i < NUM_REVIEWS; i++) {
+            StringBuilder sb = new StringBuilder();
+            int numTokens = random.nextInt(30);
+            for (int token = 0; token < numTokens; token++) {
+                if (random.nextInt(4) == 0) {
+                    sb.append(matcher.getKey(random.nextInt(matcher.size())));
+                } else {
+                    sb.append(WORDS[random.nextInt(WORDS.length)]);
+                }
+                sb.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+            }
+            reviews.add(sb.toString());
+        }
+        return reviews;
+    }
+
+    /**
+     * The replacement of the entries before the automaton: a regular expression per entry, run over the text in the
+     * order of the dictionary, each one replacing its matches before the next one runs
+     */
+    private static class Baseline {
+
+        /**
+         * The matcher whose entries are replaced
+         */
+        private final LexiconMatcher matcher;
+
+        /**
+         * The regular expression of each entry
+         */
+        private final Pattern[] patterns;
+
+        /**
+         * @param matcher The matcher whose entries are replaced
+         */
+        private Baseline(LexiconMatcher matcher) {
+
+            this.matcher = matcher;
+            this.patterns = new Pattern[matcher.size()];
+            for (int i = 0; i < matcher.size(); i++) {
+                String quoted = Pattern.quote(matcher.getKey(i));
+                this.patterns[i] = Pattern.compile(matcher.isWhitespaceBounded() ? "(\\s|^)" + quoted + "(\\s|$)" : quoted);
+            }
+        }
+
+        /**
+         * @param text Text to be processed
+         * @return Trio structure with the text modified, the entries found and the mean polarity calculated
+         */
+        private Trio<String, String, Double> replace(String text) {
+
+            String value = "";
+            StringBuffer sb = new StringBuffer(text);
+            int numEntries = 0;
+            double score = 0;
+            for (int i = 0; i < this.patterns.length; i++) {
+                Matcher match = this.patterns[i].matcher(sb);
+                int last = 0;
+                while (match.find(last)) {
+                    last = match.start(0) + 1;
+                    score += this.matcher.getPolarity(i);
+                    numEntries++;
+                    value += this.matcher.getKey(i);
+                    sb = sb.replace(match.start(0), match.end(0), " " + this.matcher.getSynsetID(i) + " ");
+                }
+            }
+            double mean = score / numEntries;
+            if (Double.isNaN(mean)) {
+                mean = 0.0;
+            }
+            return new Trio<>(sb.toString().trim(), value, mean);
+        }
+    }
+}